@@ -0,0 +1,223 @@
+package org.hyperion.bench;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.hyperion.rs2.net.Packet;
+import org.hyperion.rs2.net.PacketBuilder;
+
+/**
+ * <p>A microbenchmark of the bit writer used by the update packets, against
+ * the byte by byte writer it replaced.</p>
+ *
+ * <p>Both write the same stream of values, with the widths an update packet
+ * uses for each of a number of local entities. The output of the two is
+ * compared before anything is timed, and the benchmark fails if it
+ * differs.</p>
+ *
+ * <p>Usage: <code>BitWriterBenchmark [warm up rounds] [measured
+ * rounds]</code>.</p>
+ */
+public class BitWriterBenchmark {
+
+	/**
+	 * The number of local entities in each packet.
+	 */
+	private static final int[] SCENARIOS = new int[] { 50, 255 };
+
+	/**
+	 * The widths written for each local entity: update required, movement
+	 * type, two directions, an index and two deltas.
+	 */
+	private static final int[] WIDTHS = new int[] { 1, 2, 3, 3, 11, 5, 5, 1 };
+
+	/**
+	 * The entry point of the benchmark.
+	 * @param args The command line arguments.
+	 */
+	public static void main(String[] args) {
+		int warmUp = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+		System.out.println("entities  writer          packets/s     ns/packet");
+		for(int entities : SCENARIOS) {
+			new BitWriterBenchmark(entities).run(warmUp, rounds);
+		}
+	}
+
+	/**
+	 * The old writer, which writes each value into the buffer byte by byte.
+	 */
+	private static class ByteWiseBuilder {
+
+		/**
+		 * The payload.
+		 */
+		private final IoBuffer payload = IoBuffer.allocate(16);
+
+		/**
+		 * The current bit position.
+		 */
+		private int bitPosition;
+
+		/**
+		 * Creates the builder.
+		 */
+		public ByteWiseBuilder() {
+			payload.setAutoExpand(true);
+			payload.setAutoShrink(true);
+		}
+
+		/**
+		 * Starts bit access.
+		 */
+		public void startBitAccess() {
+			bitPosition = payload.position() * 8;
+		}
+
+		/**
+		 * Finishes bit access.
+		 */
+		public void finishBitAccess() {
+			payload.position((bitPosition + 7) / 8);
+		}
+
+		/**
+		 * Writes some bits.
+		 * @param numBits The number of bits to write.
+		 * @param value The value.
+		 */
+		public void putBits(int numBits, int value) {
+			int bytes = (int) Math.ceil((double) numBits / 8D) + 1;
+			payload.expand((bitPosition + 7) / 8 + bytes);
+
+			byte[] buffer = payload.array();
+
+			int bytePos = bitPosition >> 3;
+			int bitOffset = 8 - (bitPosition & 7);
+			bitPosition += numBits;
+
+			for(; numBits > bitOffset; bitOffset = 8) {
+				buffer[bytePos] &= ~PacketBuilder.BIT_MASK_OUT[bitOffset];
+				buffer[bytePos++] |= (value >> (numBits-bitOffset)) & PacketBuilder.BIT_MASK_OUT[bitOffset];
+				numBits -= bitOffset;
+			}
+			if(numBits == bitOffset) {
+				buffer[bytePos] &= ~PacketBuilder.BIT_MASK_OUT[bitOffset];
+				buffer[bytePos] |= value & PacketBuilder.BIT_MASK_OUT[bitOffset];
+			} else {
+				buffer[bytePos] &= ~(PacketBuilder.BIT_MASK_OUT[numBits] << (bitOffset - numBits));
+				buffer[bytePos] |= (value & PacketBuilder.BIT_MASK_OUT[numBits]) << (bitOffset - numBits);
+			}
+		}
+
+		/**
+		 * Gets the bytes written.
+		 * @return The bytes.
+		 */
+		public byte[] toArray() {
+			return Arrays.copyOf(payload.array(), payload.position());
+		}
+
+	}
+
+	/**
+	 * The values written, one for each width.
+	 */
+	private final int[] values;
+
+	/**
+	 * A value which depends on every packet written, so the writes cannot be
+	 * optimised away.
+	 */
+	private long checksum = 0;
+
+	/**
+	 * Creates a scenario.
+	 * @param entities The number of local entities.
+	 */
+	public BitWriterBenchmark(int entities) {
+		Random random = new Random(317);
+		values = new int[entities * WIDTHS.length];
+		for(int i = 0; i < values.length; i++) {
+			values[i] = random.nextInt();
+		}
+	}
+
+	/**
+	 * Writes a packet with the old writer.
+	 * @return The bytes written.
+	 */
+	private byte[] writeByteWise() {
+		ByteWiseBuilder builder = new ByteWiseBuilder();
+		builder.startBitAccess();
+		for(int i = 0; i < values.length; i++) {
+			builder.putBits(WIDTHS[i % WIDTHS.length], values[i]);
+		}
+		builder.finishBitAccess();
+		return builder.toArray();
+	}
+
+	/**
+	 * Writes a packet with a packet builder.
+	 * @return The packet.
+	 */
+	private Packet writeWordWise() {
+		PacketBuilder builder = PacketBuilder.lease();
+		builder.startBitAccess();
+		for(int i = 0; i < values.length; i++) {
+			builder.putBits(WIDTHS[i % WIDTHS.length], values[i]);
+		}
+		builder.finishBitAccess();
+		return builder.toPacket();
+	}
+
+	/**
+	 * Runs the scenario and prints its results.
+	 * @param warmUp The number of warm up rounds.
+	 * @param rounds The number of measured rounds.
+	 */
+	public void run(int warmUp, int rounds) {
+		byte[] expected = writeByteWise();
+		Packet packet = writeWordWise();
+		byte[] actual = new byte[packet.getLength()];
+		packet.get(actual);
+		packet.release();
+		if(!Arrays.equals(expected, actual)) {
+			throw new IllegalStateException("The writers disagree.");
+		}
+		for(int i = 0; i < warmUp; i++) {
+			checksum += writeByteWise().length;
+			packet = writeWordWise();
+			checksum += packet.getLength();
+			packet.release();
+		}
+		long start = System.nanoTime();
+		for(int i = 0; i < rounds; i++) {
+			checksum += writeByteWise().length;
+		}
+		print("byte-wise", rounds, System.nanoTime() - start);
+		start = System.nanoTime();
+		for(int i = 0; i < rounds; i++) {
+			packet = writeWordWise();
+			checksum += packet.getLength();
+			packet.release();
+		}
+		print("word-wise", rounds, System.nanoTime() - start);
+		if(checksum == 0) {
+			System.out.println();
+		}
+	}
+
+	/**
+	 * Prints a measurement.
+	 * @param writer The name of the writer.
+	 * @param rounds The number of packets written.
+	 * @param nanos The time taken, in nanoseconds.
+	 */
+	private void print(String writer, int rounds, long nanos) {
+		System.out.println(String.format("%-9d %-12s %12.0f %13d", values.length / WIDTHS.length, writer,
+				rounds / (nanos / 1000000000.0), nanos / rounds));
+	}
+
+}
@@ -0,0 +1,67 @@
+package org.hyperion.bench;
+
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.WriteRequest;
+import org.hyperion.rs2.net.Packet;
+
+/**
+ * A filter which counts the bytes in every packet written to a session and
+ * then drops the packet, so benchmarks measure the encoders and not the
+ * network. A leased packet is released, as the encoder would.
+ */
+public class ByteCountingFilter extends IoFilterAdapter {
+
+	/**
+	 * The number of bytes written.
+	 */
+	private long bytes = 0;
+
+	/**
+	 * The number of packets written.
+	 */
+	private long packets = 0;
+
+	@Override
+	public void filterWrite(NextFilter nextFilter, IoSession session, WriteRequest writeRequest) throws Exception {
+		Object message = writeRequest.getMessage();
+		if(message instanceof Packet) {
+			Packet packet = (Packet) message;
+			int header = packet.isRaw() ? 0 : 1;
+			if(packet.getType() == Packet.Type.VARIABLE) {
+				header += 1;
+			} else if(packet.getType() == Packet.Type.VARIABLE_SHORT) {
+				header += 2;
+			}
+			bytes += header + packet.getLength();
+			packets++;
+			packet.release();
+		}
+		writeRequest.getFuture().setWritten();
+	}
+
+	/**
+	 * Gets the number of bytes written.
+	 * @return The number of bytes.
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Gets the number of packets written.
+	 * @return The number of packets.
+	 */
+	public long getPackets() {
+		return packets;
+	}
+
+	/**
+	 * Resets the counters.
+	 */
+	public void reset() {
+		bytes = 0;
+		packets = 0;
+	}
+
+}
@@ -0,0 +1,205 @@
+package org.hyperion.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.mina.core.session.DummySession;
+import org.hyperion.rs2.Constants;
+import org.hyperion.rs2.model.Animation;
+import org.hyperion.rs2.model.ChatMessage;
+import org.hyperion.rs2.model.Entity;
+import org.hyperion.rs2.model.Location;
+import org.hyperion.rs2.model.NPC;
+import org.hyperion.rs2.model.NPCDefinition;
+import org.hyperion.rs2.model.Player;
+import org.hyperion.rs2.model.PlayerDetails;
+import org.hyperion.rs2.model.World;
+import org.hyperion.rs2.model.UpdateFlags.UpdateFlag;
+import org.hyperion.rs2.net.ISAACCipher;
+import org.hyperion.rs2.task.impl.NPCResetTask;
+import org.hyperion.rs2.task.impl.PlayerResetTask;
+
+/**
+ * <p>A synthetic crowd of players and npcs packed into a single region, used
+ * to benchmark the update encoders.</p>
+ *
+ * <p>The players have no connection. Each is given a dummy session whose
+ * filter counts and drops the packets written to it. Between cycles the crowd
+ * is stirred: everyone takes a step in a random direction and some chat or
+ * animate, so every cycle has movement and update blocks to encode. The
+ * steps go through <code>setLocation</code>, so the interest and view
+ * distance of each observer change as they would in the game. Everyone
+ * stays within the crowd's spread, which is inside one region, so region
+ * hand-off is not measured.</p>
+ */
+public class Crowd {
+
+	/**
+	 * The centre of the crowd, in the middle of a region.
+	 */
+	private static final Location CENTRE = Location.create(3215, 3215, 0);
+
+	/**
+	 * The distance from the centre which the crowd spreads out to, keeping
+	 * everyone in the same region and in view of each other.
+	 */
+	private static final int SPREAD = 7;
+
+	/**
+	 * The chance out of 100 that an entity chats or animates each cycle.
+	 */
+	private static final int UPDATE_CHANCE = 10;
+
+	/**
+	 * The id of the npc the crowd is made of, a man.
+	 */
+	private static final int NPC_ID = 1;
+
+	/**
+	 * The packed chat message players say.
+	 */
+	private static final byte[] CHAT_TEXT = new byte[] { 0x12, 0x34, 0x56, 0x78 };
+
+	/**
+	 * The players.
+	 */
+	private final List<Player> players = new ArrayList<Player>();
+
+	/**
+	 * The npcs.
+	 */
+	private final List<NPC> npcs = new ArrayList<NPC>();
+
+	/**
+	 * The filter which counts the bytes written to every player.
+	 */
+	private final ByteCountingFilter filter = new ByteCountingFilter();
+
+	/**
+	 * The random number generator, seeded so every run is the same.
+	 */
+	private final Random random = new Random(317);
+
+	/**
+	 * Creates a crowd and registers it with the world.
+	 * @param playerCount The number of players.
+	 * @param npcCount The number of npcs.
+	 */
+	public Crowd(int playerCount, int npcCount) {
+		for(int i = 0; i < playerCount; i++) {
+			DummySession session = new DummySession();
+			session.getFilterChain().addFirst("counter", filter);
+			int[] key = new int[] { i, i, i, i };
+			Player player = new Player(new PlayerDetails(session, "bench" + i, "bench", i, new ISAACCipher(key), new ISAACCipher(key)));
+			player.setLocation(randomLocation());
+			player.setActive(true);
+			World.getWorld().getPlayers().add(player);
+			players.add(player);
+		}
+		for(int i = 0; i < npcCount; i++) {
+			NPC npc = new NPC(NPCDefinition.forId(NPC_ID));
+			npc.setLocation(randomLocation());
+			World.getWorld().register(npc);
+			npcs.add(npc);
+		}
+	}
+
+	/**
+	 * Picks a random location near the centre.
+	 * @return The location.
+	 */
+	private Location randomLocation() {
+		return CENTRE.transform(random.nextInt(SPREAD * 2 + 1) - SPREAD, random.nextInt(SPREAD * 2 + 1) - SPREAD, 0);
+	}
+
+	/**
+	 * Moves an entity one step in a random direction, turning back if the
+	 * step would leave the crowd's spread.
+	 * @param entity The entity.
+	 */
+	private void step(Entity entity) {
+		int direction = random.nextInt(8);
+		Location location = entity.getLocation();
+		int x = location.getX() + Constants.DIRECTION_DELTA_X[direction];
+		int y = location.getY() + Constants.DIRECTION_DELTA_Y[direction];
+		if(Math.abs(x - CENTRE.getX()) > SPREAD || Math.abs(y - CENTRE.getY()) > SPREAD) {
+			/*
+			 * The directions are laid out so the opposite of each is at the
+			 * mirrored position.
+			 */
+			direction = 7 - direction;
+			x = location.getX() + Constants.DIRECTION_DELTA_X[direction];
+			y = location.getY() + Constants.DIRECTION_DELTA_Y[direction];
+		}
+		entity.getSprites().setSprites(direction, -1);
+		entity.setLocation(Location.create(x, y, location.getZ()));
+	}
+
+	/**
+	 * Stirs the crowd for the next cycle.
+	 */
+	public void stir() {
+		for(Player player : players) {
+			step(player);
+			int roll = random.nextInt(100);
+			if(roll < UPDATE_CHANCE) {
+				player.setCurrentChatMessage(new ChatMessage(0, 0, CHAT_TEXT));
+				player.getUpdateFlags().flag(UpdateFlag.CHAT);
+			} else if(roll < UPDATE_CHANCE * 2) {
+				player.playAnimation(Animation.create(866));
+			}
+		}
+		for(NPC npc : npcs) {
+			step(npc);
+			if(random.nextInt(100) < UPDATE_CHANCE) {
+				npc.playAnimation(Animation.create(866));
+			}
+		}
+	}
+
+	/**
+	 * Resets every entity at the end of a cycle, as the server does.
+	 */
+	public void reset() {
+		for(Player player : players) {
+			new PlayerResetTask(player).execute(null);
+		}
+		for(NPC npc : npcs) {
+			new NPCResetTask(npc).execute(null);
+		}
+		World.getWorld().getRegionManager().getInterestManager().advance();
+	}
+
+	/**
+	 * Removes the crowd from the world.
+	 */
+	public void destroy() {
+		for(Player player : players) {
+			player.destroy();
+			World.getWorld().getPlayers().remove(player);
+		}
+		for(NPC npc : npcs) {
+			World.getWorld().unregister(npc);
+		}
+		players.clear();
+		npcs.clear();
+	}
+
+	/**
+	 * Gets the players.
+	 * @return The players.
+	 */
+	public List<Player> getPlayers() {
+		return players;
+	}
+
+	/**
+	 * Gets the filter which counts the bytes written to every player.
+	 * @return The filter.
+	 */
+	public ByteCountingFilter getFilter() {
+		return filter;
+	}
+
+}
@@ -0,0 +1,210 @@
+package org.hyperion.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+import org.hyperion.rs2.GameEngine;
+import org.hyperion.rs2.model.Player;
+import org.hyperion.rs2.model.World;
+import org.hyperion.rs2.task.Task;
+import org.hyperion.rs2.task.impl.NPCUpdateTask;
+import org.hyperion.rs2.task.impl.PlayerUpdateTask;
+
+/**
+ * <p>A repeatable microbenchmark of the player and npc update encoders.</p>
+ *
+ * <p>Each scenario builds a <code>Crowd</code> and runs a number of warm up
+ * cycles, which are thrown away, followed by the measured cycles. In every
+ * cycle the update task of each observer is run on its own, on this thread,
+ * and timed. The throughput, the bytes written and the bytes allocated are
+ * reported per observer, that is per call to <code>execute</code>.</p>
+ *
+ * <p>Usage: <code>UpdateBenchmark [warm up cycles] [measured cycles]</code>.
+ * The allocation figures need a JVM which can count the bytes allocated by a
+ * thread, and are left out otherwise.</p>
+ */
+public class UpdateBenchmark {
+
+	/**
+	 * The number of players and npcs in each scenario.
+	 */
+	private static final int[][] SCENARIOS = new int[][] {
+		{ 50, 0 }, { 255, 0 }, { 2000, 0 }, { 50, 255 }, { 50, 2000 },
+	};
+
+	/**
+	 * The entry point of the benchmark.
+	 * @param args The command line arguments.
+	 * @throws Exception if the world cannot be initialised.
+	 */
+	public static void main(String[] args) throws Exception {
+		int warmUp = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		int cycles = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+		/*
+		 * The world starts threads which are never shut down, so exit
+		 * explicitly even if a scenario fails.
+		 */
+		try {
+			World.getWorld().init(new GameEngine());
+			System.out.println("scenario           encoder   observers/s      ns/op   bytes/op   alloc/op");
+			for(int[] scenario : SCENARIOS) {
+				new UpdateBenchmark(scenario[0], scenario[1]).run(warmUp, cycles);
+			}
+		} catch(Throwable t) {
+			t.printStackTrace();
+			System.exit(1);
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * The totals of one encoder over the measured cycles.
+	 */
+	private static class Measurement {
+
+		/**
+		 * The name of the encoder.
+		 */
+		private final String name;
+
+		/**
+		 * The number of observers updated.
+		 */
+		private long operations = 0;
+
+		/**
+		 * The time taken, in nanoseconds.
+		 */
+		private long nanos = 0;
+
+		/**
+		 * The number of bytes written.
+		 */
+		private long bytes = 0;
+
+		/**
+		 * The number of bytes allocated, or -1 if they cannot be counted.
+		 */
+		private long allocated = 0;
+
+		/**
+		 * Creates the measurement.
+		 * @param name The name of the encoder.
+		 */
+		public Measurement(String name) {
+			this.name = name;
+		}
+
+	}
+
+	/**
+	 * The thread bean, used to count bytes allocated by this thread.
+	 */
+	private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	/**
+	 * The number of players.
+	 */
+	private final int playerCount;
+
+	/**
+	 * The number of npcs.
+	 */
+	private final int npcCount;
+
+	/**
+	 * Creates a scenario.
+	 * @param playerCount The number of players.
+	 * @param npcCount The number of npcs.
+	 */
+	public UpdateBenchmark(int playerCount, int npcCount) {
+		this.playerCount = playerCount;
+		this.npcCount = npcCount;
+	}
+
+	/**
+	 * Runs the scenario and prints its results.
+	 * @param warmUp The number of warm up cycles.
+	 * @param cycles The number of measured cycles.
+	 */
+	public void run(int warmUp, int cycles) {
+		Crowd crowd = new Crowd(playerCount, npcCount);
+		try {
+			List<Player> players = crowd.getPlayers();
+			Task[] playerTasks = new Task[players.size()];
+			Task[] npcTasks = new Task[players.size()];
+			for(int i = 0; i < playerTasks.length; i++) {
+				playerTasks[i] = new PlayerUpdateTask(players.get(i));
+				npcTasks[i] = new NPCUpdateTask(players.get(i));
+			}
+			Measurement playerUpdate = new Measurement("player");
+			Measurement npcUpdate = new Measurement("npc");
+			for(int cycle = 0; cycle < warmUp + cycles; cycle++) {
+				boolean measured = cycle >= warmUp;
+				crowd.stir();
+				measure(crowd, playerTasks, measured ? playerUpdate : null);
+				measure(crowd, npcTasks, measured ? npcUpdate : null);
+				crowd.reset();
+			}
+			String scenario = playerCount + "p/" + npcCount + "n";
+			print(scenario, playerUpdate);
+			print(scenario, npcUpdate);
+		} finally {
+			crowd.destroy();
+		}
+	}
+
+	/**
+	 * Runs one encoder for every observer.
+	 * @param crowd The crowd.
+	 * @param tasks The update task of each observer.
+	 * @param measurement The measurement to add to, or <code>null</code> if
+	 * this is a warm up cycle.
+	 */
+	private void measure(Crowd crowd, Task[] tasks, Measurement measurement) {
+		crowd.getFilter().reset();
+		long allocatedBefore = getAllocatedBytes();
+		long start = System.nanoTime();
+		for(Task task : tasks) {
+			task.execute(null);
+		}
+		long elapsed = System.nanoTime() - start;
+		long allocatedAfter = getAllocatedBytes();
+		if(measurement != null) {
+			measurement.operations += tasks.length;
+			measurement.nanos += elapsed;
+			measurement.bytes += crowd.getFilter().getBytes();
+			if(allocatedBefore < 0 || measurement.allocated < 0) {
+				measurement.allocated = -1;
+			} else {
+				measurement.allocated += allocatedAfter - allocatedBefore;
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of bytes allocated by this thread so far.
+	 * @return The number of bytes, or -1 if the JVM cannot count them.
+	 */
+	private long getAllocatedBytes() {
+		if(threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	/**
+	 * Prints a measurement.
+	 * @param scenario The name of the scenario.
+	 * @param measurement The measurement.
+	 */
+	private static void print(String scenario, Measurement measurement) {
+		long ops = Math.max(1, measurement.operations);
+		double seconds = measurement.nanos / 1000000000.0;
+		String allocated = measurement.allocated < 0 ? "n/a" : Long.toString(measurement.allocated / ops);
+		System.out.println(String.format("%-18s %-8s %12.0f %10d %10d %10s", scenario, measurement.name,
+				measurement.operations / seconds, measurement.nanos / ops, measurement.bytes / ops, allocated));
+	}
+
+}
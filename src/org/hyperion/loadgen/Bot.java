@@ -0,0 +1,465 @@
+package org.hyperion.loadgen;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.hyperion.Server;
+import org.hyperion.rs2.Constants;
+import org.hyperion.rs2.net.ISAACCipher;
+import org.hyperion.rs2.net.PacketBuilder;
+import org.hyperion.rs2.net.RS2LoginDecoder;
+import org.hyperion.rs2.util.TextUtils;
+
+/**
+ * <p>A headless client which logs in to the game server over the 317
+ * protocol and then acts out a <code>BotProfile</code>.</p>
+ *
+ * <p>Each bot reads from its socket on its own thread, decoding every packet
+ * header with its ISAAC cipher so the stream stays in sync, and sends its
+ * actions from whichever thread calls {@link #act(Random)}.</p>
+ */
+public class Bot implements Runnable {
+
+	/**
+	 * Logger instance.
+	 */
+	private static final Logger logger = Logger.getLogger(Bot.class.getName());
+
+	/**
+	 * The packet size of a variable length packet with a byte length.
+	 */
+	private static final int VARIABLE = -1;
+
+	/**
+	 * The packet size of a variable length packet with a short length.
+	 */
+	private static final int VARIABLE_SHORT = -2;
+
+	/**
+	 * The packet size of a packet which the server never sends.
+	 */
+	private static final int UNKNOWN = -3;
+
+	/**
+	 * The opcode of the player update packet.
+	 */
+	private static final int PLAYER_UPDATE = 81;
+
+	/**
+	 * The sizes of the packets the server sends, taken from
+	 * <code>ActionSender</code> and the update tasks.
+	 */
+	private static final int[] PACKET_SIZES = new int[256];
+
+	/**
+	 * The socket timeout, in milliseconds.
+	 */
+	private static final int TIMEOUT = 30000;
+
+	static {
+		for(int i = 0; i < PACKET_SIZES.length; i++) {
+			PACKET_SIZES[i] = UNKNOWN;
+		}
+		PACKET_SIZES[27] = 0;
+		PACKET_SIZES[34] = VARIABLE_SHORT;
+		PACKET_SIZES[53] = VARIABLE_SHORT;
+		PACKET_SIZES[65] = VARIABLE_SHORT;
+		PACKET_SIZES[71] = 3;
+		PACKET_SIZES[73] = 4;
+		PACKET_SIZES[81] = VARIABLE_SHORT;
+		PACKET_SIZES[104] = VARIABLE;
+		PACKET_SIZES[107] = 0;
+		PACKET_SIZES[109] = 0;
+		PACKET_SIZES[126] = VARIABLE_SHORT;
+		PACKET_SIZES[134] = 6;
+		PACKET_SIZES[241] = VARIABLE_SHORT;
+		PACKET_SIZES[246] = 6;
+		PACKET_SIZES[248] = 4;
+		PACKET_SIZES[249] = 3;
+		PACKET_SIZES[253] = VARIABLE;
+	}
+
+	/**
+	 * The server address.
+	 */
+	private final InetSocketAddress address;
+
+	/**
+	 * The username.
+	 */
+	private final String name;
+
+	/**
+	 * The password.
+	 */
+	private final String password;
+
+	/**
+	 * The profile.
+	 */
+	private final BotProfile profile;
+
+	/**
+	 * The x coordinate the bot wanders around.
+	 */
+	private final int homeX;
+
+	/**
+	 * The y coordinate the bot wanders around.
+	 */
+	private final int homeY;
+
+	/**
+	 * The statistics.
+	 */
+	private final LoadStatistics statistics;
+
+	/**
+	 * The socket.
+	 */
+	private Socket socket;
+
+	/**
+	 * The output stream.
+	 */
+	private DataOutputStream out;
+
+	/**
+	 * The cipher used for packets sent to the server.
+	 */
+	private ISAACCipher outCipher;
+
+	/**
+	 * A flag indicating if the bot is logged in.
+	 */
+	private volatile boolean loggedIn = false;
+
+	/**
+	 * A flag indicating if the bot has been asked to stop.
+	 */
+	private volatile boolean stopping = false;
+
+	/**
+	 * Creates the bot.
+	 * @param address The server address.
+	 * @param name The username.
+	 * @param password The password.
+	 * @param profile The profile.
+	 * @param homeX The x coordinate the bot wanders around.
+	 * @param homeY The y coordinate the bot wanders around.
+	 * @param statistics The statistics.
+	 */
+	public Bot(InetSocketAddress address, String name, String password, BotProfile profile, int homeX, int homeY, LoadStatistics statistics) {
+		this.address = address;
+		this.name = name;
+		this.password = password;
+		this.profile = profile;
+		this.homeX = homeX;
+		this.homeY = homeY;
+		this.statistics = statistics;
+	}
+
+	@Override
+	public void run() {
+		DataInputStream in;
+		ISAACCipher inCipher;
+		try {
+			socket = new Socket();
+			socket.setTcpNoDelay(true);
+			socket.setSoTimeout(TIMEOUT);
+			socket.connect(address, TIMEOUT);
+			in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			inCipher = login(in);
+		} catch(IOException ex) {
+			logger.warning("Bot " + name + " could not log in : " + ex.getMessage());
+			statistics.failed();
+			close();
+			return;
+		}
+		if(inCipher == null) {
+			statistics.failed();
+			close();
+			return;
+		}
+		loggedIn = true;
+		statistics.loggedIn();
+		try {
+			read(in, inCipher);
+		} catch(IOException ex) {
+			if(!stopping) {
+				logger.warning("Bot " + name + " disconnected : " + ex.getMessage());
+			}
+		} finally {
+			loggedIn = false;
+			statistics.disconnected();
+			close();
+		}
+	}
+
+	/**
+	 * Performs the login handshake.
+	 * @param in The input stream.
+	 * @return The cipher for packets received from the server, or
+	 * <code>null</code> if the server refused the login.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	private ISAACCipher login(DataInputStream in) throws IOException {
+		Random random = new Random();
+
+		out.write(RS2LoginDecoder.OPCODE_GAME);
+		out.write(0);
+		out.flush();
+
+		in.readFully(new byte[8]);
+		in.readUnsignedByte();
+		long serverKey = in.readLong();
+		long clientKey = random.nextLong();
+
+		PacketBuilder block = new PacketBuilder();
+		block.put((byte) 10);
+		block.putLong(clientKey);
+		block.putLong(serverKey);
+		block.putInt(random.nextInt());
+		block.putRS2String(name);
+		block.putRS2String(password);
+		byte[] blockData = toBytes(block);
+
+		out.write(16);
+		out.write(41 + blockData.length);
+		out.write(255);
+		out.writeShort(Server.VERSION);
+		out.write(0);
+		for(int i = 0; i < 9; i++) {
+			out.writeInt(0);
+		}
+		out.write(blockData.length);
+		out.write(blockData);
+		out.flush();
+
+		int returnCode = in.readUnsignedByte();
+		if(returnCode != 2) {
+			logger.warning("Bot " + name + " was refused : return code " + returnCode);
+			return null;
+		}
+		in.readUnsignedByte();
+		in.readUnsignedByte();
+
+		int[] sessionKey = new int[] {
+			(int) (clientKey >> 32), (int) clientKey, (int) (serverKey >> 32), (int) serverKey,
+		};
+		outCipher = new ISAACCipher(sessionKey);
+		for(int i = 0; i < 4; i++) {
+			sessionKey[i] += 50;
+		}
+		return new ISAACCipher(sessionKey);
+	}
+
+	/**
+	 * Reads packets until the connection is closed.
+	 * @param in The input stream.
+	 * @param inCipher The cipher for packets received from the server.
+	 * @throws IOException if an I/O error occurs or an unknown packet is
+	 * received.
+	 */
+	private void read(DataInputStream in, ISAACCipher inCipher) throws IOException {
+		byte[] payload = new byte[4096];
+		long lastUpdate = 0;
+		while(!stopping) {
+			int opcode = (in.readUnsignedByte() - inCipher.getNextValue()) & 0xFF;
+			int size = PACKET_SIZES[opcode];
+			int header = 1;
+			if(size == VARIABLE) {
+				size = in.readUnsignedByte();
+				header += 1;
+			} else if(size == VARIABLE_SHORT) {
+				size = in.readUnsignedShort();
+				header += 2;
+			} else if(size == UNKNOWN) {
+				throw new IOException("Unknown packet : " + opcode);
+			}
+			if(size > payload.length) {
+				payload = new byte[size];
+			}
+			in.readFully(payload, 0, size);
+			statistics.received(header + size);
+			if(opcode == PLAYER_UPDATE) {
+				long now = System.nanoTime();
+				if(lastUpdate != 0) {
+					statistics.tick(now - lastUpdate);
+				}
+				lastUpdate = now;
+			}
+		}
+	}
+
+	/**
+	 * Acts out one tick of the bot's profile, if it is logged in.
+	 * @param random The random number generator.
+	 */
+	public void act(Random random) {
+		if(loggedIn) {
+			profile.act(this, random);
+		}
+	}
+
+	/**
+	 * Walks to a tile.
+	 * @param opcode The walking packet opcode.
+	 * @param x The x coordinate.
+	 * @param y The y coordinate.
+	 * @param run <code>true</code> to run, <code>false</code> to walk.
+	 */
+	public void walk(int opcode, int x, int y, boolean run) {
+		PacketBuilder bldr = new PacketBuilder();
+		bldr.putLEShortA(x);
+		bldr.putLEShort(y);
+		bldr.putByteC(run ? 1 : 0);
+		if(opcode == 248) {
+			/*
+			 * The minimap packet carries 14 bytes of anti-cheat data.
+			 */
+			bldr.put(new byte[14]);
+		}
+		send(opcode, bldr);
+	}
+
+	/**
+	 * Says a public chat message.
+	 * @param message The message.
+	 */
+	public void chat(String message) {
+		byte[] packed = new byte[message.length()];
+		TextUtils.textPack(packed, message);
+		PacketBuilder bldr = new PacketBuilder();
+		bldr.putByteA(0);
+		bldr.putByteA(0);
+		bldr.putReverseA(packed, 0, getPackedLength(message));
+		send(4, bldr);
+	}
+
+	/**
+	 * Clicks the first option of an object.
+	 * @param x The x coordinate.
+	 * @param y The y coordinate.
+	 * @param id The object id.
+	 */
+	public void clickObject(int x, int y, int id) {
+		PacketBuilder bldr = new PacketBuilder();
+		bldr.putLEShortA(x);
+		bldr.putShort(id);
+		bldr.putShortA(y);
+		send(132, bldr);
+	}
+
+	/**
+	 * Sends a packet, adding a length header if its size is variable.
+	 * @param opcode The opcode.
+	 * @param bldr The builder holding the payload.
+	 */
+	private void send(int opcode, PacketBuilder bldr) {
+		byte[] payload = toBytes(bldr);
+		boolean variable = Constants.PACKET_SIZES[opcode] == -1;
+		synchronized(this) {
+			try {
+				out.write((opcode + outCipher.getNextValue()) & 0xFF);
+				if(variable) {
+					out.write(payload.length);
+				}
+				out.write(payload);
+				out.flush();
+				statistics.sent(1 + (variable ? 1 : 0) + payload.length);
+			} catch(IOException ex) {
+				close();
+			}
+		}
+	}
+
+	/**
+	 * Stops the bot and closes its connection.
+	 */
+	public void stop() {
+		stopping = true;
+		close();
+	}
+
+	/**
+	 * Closes the connection.
+	 */
+	private void close() {
+		if(socket != null) {
+			try {
+				socket.close();
+			} catch(IOException ex) {
+				// nothing more can be done
+			}
+		}
+	}
+
+	/**
+	 * Checks if the bot is logged in.
+	 * @return <code>true</code> if so, <code>false</code> if not.
+	 */
+	public boolean isLoggedIn() {
+		return loggedIn;
+	}
+
+	/**
+	 * Gets the x coordinate the bot wanders around.
+	 * @return The x coordinate.
+	 */
+	public int getHomeX() {
+		return homeX;
+	}
+
+	/**
+	 * Gets the y coordinate the bot wanders around.
+	 * @return The y coordinate.
+	 */
+	public int getHomeY() {
+		return homeY;
+	}
+
+	/**
+	 * Copies the payload of a packet builder into an array.
+	 * @param bldr The packet builder.
+	 * @return The payload.
+	 */
+	private static byte[] toBytes(PacketBuilder bldr) {
+		IoBuffer buffer = bldr.toPacket().getPayload();
+		byte[] data = new byte[buffer.remaining()];
+		buffer.get(data);
+		return data;
+	}
+
+	/**
+	 * Gets the number of bytes <code>TextUtils.textPack</code> packs a
+	 * message into. Characters near the start of the table take four bits,
+	 * and all others take eight.
+	 * @param message The message.
+	 * @return The number of bytes.
+	 */
+	private static int getPackedLength(String message) {
+		int nibbles = 0;
+		for(char c : message.toLowerCase().toCharArray()) {
+			int index = 0;
+			for(int i = 0; i < Constants.XLATE_TABLE.length; i++) {
+				if(c == Constants.XLATE_TABLE[i]) {
+					index = i;
+					break;
+				}
+			}
+			nibbles += index < 13 ? 1 : 2;
+		}
+		return (nibbles + 1) / 2;
+	}
+
+}
@@ -0,0 +1,123 @@
+package org.hyperion.loadgen;
+
+import java.util.Random;
+
+/**
+ * The scripted behaviours a bot can follow. Each profile is asked to act once
+ * per server tick.
+ */
+public enum BotProfile {
+
+	/**
+	 * Stands still, only receiving updates.
+	 */
+	IDLE {
+		@Override
+		public void act(Bot bot, Random random) {
+		}
+	},
+
+	/**
+	 * Walks to a random nearby tile every few ticks.
+	 */
+	WALK {
+		@Override
+		public void act(Bot bot, Random random) {
+			if(random.nextInt(3) == 0) {
+				walk(bot, random);
+			}
+		}
+	},
+
+	/**
+	 * Wanders slowly and talks often.
+	 */
+	CHAT {
+		@Override
+		public void act(Bot bot, Random random) {
+			if(random.nextInt(8) == 0) {
+				walk(bot, random);
+			}
+			if(random.nextInt(5) == 0) {
+				bot.chat(MESSAGES[random.nextInt(MESSAGES.length)]);
+			}
+		}
+	},
+
+	/**
+	 * Walks between trees and clicks on them.
+	 */
+	SKILL {
+		@Override
+		public void act(Bot bot, Random random) {
+			if(random.nextInt(10) == 0) {
+				walk(bot, random);
+			} else if(random.nextInt(6) == 0) {
+				int x = bot.getHomeX() + random.nextInt(RADIUS * 2 + 1) - RADIUS;
+				int y = bot.getHomeY() + random.nextInt(RADIUS * 2 + 1) - RADIUS;
+				bot.clickObject(x, y, TREE_ID);
+			}
+		}
+	},
+
+	/**
+	 * Picks one of the other active profiles at random every tick.
+	 */
+	MIXED {
+		@Override
+		public void act(Bot bot, Random random) {
+			switch(random.nextInt(3)) {
+			case 0:
+				WALK.act(bot, random);
+				break;
+			case 1:
+				CHAT.act(bot, random);
+				break;
+			default:
+				SKILL.act(bot, random);
+				break;
+			}
+		}
+	};
+
+	/**
+	 * The distance from home which bots wander.
+	 */
+	private static final int RADIUS = 8;
+
+	/**
+	 * The id of the object clicked by skilling bots, a normal tree.
+	 */
+	private static final int TREE_ID = 1276;
+
+	/**
+	 * The walking packet opcodes: minimap, game screen and command walking.
+	 */
+	private static final int[] WALK_OPCODES = new int[] { 248, 164, 98 };
+
+	/**
+	 * The messages bots say.
+	 */
+	private static final String[] MESSAGES = new String[] {
+		"hello", "selling lobbies", "anyone want to trade", "lol", "where is the bank", "nice weather today",
+	};
+
+	/**
+	 * Acts for one tick.
+	 * @param bot The bot.
+	 * @param random The random number generator.
+	 */
+	public abstract void act(Bot bot, Random random);
+
+	/**
+	 * Walks a bot to a random tile near its home.
+	 * @param bot The bot.
+	 * @param random The random number generator.
+	 */
+	private static void walk(Bot bot, Random random) {
+		int x = bot.getHomeX() + random.nextInt(RADIUS * 2 + 1) - RADIUS;
+		int y = bot.getHomeY() + random.nextInt(RADIUS * 2 + 1) - RADIUS;
+		bot.walk(WALK_OPCODES[random.nextInt(WALK_OPCODES.length)], x, y, random.nextBoolean());
+	}
+
+}
@@ -0,0 +1,205 @@
+package org.hyperion.loadgen;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.hyperion.rs2.RS2Server;
+import org.hyperion.rs2.model.Entity;
+import org.hyperion.rs2.util.LatencyHistogram;
+
+/**
+ * <p>Drives a number of headless bots against a running server to find out
+ * how many players it can hold.</p>
+ *
+ * <p>Bots are connected one at a time with a delay between each, so the ramp
+ * up can be watched, and then act out their profile once per tick. Every few
+ * seconds the number of bots online, the tick time seen by the bots and the
+ * traffic in each direction are logged.</p>
+ *
+ * <p>Usage: <code>LoadGenerator [host] [port] [bots] [profile] [ramp ms]
+ * [duration s]</code>. A duration of zero runs until the process is
+ * killed.</p>
+ */
+public class LoadGenerator {
+
+	/**
+	 * Logger instance.
+	 */
+	private static final Logger logger = Logger.getLogger(LoadGenerator.class.getName());
+
+	/**
+	 * The time between actions, in milliseconds, which matches the server's
+	 * cycle time.
+	 */
+	private static final int ACTION_INTERVAL = 600;
+
+	/**
+	 * The time between reports, in milliseconds.
+	 */
+	private static final int REPORT_INTERVAL = 5000;
+
+	/**
+	 * The password every bot logs in with.
+	 */
+	private static final String PASSWORD = "loadtest";
+
+	/**
+	 * The entry point of the load generator.
+	 * @param args The command line arguments.
+	 * @throws InterruptedException if interrupted while ramping up.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		String host = args.length > 0 ? args[0] : "localhost";
+		int port = args.length > 1 ? Integer.parseInt(args[1]) : RS2Server.PORT;
+		int count = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+		BotProfile profile = args.length > 3 ? BotProfile.valueOf(args[3].toUpperCase()) : BotProfile.MIXED;
+		int ramp = args.length > 4 ? Integer.parseInt(args[4]) : 50;
+		int duration = args.length > 5 ? Integer.parseInt(args[5]) : 0;
+		new LoadGenerator(new InetSocketAddress(host, port), count, profile).start(ramp, duration);
+	}
+
+	/**
+	 * The server address.
+	 */
+	private final InetSocketAddress address;
+
+	/**
+	 * The number of bots.
+	 */
+	private final int count;
+
+	/**
+	 * The profile every bot follows.
+	 */
+	private final BotProfile profile;
+
+	/**
+	 * The bots.
+	 */
+	private final List<Bot> bots = new ArrayList<Bot>();
+
+	/**
+	 * The statistics shared by every bot.
+	 */
+	private final LoadStatistics statistics = new LoadStatistics();
+
+	/**
+	 * The executor which makes bots act and logs reports.
+	 */
+	private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * The number of bytes received as of the last report.
+	 */
+	private long lastBytesIn = 0;
+
+	/**
+	 * The number of bytes sent as of the last report.
+	 */
+	private long lastBytesOut = 0;
+
+	/**
+	 * Creates the load generator.
+	 * @param address The server address.
+	 * @param count The number of bots.
+	 * @param profile The profile every bot follows.
+	 */
+	public LoadGenerator(InetSocketAddress address, int count, BotProfile profile) {
+		this.address = address;
+		this.count = count;
+		this.profile = profile;
+	}
+
+	/**
+	 * Connects the bots and runs the test.
+	 * @param ramp The delay between connecting each bot, in milliseconds.
+	 * @param duration The length of the test, in seconds, or zero to run
+	 * forever.
+	 * @throws InterruptedException if interrupted while ramping up.
+	 */
+	public void start(int ramp, int duration) throws InterruptedException {
+		logger.info("Starting " + count + " " + profile.name().toLowerCase() + " bots against " + address + "...");
+		scheduler.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				report();
+			}
+		}, REPORT_INTERVAL, REPORT_INTERVAL, TimeUnit.MILLISECONDS);
+		final Random random = new Random();
+		for(int i = 0; i < count; i++) {
+			final Bot bot = new Bot(address, "bot" + i, PASSWORD, profile, Entity.DEFAULT_LOCATION.getX(), Entity.DEFAULT_LOCATION.getY(), statistics);
+			bots.add(bot);
+			Thread thread = new Thread(bot, "bot" + i);
+			thread.setDaemon(true);
+			thread.start();
+			/*
+			 * Spread the bots over the tick so they do not all send at once.
+			 */
+			scheduler.scheduleAtFixedRate(new Runnable() {
+				@Override
+				public void run() {
+					bot.act(random);
+				}
+			}, random.nextInt(ACTION_INTERVAL), ACTION_INTERVAL, TimeUnit.MILLISECONDS);
+			if(ramp > 0) {
+				Thread.sleep(ramp);
+			}
+		}
+		logger.info("All bots started.");
+		if(duration > 0) {
+			scheduler.schedule(new Runnable() {
+				@Override
+				public void run() {
+					stop();
+				}
+			}, duration, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Logs a report and resets the tick time histogram.
+	 */
+	private void report() {
+		LatencyHistogram ticks = statistics.getTickIntervals();
+		long bytesIn = statistics.getBytesIn();
+		long bytesOut = statistics.getBytesOut();
+		double seconds = REPORT_INTERVAL / 1000.0;
+		logger.info("online=" + statistics.getOnline() + " failed=" + statistics.getFailed()
+				+ " dropped=" + statistics.getDisconnected()
+				+ " tick p50=" + millis(ticks.getPercentile(50)) + "ms p99=" + millis(ticks.getPercentile(99))
+				+ "ms max=" + millis(ticks.getMaximum()) + "ms"
+				+ " in=" + String.format("%.1f", (bytesIn - lastBytesIn) / 1024 / seconds) + "KB/s"
+				+ " out=" + String.format("%.1f", (bytesOut - lastBytesOut) / 1024 / seconds) + "KB/s");
+		ticks.reset();
+		lastBytesIn = bytesIn;
+		lastBytesOut = bytesOut;
+	}
+
+	/**
+	 * Logs a final report, disconnects every bot and shuts down.
+	 */
+	private void stop() {
+		report();
+		logger.info("Stopping bots...");
+		for(Bot bot : bots) {
+			bot.stop();
+		}
+		scheduler.shutdown();
+	}
+
+	/**
+	 * Converts a time in nanoseconds to whole milliseconds.
+	 * @param nanos The time in nanoseconds.
+	 * @return The time in milliseconds.
+	 */
+	private static long millis(long nanos) {
+		return nanos / 1000000L;
+	}
+
+}
@@ -0,0 +1,166 @@
+package org.hyperion.loadgen;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hyperion.rs2.util.LatencyHistogram;
+
+/**
+ * Statistics shared by every bot in a load test.
+ */
+public class LoadStatistics {
+
+	/**
+	 * The number of bots which are logged in.
+	 */
+	private final AtomicInteger online = new AtomicInteger(0);
+
+	/**
+	 * The number of bots which failed to connect or log in.
+	 */
+	private final AtomicInteger failed = new AtomicInteger(0);
+
+	/**
+	 * The number of bots which were disconnected after logging in.
+	 */
+	private final AtomicInteger disconnected = new AtomicInteger(0);
+
+	/**
+	 * The number of bytes received from the server.
+	 */
+	private final AtomicLong bytesIn = new AtomicLong(0);
+
+	/**
+	 * The number of bytes sent to the server.
+	 */
+	private final AtomicLong bytesOut = new AtomicLong(0);
+
+	/**
+	 * The number of packets received from the server.
+	 */
+	private final AtomicLong packetsIn = new AtomicLong(0);
+
+	/**
+	 * The number of packets sent to the server.
+	 */
+	private final AtomicLong packetsOut = new AtomicLong(0);
+
+	/**
+	 * The time between player updates, as seen by each bot, which tracks the
+	 * server's tick time.
+	 */
+	private final LatencyHistogram tickIntervals = new LatencyHistogram();
+
+	/**
+	 * Called when a bot has logged in.
+	 */
+	public void loggedIn() {
+		online.incrementAndGet();
+	}
+
+	/**
+	 * Called when a bot fails to connect or log in.
+	 */
+	public void failed() {
+		failed.incrementAndGet();
+	}
+
+	/**
+	 * Called when a bot which had logged in is disconnected.
+	 */
+	public void disconnected() {
+		online.decrementAndGet();
+		disconnected.incrementAndGet();
+	}
+
+	/**
+	 * Records a packet received from the server.
+	 * @param bytes The size of the packet, including its header.
+	 */
+	public void received(int bytes) {
+		bytesIn.addAndGet(bytes);
+		packetsIn.incrementAndGet();
+	}
+
+	/**
+	 * Records a packet sent to the server.
+	 * @param bytes The size of the packet, including its header.
+	 */
+	public void sent(int bytes) {
+		bytesOut.addAndGet(bytes);
+		packetsOut.incrementAndGet();
+	}
+
+	/**
+	 * Records the time between two player updates received by a bot.
+	 * @param nanos The time, in nanoseconds.
+	 */
+	public void tick(long nanos) {
+		tickIntervals.record(nanos);
+	}
+
+	/**
+	 * Gets the number of bots which are logged in.
+	 * @return The number of bots.
+	 */
+	public int getOnline() {
+		return online.get();
+	}
+
+	/**
+	 * Gets the number of bots which failed to connect or log in.
+	 * @return The number of bots.
+	 */
+	public int getFailed() {
+		return failed.get();
+	}
+
+	/**
+	 * Gets the number of bots which were disconnected after logging in.
+	 * @return The number of bots.
+	 */
+	public int getDisconnected() {
+		return disconnected.get();
+	}
+
+	/**
+	 * Gets the number of bytes received from the server.
+	 * @return The number of bytes.
+	 */
+	public long getBytesIn() {
+		return bytesIn.get();
+	}
+
+	/**
+	 * Gets the number of bytes sent to the server.
+	 * @return The number of bytes.
+	 */
+	public long getBytesOut() {
+		return bytesOut.get();
+	}
+
+	/**
+	 * Gets the number of packets received from the server.
+	 * @return The number of packets.
+	 */
+	public long getPacketsIn() {
+		return packetsIn.get();
+	}
+
+	/**
+	 * Gets the number of packets sent to the server.
+	 * @return The number of packets.
+	 */
+	public long getPacketsOut() {
+		return packetsOut.get();
+	}
+
+	/**
+	 * Gets the histogram of times between player updates.
+	 * @return The histogram.
+	 */
+	public LatencyHistogram getTickIntervals() {
+		return tickIntervals;
+	}
+
+}
@@ -4,6 +4,7 @@ import org.apache.mina.core.service.IoHandlerAdapter;
 import org.apache.mina.core.session.IdleStatus;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.codec.ProtocolCodecFilter;
+import org.hyperion.rs2.model.Player;
 import org.hyperion.rs2.model.World;
 import org.hyperion.rs2.net.Packet;
 import org.hyperion.rs2.net.RS2CodecFactory;
@@ -31,12 +32,24 @@ public class ConnectionHandler extends IoHandlerAdapter {
 
 	@Override
 	public void messageReceived(IoSession session, Object message) throws Exception {
-		engine.pushTask(new SessionMessageTask(session, (Packet) message));
+		Packet packet = (Packet) message;
+		Player player = (Player) session.getAttribute("player");
+		if(player == null) {
+			/*
+			 * A client whose login packet is dropped would wait forever, so
+			 * it is disconnected instead.
+			 */
+			if(!engine.pushTask(new SessionMessageTask(session, packet))) {
+				session.close(false);
+			}
+		} else if(!player.queuePacket(packet)) {
+			session.close(false);
+		}
 	}
 
 	@Override
 	public void sessionClosed(IoSession session) throws Exception {
-		engine.pushTask(new SessionClosedTask(session));
+		engine.pushCriticalTask(new SessionClosedTask(session));
 	}
 
 	@Override
@@ -48,7 +61,9 @@ public class ConnectionHandler extends IoHandlerAdapter {
 	public void sessionOpened(IoSession session) throws Exception {
 		session.setAttribute("remote", session.getRemoteAddress());
 		session.getFilterChain().addFirst("protocol", new ProtocolCodecFilter(RS2CodecFactory.LOGIN));
-		engine.pushTask(new SessionOpenedTask(session));
+		if(!engine.pushCriticalTask(new SessionOpenedTask(session))) {
+			session.close(false);
+		}
 	}
 
 }
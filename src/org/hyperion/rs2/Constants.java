@@ -76,6 +76,32 @@ public class Constants {
 	 */
 	public static final int MAX_NPCS = 32000;
 	
+	/**
+	 * The default number of packets handled for each player every cycle.
+	 */
+	public static final int PACKETS_PER_TICK = 10;
+	
+	/**
+	 * The number of packets a player may have queued before they are
+	 * disconnected for flooding.
+	 */
+	public static final int MAX_QUEUED_PACKETS = 200;
+	
+	/**
+	 * The default number of players each player's local list is kept to,
+	 * which can be changed with <code>playerViewBudget</code> in the
+	 * configuration file. In crowds the view distance shrinks to keep the
+	 * list within this size. The client cannot show more than 255.
+	 */
+	public static final int PLAYER_VIEW_BUDGET = 100;
+	
+	/**
+	 * The default time in milliseconds an empty region must go without any
+	 * activity before it is evicted, which can be changed with
+	 * <code>regionIdleTime</code> in the configuration file.
+	 */
+	public static final int REGION_IDLE_TIME = 300000;
+	
 	/**
 	 * An array of valid characters in a long username.
 	 */
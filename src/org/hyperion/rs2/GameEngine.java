@@ -1,17 +1,22 @@
 package org.hyperion.rs2;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutionException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
 
+import org.hyperion.rs2.event.TickProfiler.Phase;
 import org.hyperion.rs2.model.World;
 import org.hyperion.rs2.task.Task;
-import org.hyperion.util.BlockingExecutorService;
+import org.hyperion.util.MpscQueue;
 
 /**
  * The 'core' class of the server which processes all the logic tasks in one
@@ -22,10 +27,83 @@ import org.hyperion.util.BlockingExecutorService;
  */
 public class GameEngine implements Runnable {
 	
+	/**
+	 * The ways in which the engine thread can wait for tasks.
+	 */
+	public enum WaitStrategy {
+		
+		/**
+		 * The engine thread parks as soon as the queue is empty, and is woken
+		 * by the next task pushed.
+		 */
+		PARK,
+		
+		/**
+		 * The engine thread spins for a short while before parking, which
+		 * uses more CPU but picks up bursts of tasks sooner.
+		 */
+		SPIN_THEN_PARK,
+		
+	}
+	
+	/**
+	 * Logger instance.
+	 */
+	private static final Logger logger = Logger.getLogger(GameEngine.class.getName());
+	
+	/**
+	 * The most tasks which can be pending at once.
+	 */
+	private static final int TASK_QUEUE_CAPACITY = 16384;
+	
+	/**
+	 * The part of the queue which only critical tasks may use, so sessions
+	 * opening and closing, logins and update cycles are never refused
+	 * because of a flood of packets.
+	 */
+	private static final int RESERVED_CAPACITY = 2048;
+	
+	/**
+	 * The time a critical task waits before trying again to join a full
+	 * queue, in nanoseconds.
+	 */
+	private static final long CRITICAL_RETRY_DELAY = TimeUnit.MILLISECONDS.toNanos(1);
+	
+	/**
+	 * The most tasks which are taken off the queue at once.
+	 */
+	private static final int BATCH_SIZE = 256;
+	
+	/**
+	 * The number of times the engine thread checks for tasks before parking,
+	 * when spinning.
+	 */
+	private static final int SPIN_TRIES = 1000;
+	
 	/**
 	 * A queue of pending tasks.
 	 */
-	private final BlockingQueue<Task> tasks = new LinkedBlockingQueue<Task>();
+	private final MpscQueue<Task> tasks = new MpscQueue<Task>(TASK_QUEUE_CAPACITY);
+	
+	/**
+	 * The number of tasks which were rejected because the queue was full.
+	 */
+	private final AtomicLong rejectedTasks = new AtomicLong(0);
+	
+	/**
+	 * The tasks taken off the queue in the current batch.
+	 */
+	private final List<Task> batch = new ArrayList<Task>(BATCH_SIZE);
+	
+	/**
+	 * The wait strategy.
+	 */
+	private volatile WaitStrategy waitStrategy = WaitStrategy.PARK;
+	
+	/**
+	 * A flag indicating if the engine thread is, or is about to be, parked.
+	 */
+	private volatile boolean waiting = false;
 	
 	/**
 	 * The logic service.
@@ -33,9 +111,9 @@ public class GameEngine implements Runnable {
 	private final ScheduledExecutorService logicService = Executors.newScheduledThreadPool(1);
 	
 	/**
-	 * The task service, used by <code>ParallelTask</code>s.
+	 * The work-stealing task pool, used by <code>ParallelTask</code>s.
 	 */
-	private final BlockingExecutorService taskService = new BlockingExecutorService(Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()));
+	private final ForkJoinPool taskPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
 	
 	/**
 	 * The work service, generally for file I/O and other blocking operations.
@@ -45,7 +123,7 @@ public class GameEngine implements Runnable {
 	/**
 	 * Running flag.
 	 */
-	private boolean running = false;
+	private volatile boolean running = false;
 	
 	/**
 	 * Thread instance.
@@ -54,11 +132,93 @@ public class GameEngine implements Runnable {
 	
 	/**
 	 * Submits a new task which is processed on the logic thread as soon as
-	 * possible.
+	 * possible. This may be called from any thread.
+	 * @param task The task to submit.
+	 * @return <code>true</code> if the task was queued, <code>false</code> if
+	 * it was rejected because too many tasks are pending.
+	 */
+	public boolean pushTask(Task task) {
+		if(!offer(task, TASK_QUEUE_CAPACITY - RESERVED_CAPACITY)) {
+			long rejected = rejectedTasks.incrementAndGet();
+			logger.warning("Rejected task : " + task + " [rejected=" + rejected + "]");
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Submits a task which must not be dropped, such as a session being
+	 * opened or closed, a login or an update cycle. It may use the reserved
+	 * part of the queue, and if even that is full the calling thread waits
+	 * until there is room. This may be called from any thread but the engine
+	 * thread.
 	 * @param task The task to submit.
+	 * @return <code>true</code> if the task was queued, <code>false</code> if
+	 * the engine stopped before there was room for it.
+	 */
+	public boolean pushCriticalTask(Task task) {
+		if(offer(task, TASK_QUEUE_CAPACITY)) {
+			return true;
+		}
+		logger.warning("Task queue full, waiting to push : " + task);
+		while(running) {
+			LockSupport.parkNanos(CRITICAL_RETRY_DELAY);
+			if(offer(task, TASK_QUEUE_CAPACITY)) {
+				return true;
+			}
+		}
+		logger.severe("Dropped task as the engine stopped : " + task);
+		return false;
+	}
+	
+	/**
+	 * Adds a task to the queue and wakes the engine thread if needed.
+	 * @param task The task.
+	 * @param limit The most tasks the queue may hold once this one is added.
+	 * @return <code>true</code> if the task was queued, <code>false</code> if
+	 * not.
+	 */
+	private boolean offer(Task task, int limit) {
+		if(!tasks.offer(task, limit)) {
+			return false;
+		}
+		if(waiting) {
+			LockSupport.unpark(thread);
+		}
+		return true;
+	}
+	
+	/**
+	 * Gets the number of pending tasks.
+	 * @return The number of pending tasks.
 	 */
-	public void pushTask(Task task) {
-		tasks.offer(task);
+	public int getQueueDepth() {
+		return tasks.size();
+	}
+	
+	/**
+	 * Gets the number of tasks which have been rejected because too many
+	 * tasks were pending.
+	 * @return The number of rejected tasks.
+	 */
+	public long getRejectedTaskCount() {
+		return rejectedTasks.get();
+	}
+	
+	/**
+	 * Gets the wait strategy.
+	 * @return The wait strategy.
+	 */
+	public WaitStrategy getWaitStrategy() {
+		return waitStrategy;
+	}
+	
+	/**
+	 * Sets the wait strategy.
+	 * @param waitStrategy The wait strategy.
+	 */
+	public void setWaitStrategy(WaitStrategy waitStrategy) {
+		this.waitStrategy = waitStrategy;
 	}
 
 	/**
@@ -96,25 +256,55 @@ public class GameEngine implements Runnable {
 	public void run() {
 		try {
 			while(running) {
-				try {
-					final Task task = tasks.take();
-					submitLogic(new Runnable() {
-						@Override
-						public void run() {
-							task.execute(GameEngine.this);
-						}
-					});
-				} catch(InterruptedException e) {
+				if(tasks.drainTo(batch, BATCH_SIZE) == 0) {
+					await();
 					continue;
 				}
+				final Task[] drained = batch.toArray(new Task[batch.size()]);
+				batch.clear();
+				submitLogic(new Runnable() {
+					@Override
+					public void run() {
+						for(Task task : drained) {
+							task.execute(GameEngine.this);
+						}
+					}
+				});
 			}
 		} finally {
 			logicService.shutdown();
-			taskService.shutdown();
+			taskPool.shutdown();
 			workService.shutdown();
 		}
 	}
 
+	/**
+	 * Waits for a task to be pushed, using the current wait strategy. This
+	 * may return early, for example if the thread is interrupted.
+	 */
+	private void await() {
+		if(waitStrategy == WaitStrategy.SPIN_THEN_PARK) {
+			for(int i = 0; i < SPIN_TRIES; i++) {
+				if(!tasks.isEmpty()) {
+					return;
+				}
+				Thread.yield();
+			}
+		}
+		/*
+		 * The flag is raised before the queue is checked, so a task pushed
+		 * after the check always sees it and unparks this thread.
+		 */
+		waiting = true;
+		try {
+			if(running && tasks.isEmpty()) {
+				LockSupport.park(this);
+			}
+		} finally {
+			waiting = false;
+		}
+	}
+
 	/**
 	 * Schedules a task to run in the logic service.
 	 * @param runnable The runnable.
@@ -135,19 +325,20 @@ public class GameEngine implements Runnable {
 	}
 
 	/**
-	 * Submits a task to run in the parallel task service.
-	 * @param runnable The runnable.
+	 * Runs a fork/join task in the parallel task pool, waiting for it and all
+	 * of the tasks it forks to complete.
+	 * @param task The task.
 	 */
-	public void submitTask(final Runnable runnable) {
-		taskService.submit(new Runnable() {
-			public void run() {
-				try {
-					runnable.run();
-				} catch(Throwable t) {
-					World.getWorld().handleError(t);
-				}
-			}
-		});
+	public void invokeTask(ForkJoinTask<?> task) {
+		taskPool.invoke(task);
+	}
+	
+	/**
+	 * Gets the parallelism of the task pool.
+	 * @return The number of worker threads in the task pool.
+	 */
+	public int getParallelism() {
+		return taskPool.getParallelism();
 	}
 
 	/**
@@ -157,11 +348,13 @@ public class GameEngine implements Runnable {
 	public void submitWork(final Runnable runnable) {
 		workService.submit(new Runnable() {
 			public void run() {
+				long start = System.nanoTime();
 				try {
 					runnable.run();
 				} catch(Throwable t) {
 					World.getWorld().handleError(t);
 				}
+				World.getWorld().getProfiler().record(Phase.WORK, System.nanoTime() - start);
 			}
 		});
 	}
@@ -182,12 +375,4 @@ public class GameEngine implements Runnable {
 		});
 	}
 
-	/**
-	 * Waits for pending parallel tasks.
-	 * @throws ExecutionException If an error occurred during a task.
-	 */
-	public void waitForPendingParallelTasks() throws ExecutionException {
-		taskService.waitForPendingTasks();
-	}
-
 }
@@ -90,6 +90,16 @@ public abstract class Action extends Event {
 	 */
 	public abstract WalkablePolicy getWalkablePolicy();
 	
+	/**
+	 * Actions are throttled when the server is overloaded, unless they
+	 * override this. Skilling can safely slow down for a while, but combat
+	 * should not.
+	 */
+	@Override
+	public boolean isThrottleable() {
+		return true;
+	}
+	
 	@Override
 	public void stop() {
 		super.stop();
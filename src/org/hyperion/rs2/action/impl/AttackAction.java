@@ -44,6 +44,11 @@ public class AttackAction extends Action {
 	public WalkablePolicy getWalkablePolicy() {
 		return WalkablePolicy.FOLLOW;
 	}
+	
+	@Override
+	public boolean isThrottleable() {
+		return false;
+	}
 
 	
 	@Override
@@ -54,7 +59,7 @@ public class AttackAction extends Action {
 				player.setInCombat(true);
 				player.setAggressorState(true);
 				Combat.doAttack(player, victim, type);
-				player.getEntityCooldowns().flag(CooldownFlags.MELEE_SWING, Combat.getAttackSpeed(player), player);
+				player.getEntityCooldowns().flag(CooldownFlags.MELEE_SWING, Combat.getAttackSpeed(player));
 			}
 		} else {
 			this.stop();
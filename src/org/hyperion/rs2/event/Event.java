@@ -17,6 +17,37 @@ public abstract class Event {
 	 */
 	private boolean running = true;
 	
+	/**
+	 * The timing wheel this event is scheduled in, if any.
+	 */
+	TimingWheel wheel;
+	
+	/**
+	 * The slot of the timing wheel this event is in.
+	 */
+	int slot;
+	
+	/**
+	 * The number of revolutions of the wheel left before this event is due.
+	 */
+	int rounds;
+	
+	/**
+	 * The previous event in the same slot.
+	 */
+	Event previous;
+	
+	/**
+	 * The next event in the same slot.
+	 */
+	Event next;
+	
+	/**
+	 * A flag indicating if this event was held back by throttling the last
+	 * time it was due.
+	 */
+	boolean throttled;
+	
 	/**
 	 * Creates an event with the specified delay.
 	 * @param delay The delay.
@@ -58,6 +89,10 @@ public abstract class Event {
 	 */
 	public void stop() {
 		running = false;
+		TimingWheel wheel = this.wheel;
+		if(wheel != null) {
+			wheel.cancel(this);
+		}
 	}
 	
 	/**
@@ -65,5 +100,15 @@ public abstract class Event {
 	 * of the execute method is that it may take any action whatsoever.
 	 */
 	public abstract void execute();
+	
+	/**
+	 * Checks if this event may be throttled when the server is overloaded.
+	 * While throttling, such an event is held back by one tick every other
+	 * time it is due. By default events are never throttled.
+	 * @return <code>true</code> if so, <code>false</code> if not.
+	 */
+	public boolean isThrottleable() {
+		return false;
+	}
 
 }
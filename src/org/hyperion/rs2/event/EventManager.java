@@ -1,22 +1,32 @@
 package org.hyperion.rs2.event;
 
-import java.util.concurrent.TimeUnit;
-
 import org.hyperion.rs2.GameEngine;
+import org.hyperion.rs2.event.TickProfiler.Phase;
+import org.hyperion.rs2.event.impl.UpdateEvent;
+import org.hyperion.rs2.model.World;
 
 /**
- * A class that manages <code>Event</code>s for a specific
- * <code>GameEngine</code>.
+ * <p>A class that manages <code>Event</code>s for a specific
+ * <code>GameEngine</code>.</p>
+ *
+ * <p>Events are held in a <code>TimingWheel</code> with a granularity of one
+ * update cycle, which is advanced by the <code>TickClock</code> at the start
+ * of every cycle.</p>
  * @author Graham Edgecombe
  *
  */
 public class EventManager {
-	
+
 	/**
 	 * The <code>GameEngine</code> to manager events for.
 	 */
 	private GameEngine engine;
 
+	/**
+	 * The timing wheel which holds scheduled events.
+	 */
+	private final TimingWheel wheel = new TimingWheel(TimingWheel.DEFAULT_SIZE, UpdateEvent.CYCLE_TIME);
+
 	/**
 	 * Creates an <code>EventManager</code> for the specified
 	 * <code>GameEngine</code>.
@@ -25,38 +35,47 @@ public class EventManager {
 	public EventManager(GameEngine engine) {
 		this.engine = engine;
 	}
-	
+
 	/**
-	 * Submits a new event to the <code>GameEngine</code>.
+	 * Submits a new event to the <code>GameEngine</code>. Events with no
+	 * delay are run in the logic service straight away, and all others are
+	 * run on the first tick after their delay has passed.
 	 * @param event The event to submit.
 	 */
 	public void submit(final Event event) {
-		submit(event, event.getDelay());
+		if(event.getDelay() == 0) {
+			engine.submitLogic(new Runnable() {
+				@Override
+				public void run() {
+					if(event.isRunning()) {
+						event.execute();
+						if(event.isRunning()) {
+							wheel.schedule(event, wheel.toTicks(event.getDelay()));
+						}
+					}
+				}
+			});
+		} else {
+			wheel.schedule(event, wheel.toTicks(event.getDelay()));
+		}
 	}
-	
+
 	/**
-	 * Schedules an event to run after the specified delay.
-	 * @param event The event.
-	 * @param delay The delay.
+	 * Advances the timing wheel by one tick, running any events which are
+	 * due. This must only be called from the logic service.
 	 */
-	private void submit(final Event event, final long delay) {
-		engine.scheduleLogic(new Runnable() {
-			@Override
-			public void run() {
-				long start = System.currentTimeMillis();
-				if(event.isRunning()) {
-					event.execute();
-				} else {
-					return;
-				}
-				long elapsed = System.currentTimeMillis() - start;
-				long remaining = event.getDelay() - elapsed;
-				if(remaining <= 0) {
-					remaining = 0;
-				}
-				submit(event, remaining);
-			}
-		}, delay, TimeUnit.MILLISECONDS);
+	public void pulse() {
+		long start = System.nanoTime();
+		wheel.advance();
+		World.getWorld().getProfiler().record(Phase.EVENTS, System.nanoTime() - start);
+	}
+
+	/**
+	 * Gets the timing wheel.
+	 * @return The timing wheel.
+	 */
+	public TimingWheel getTimingWheel() {
+		return wheel;
 	}
 
 }
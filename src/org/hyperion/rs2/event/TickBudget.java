@@ -0,0 +1,360 @@
+package org.hyperion.rs2.event;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * <p>Watches how much of each cycle's time budget is used and, when the
+ * server falls behind, sheds cosmetic work so the cycle fits again.</p>
+ *
+ * <p>Work is shed in a fixed order, with each level also applying every
+ * level before it: npcs far from each player are dropped from their npc
+ * update first, then skill and container refreshes are held back and sent in
+ * batches, and finally non-critical actions are throttled. The level goes up
+ * as soon as a cycle passes the high water mark, and only comes back down
+ * one step at a time after a run of cycles under the low water mark.</p>
+ *
+ * <p>Every decision is counted, and the counters can be read at any time from
+ * any thread.</p>
+ */
+public class TickBudget {
+
+	/**
+	 * The levels of degradation, from least to most severe.
+	 */
+	public enum Level {
+
+		/**
+		 * Nothing is shed.
+		 */
+		NONE,
+
+		/**
+		 * Distant npcs are left out of npc updates.
+		 */
+		SHED_NPCS,
+
+		/**
+		 * Skill and container refreshes are deferred.
+		 */
+		DEFER_REFRESHES,
+
+		/**
+		 * Non-critical actions are throttled.
+		 */
+		THROTTLE_ACTIONS,
+
+	}
+
+	/**
+	 * Logger instance.
+	 */
+	private static final Logger logger = Logger.getLogger(TickBudget.class.getName());
+
+	/**
+	 * The fraction of the budget a cycle may use before the level goes up.
+	 */
+	private static final double HIGH_WATER_MARK = 0.8;
+
+	/**
+	 * The fraction of the budget a cycle must stay under for the level to
+	 * come down.
+	 */
+	private static final double LOW_WATER_MARK = 0.5;
+
+	/**
+	 * The number of cycles in a row which must stay under the low water mark
+	 * before the level comes down.
+	 */
+	private static final int RECOVERY_CYCLES = 10;
+
+	/**
+	 * The distance within which npcs are still updated when shedding.
+	 */
+	public static final int SHED_NPC_DISTANCE = 7;
+
+	/**
+	 * The number of cycles between flushes of deferred refreshes.
+	 */
+	public static final int REFRESH_INTERVAL = 5;
+
+	/**
+	 * The budget of a cycle, in nanoseconds.
+	 */
+	private final long budget;
+
+	/**
+	 * The timing wheel whose actions are throttled.
+	 */
+	private final TimingWheel wheel;
+
+	/**
+	 * The current level.
+	 */
+	private volatile Level level = Level.NONE;
+
+	/**
+	 * The time the current cycle started at, in nanoseconds.
+	 */
+	private long cycleStart;
+
+	/**
+	 * The number of cycles run.
+	 */
+	private volatile long cycles = 0;
+
+	/**
+	 * The number of cycles in a row under the low water mark, or -1 if the
+	 * level has already gone up during the current cycle.
+	 */
+	private int calmCycles = 0;
+
+	/**
+	 * The number of cycles which passed the high water mark.
+	 */
+	private final AtomicLong overBudgetCycles = new AtomicLong(0);
+
+	/**
+	 * The number of times the level went up.
+	 */
+	private final AtomicLong escalations = new AtomicLong(0);
+
+	/**
+	 * The number of times the level came down.
+	 */
+	private final AtomicLong recoveries = new AtomicLong(0);
+
+	/**
+	 * The number of npcs left out of npc updates.
+	 */
+	private final AtomicLong shedNPCs = new AtomicLong(0);
+
+	/**
+	 * The number of skill refreshes deferred.
+	 */
+	private final AtomicLong deferredSkillRefreshes = new AtomicLong(0);
+
+	/**
+	 * The number of container refreshes deferred.
+	 */
+	private final AtomicLong deferredContainerRefreshes = new AtomicLong(0);
+
+	/**
+	 * Creates the tick budget.
+	 * @param budget The budget of a cycle, in milliseconds.
+	 * @param wheel The timing wheel whose actions are throttled.
+	 */
+	public TickBudget(long budget, TimingWheel wheel) {
+		this.budget = budget * 1000000L;
+		this.wheel = wheel;
+	}
+
+	/**
+	 * Called when a cycle starts.
+	 */
+	public void beginCycle() {
+		cycleStart = System.nanoTime();
+	}
+
+	/**
+	 * Called after each phase of a cycle. If the phases so far have already
+	 * passed the high water mark the level goes up straight away, so the
+	 * phases which are left are cheaper.
+	 * @return The time left in the budget, in nanoseconds, which is negative
+	 * if the cycle has overrun.
+	 */
+	public long checkpoint() {
+		long elapsed = System.nanoTime() - cycleStart;
+		if(elapsed > budget * HIGH_WATER_MARK && calmCycles >= 0) {
+			escalate();
+			/*
+			 * Only go up once per cycle, however many phases run late.
+			 */
+			calmCycles = -1;
+		}
+		return budget - elapsed;
+	}
+
+	/**
+	 * Called when a cycle ends, to decide the level for the next cycle.
+	 */
+	public void endCycle() {
+		long elapsed = System.nanoTime() - cycleStart;
+		cycles++;
+		if(elapsed > budget * HIGH_WATER_MARK) {
+			overBudgetCycles.incrementAndGet();
+			if(calmCycles >= 0) {
+				escalate();
+			}
+			calmCycles = 0;
+		} else if(elapsed < budget * LOW_WATER_MARK) {
+			if(calmCycles < 0) {
+				calmCycles = 0;
+			}
+			if(++calmCycles >= RECOVERY_CYCLES) {
+				recover();
+				calmCycles = 0;
+			}
+		} else {
+			calmCycles = 0;
+		}
+	}
+
+	/**
+	 * Raises the level by one step, if it is not already at the top.
+	 */
+	private void escalate() {
+		Level[] levels = Level.values();
+		if(level.ordinal() < levels.length - 1) {
+			setLevel(levels[level.ordinal() + 1]);
+			escalations.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Lowers the level by one step, if it is not already at the bottom.
+	 */
+	private void recover() {
+		if(level.ordinal() > 0) {
+			setLevel(Level.values()[level.ordinal() - 1]);
+			recoveries.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Sets the level.
+	 * @param level The level.
+	 */
+	private void setLevel(Level level) {
+		logger.info("Tick budget level changed : " + this.level + " -> " + level);
+		this.level = level;
+		wheel.setThrottling(level.compareTo(Level.THROTTLE_ACTIONS) >= 0);
+	}
+
+	/**
+	 * Gets the current level.
+	 * @return The current level.
+	 */
+	public Level getLevel() {
+		return level;
+	}
+
+	/**
+	 * Checks if distant npcs are being left out of npc updates.
+	 * @return <code>true</code> if so, <code>false</code> if not.
+	 */
+	public boolean isSheddingNPCs() {
+		return level.compareTo(Level.SHED_NPCS) >= 0;
+	}
+
+	/**
+	 * Checks if skill and container refreshes are being deferred.
+	 * @return <code>true</code> if so, <code>false</code> if not.
+	 */
+	public boolean isDeferringRefreshes() {
+		return level.compareTo(Level.DEFER_REFRESHES) >= 0;
+	}
+
+	/**
+	 * Checks if deferred refreshes should be sent this cycle, which is every
+	 * cycle unless they are being deferred.
+	 * @return <code>true</code> if so, <code>false</code> if not.
+	 */
+	public boolean isRefreshDue() {
+		return !isDeferringRefreshes() || cycles % REFRESH_INTERVAL == 0;
+	}
+
+	/**
+	 * Records npcs being left out of a player's npc update.
+	 * @param count The number of npcs.
+	 */
+	public void recordShedNPCs(int count) {
+		shedNPCs.addAndGet(count);
+	}
+
+	/**
+	 * Records a skill refresh being deferred.
+	 */
+	public void recordDeferredSkillRefresh() {
+		deferredSkillRefreshes.incrementAndGet();
+	}
+
+	/**
+	 * Records a container refresh being deferred.
+	 */
+	public void recordDeferredContainerRefresh() {
+		deferredContainerRefreshes.incrementAndGet();
+	}
+
+	/**
+	 * Gets the number of cycles which passed the high water mark.
+	 * @return The number of cycles.
+	 */
+	public long getOverBudgetCycles() {
+		return overBudgetCycles.get();
+	}
+
+	/**
+	 * Gets the number of times the level went up.
+	 * @return The number of times.
+	 */
+	public long getEscalations() {
+		return escalations.get();
+	}
+
+	/**
+	 * Gets the number of times the level came down.
+	 * @return The number of times.
+	 */
+	public long getRecoveries() {
+		return recoveries.get();
+	}
+
+	/**
+	 * Gets the number of npcs left out of npc updates.
+	 * @return The number of npcs.
+	 */
+	public long getShedNPCs() {
+		return shedNPCs.get();
+	}
+
+	/**
+	 * Gets the number of skill refreshes deferred.
+	 * @return The number of refreshes.
+	 */
+	public long getDeferredSkillRefreshes() {
+		return deferredSkillRefreshes.get();
+	}
+
+	/**
+	 * Gets the number of container refreshes deferred.
+	 * @return The number of refreshes.
+	 */
+	public long getDeferredContainerRefreshes() {
+		return deferredContainerRefreshes.get();
+	}
+
+	/**
+	 * Gets the number of actions throttled.
+	 * @return The number of actions.
+	 */
+	public long getThrottledActions() {
+		return wheel.getThrottledCount();
+	}
+
+	/**
+	 * Summarises the level and every counter, one line per group.
+	 * @return The summary lines.
+	 */
+	public List<String> summarise() {
+		List<String> lines = new ArrayList<String>();
+		lines.add("budget: level=" + level.name().toLowerCase() + " over=" + getOverBudgetCycles()
+				+ " up=" + getEscalations() + " down=" + getRecoveries());
+		lines.add("shed: npcs=" + getShedNPCs() + " skills=" + getDeferredSkillRefreshes()
+				+ " containers=" + getDeferredContainerRefreshes() + " actions=" + getThrottledActions());
+		return lines;
+	}
+
+}
@@ -0,0 +1,320 @@
+package org.hyperion.rs2.event;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.hyperion.rs2.GameEngine;
+
+/**
+ * <p>A fixed-rate clock which drives a periodic <code>Event</code>, such as
+ * the <code>UpdateEvent</code>, in the logic service.</p>
+ *
+ * <p>Unlike the <code>EventManager</code>, which reschedules an event
+ * relative to when it last finished, the clock keeps an absolute schedule of
+ * <code>System.nanoTime()</code> deadlines so small delays do not accumulate
+ * into drift. If the clock falls behind by more than a whole tick it runs up
+ * to {@link #getMaximumCatchUpTicks()} ticks back to back, after which any
+ * further missed ticks are skipped and the schedule is realigned.</p>
+ *
+ * <p>Each tick first advances the <code>EventManager</code>'s timing wheel,
+ * running any events which are due, and then runs the driven event.</p>
+ *
+ * <p>Counters describing late, skipped and overrunning ticks are kept so
+ * that they can be inspected at runtime.</p>
+ */
+public class TickClock {
+
+	/**
+	 * The default number of ticks which may be run back to back to catch up.
+	 */
+	public static final int DEFAULT_MAXIMUM_CATCH_UP_TICKS = 2;
+
+	/**
+	 * The amount of time, in nanoseconds, a tick may start after its deadline
+	 * before it is considered late.
+	 */
+	public static final long LATENESS_TOLERANCE = TimeUnit.MILLISECONDS.toNanos(5);
+
+	/**
+	 * The game engine.
+	 */
+	private final GameEngine engine;
+
+	/**
+	 * The event manager whose timing wheel is advanced every tick.
+	 */
+	private final EventManager eventManager;
+
+	/**
+	 * The event this clock drives.
+	 */
+	private final Event event;
+
+	/**
+	 * The period, in nanoseconds.
+	 */
+	private final long period;
+
+	/**
+	 * The maximum number of ticks which may be run back to back.
+	 */
+	private volatile int maximumCatchUpTicks = DEFAULT_MAXIMUM_CATCH_UP_TICKS;
+
+	/**
+	 * The deadline of the next tick.
+	 */
+	private long deadline;
+
+	/**
+	 * The number of ticks which have been run back to back to catch up.
+	 */
+	private int catchUpTicks = 0;
+
+	/**
+	 * The future of the next scheduled tick.
+	 */
+	private ScheduledFuture<?> future;
+
+	/**
+	 * Running flag.
+	 */
+	private volatile boolean running = false;
+
+	/**
+	 * The number of ticks which have been run.
+	 */
+	private volatile long ticks = 0;
+
+	/**
+	 * The number of ticks which started late.
+	 */
+	private volatile long lateTicks = 0;
+
+	/**
+	 * The number of ticks which were skipped.
+	 */
+	private volatile long skippedTicks = 0;
+
+	/**
+	 * The lateness of the last tick, in nanoseconds.
+	 */
+	private volatile long lastLateness = 0;
+
+	/**
+	 * The maximum lateness of any tick, in nanoseconds.
+	 */
+	private volatile long maximumLateness = 0;
+
+	/**
+	 * The current number of consecutive late ticks.
+	 */
+	private volatile int consecutiveOverruns = 0;
+
+	/**
+	 * The maximum number of consecutive late ticks.
+	 */
+	private volatile int maximumConsecutiveOverruns = 0;
+
+	/**
+	 * Creates a tick clock which runs the event at the rate given by its
+	 * delay.
+	 * @param engine The engine whose logic service runs the ticks.
+	 * @param eventManager The event manager to advance every tick.
+	 * @param event The event to drive.
+	 */
+	public TickClock(GameEngine engine, EventManager eventManager, Event event) {
+		this.engine = engine;
+		this.eventManager = eventManager;
+		this.event = event;
+		this.period = TimeUnit.MILLISECONDS.toNanos(event.getDelay());
+	}
+
+	/**
+	 * Starts the clock. The first tick will run one period from now.
+	 * @throws IllegalStateException if the clock is already running.
+	 */
+	public void start() {
+		if(running) {
+			throw new IllegalStateException("The clock is already running.");
+		}
+		running = true;
+		deadline = System.nanoTime() + period;
+		schedule(period);
+	}
+
+	/**
+	 * Stops the clock.
+	 */
+	public void stop() {
+		running = false;
+		if(future != null) {
+			future.cancel(false);
+		}
+	}
+
+	/**
+	 * Schedules the next tick.
+	 * @param delay The delay, in nanoseconds.
+	 */
+	private void schedule(long delay) {
+		future = engine.scheduleLogic(new Runnable() {
+			@Override
+			public void run() {
+				tick();
+			}
+		}, delay, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Runs a single tick and schedules the next one.
+	 */
+	private void tick() {
+		if(!running) {
+			return;
+		}
+		if(!event.isRunning()) {
+			stop();
+			return;
+		}
+
+		/*
+		 * Record how late this tick started.
+		 */
+		long lateness = System.nanoTime() - deadline;
+		if(lateness < 0) {
+			lateness = 0;
+		}
+		lastLateness = lateness;
+		if(lateness > maximumLateness) {
+			maximumLateness = lateness;
+		}
+		if(lateness > LATENESS_TOLERANCE) {
+			lateTicks++;
+			consecutiveOverruns++;
+			if(consecutiveOverruns > maximumConsecutiveOverruns) {
+				maximumConsecutiveOverruns = consecutiveOverruns;
+			}
+		} else {
+			consecutiveOverruns = 0;
+			catchUpTicks = 0;
+		}
+
+		ticks++;
+		eventManager.pulse();
+		event.execute();
+
+		/*
+		 * Work out when the next tick is due. If whole ticks have been missed
+		 * we either run them back to back or skip them, depending on how many
+		 * we have already caught up on.
+		 */
+		deadline += period;
+		long now = System.nanoTime();
+		long behind = now - deadline;
+		if(behind >= period) {
+			if(catchUpTicks < maximumCatchUpTicks) {
+				catchUpTicks++;
+			} else {
+				long missed = behind / period;
+				deadline += missed * period;
+				skippedTicks += missed;
+			}
+		}
+		schedule(Math.max(0, deadline - now));
+	}
+
+	/**
+	 * Gets the period.
+	 * @return The period, in nanoseconds.
+	 */
+	public long getPeriod() {
+		return period;
+	}
+
+	/**
+	 * Checks if the clock is running.
+	 * @return <code>true</code> if so, <code>false</code> if not.
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Gets the maximum number of ticks which may be run back to back.
+	 * @return The maximum number of catch up ticks.
+	 */
+	public int getMaximumCatchUpTicks() {
+		return maximumCatchUpTicks;
+	}
+
+	/**
+	 * Sets the maximum number of ticks which may be run back to back before
+	 * missed ticks are skipped. A value of zero means missed ticks are always
+	 * skipped.
+	 * @param maximumCatchUpTicks The maximum number of catch up ticks.
+	 * @throws IllegalArgumentException if the value is negative.
+	 */
+	public void setMaximumCatchUpTicks(int maximumCatchUpTicks) {
+		if(maximumCatchUpTicks < 0) {
+			throw new IllegalArgumentException("Maximum catch up ticks must be positive.");
+		}
+		this.maximumCatchUpTicks = maximumCatchUpTicks;
+	}
+
+	/**
+	 * Gets the number of ticks which have been run.
+	 * @return The tick count.
+	 */
+	public long getTicks() {
+		return ticks;
+	}
+
+	/**
+	 * Gets the number of ticks which started late.
+	 * @return The late tick count.
+	 */
+	public long getLateTicks() {
+		return lateTicks;
+	}
+
+	/**
+	 * Gets the number of ticks which were skipped.
+	 * @return The skipped tick count.
+	 */
+	public long getSkippedTicks() {
+		return skippedTicks;
+	}
+
+	/**
+	 * Gets the lateness of the last tick.
+	 * @return The lateness, in nanoseconds.
+	 */
+	public long getLastLateness() {
+		return lastLateness;
+	}
+
+	/**
+	 * Gets the maximum lateness of any tick.
+	 * @return The maximum lateness, in nanoseconds.
+	 */
+	public long getMaximumLateness() {
+		return maximumLateness;
+	}
+
+	/**
+	 * Gets the current number of consecutive late ticks.
+	 * @return The consecutive overrun count.
+	 */
+	public int getConsecutiveOverruns() {
+		return consecutiveOverruns;
+	}
+
+	/**
+	 * Gets the maximum number of consecutive late ticks.
+	 * @return The maximum consecutive overrun count.
+	 */
+	public int getMaximumConsecutiveOverruns() {
+		return maximumConsecutiveOverruns;
+	}
+
+}
@@ -0,0 +1,157 @@
+package org.hyperion.rs2.event;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hyperion.rs2.util.LatencyHistogram;
+
+/**
+ * <p>Records how long each phase of the update cycle takes, along with the
+ * time spent on the work which happens between cycles.</p>
+ *
+ * <p>Each phase has its own <code>LatencyHistogram</code>, which can be read
+ * or reset at any time from any thread.</p>
+ */
+public class TickProfiler {
+
+	/**
+	 * The phases which are profiled.
+	 */
+	public enum Phase {
+
+		/**
+		 * The whole update cycle.
+		 */
+		CYCLE("cycle"),
+
+		/**
+		 * Handling the queued packets of every player.
+		 */
+		PACKETS("packets"),
+
+		/**
+		 * Ticking every entity.
+		 */
+		TICK("tick"),
+
+		/**
+		 * Sending every player update.
+		 */
+		PLAYER_UPDATE("player update"),
+
+		/**
+		 * Sending every npc update.
+		 */
+		NPC_UPDATE("npc update"),
+
+		/**
+		 * Resetting every entity.
+		 */
+		RESET("reset"),
+
+		/**
+		 * Running the events which are due in a single tick.
+		 */
+		EVENTS("events"),
+
+		/**
+		 * Running a single job in the work service.
+		 */
+		WORK("work");
+
+		/**
+		 * The name shown to people.
+		 */
+		private final String name;
+
+		/**
+		 * Creates the phase.
+		 * @param name The name shown to people.
+		 */
+		private Phase(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Gets the name shown to people.
+		 * @return The name.
+		 */
+		public String getName() {
+			return name;
+		}
+
+	}
+
+	/**
+	 * The histograms, indexed by phase ordinal.
+	 */
+	private final LatencyHistogram[] histograms = new LatencyHistogram[Phase.values().length];
+
+	/**
+	 * Creates the tick profiler.
+	 */
+	public TickProfiler() {
+		for(int i = 0; i < histograms.length; i++) {
+			histograms[i] = new LatencyHistogram();
+		}
+	}
+
+	/**
+	 * Records the time taken by a phase.
+	 * @param phase The phase.
+	 * @param nanos The time taken, in nanoseconds.
+	 */
+	public void record(Phase phase, long nanos) {
+		histograms[phase.ordinal()].record(nanos);
+	}
+
+	/**
+	 * Gets the histogram for a phase.
+	 * @param phase The phase.
+	 * @return The histogram.
+	 */
+	public LatencyHistogram getHistogram(Phase phase) {
+		return histograms[phase.ordinal()];
+	}
+
+	/**
+	 * Clears the samples of every phase.
+	 */
+	public void reset() {
+		for(LatencyHistogram histogram : histograms) {
+			histogram.reset();
+		}
+	}
+
+	/**
+	 * Summarises every phase which has samples, one line per phase.
+	 * @return The summary lines.
+	 */
+	public List<String> summarise() {
+		List<String> lines = new ArrayList<String>();
+		for(Phase phase : Phase.values()) {
+			LatencyHistogram histogram = getHistogram(phase);
+			if(histogram.getCount() == 0) {
+				continue;
+			}
+			lines.add(phase.getName() + ": p50=" + toMillis(histogram.getPercentile(50))
+					+ " p99=" + toMillis(histogram.getPercentile(99))
+					+ " p999=" + toMillis(histogram.getPercentile(99.9))
+					+ " max=" + toMillis(histogram.getMaximum())
+					+ " n=" + histogram.getCount());
+		}
+		return lines;
+	}
+
+	/**
+	 * Formats a time in milliseconds with two decimal places.
+	 * @param nanos The time in nanoseconds.
+	 * @return The formatted time.
+	 */
+	private static String toMillis(long nanos) {
+		long hundredths = (nanos + 5000) / 10000;
+		long fraction = hundredths % 100;
+		return (hundredths / 100) + "." + (fraction < 10 ? "0" : "") + fraction + "ms";
+	}
+
+}
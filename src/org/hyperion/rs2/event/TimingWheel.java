@@ -0,0 +1,241 @@
+package org.hyperion.rs2.event;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A hashed timing wheel which holds <code>Event</code>s until the tick
+ * they are due on.</p>
+ *
+ * <p>The wheel is an array of slots, each holding a doubly linked list of
+ * events threaded through the events themselves. An event due in
+ * <code>n</code> ticks is placed in the slot <code>n</code> ticks ahead of the
+ * current one, along with the number of whole revolutions it must wait. This
+ * makes scheduling and cancelling O(1) and allocation free, and advancing the
+ * wheel only looks at the events in a single slot.</p>
+ */
+public class TimingWheel {
+
+	/**
+	 * The default number of slots.
+	 */
+	public static final int DEFAULT_SIZE = 512;
+
+	/**
+	 * The slots.
+	 */
+	private final Event[] slots;
+
+	/**
+	 * The mask used to turn a tick into a slot.
+	 */
+	private final int mask;
+
+	/**
+	 * The duration of a tick, in milliseconds.
+	 */
+	private final long tickDuration;
+
+	/**
+	 * The current tick. It is only changed while holding the lock, but may be
+	 * read without it.
+	 */
+	private volatile long tick = 0;
+
+	/**
+	 * The number of scheduled events.
+	 */
+	private int size = 0;
+
+	/**
+	 * A flag indicating if throttleable events are being throttled.
+	 */
+	private volatile boolean throttling = false;
+	
+	/**
+	 * The number of times an event has been held back by throttling.
+	 */
+	private final AtomicLong throttledCount = new AtomicLong(0);
+
+	/**
+	 * The events which are due in the current tick.
+	 */
+	private Event[] due = new Event[16];
+
+	/**
+	 * Creates the timing wheel.
+	 * @param size The number of slots, which must be a power of two.
+	 * @param tickDuration The duration of a tick, in milliseconds.
+	 * @throws IllegalArgumentException if the size is not a power of two or
+	 * the tick duration is not positive.
+	 */
+	public TimingWheel(int size, long tickDuration) {
+		if(size <= 0 || (size & (size - 1)) != 0) {
+			throw new IllegalArgumentException("Size must be a power of two.");
+		}
+		if(tickDuration <= 0) {
+			throw new IllegalArgumentException("Tick duration must be positive.");
+		}
+		this.slots = new Event[size];
+		this.mask = size - 1;
+		this.tickDuration = tickDuration;
+	}
+
+	/**
+	 * Converts a delay to a number of ticks, rounding up.
+	 * @param delay The delay, in milliseconds.
+	 * @return The number of ticks, which is at least one.
+	 */
+	public int toTicks(long delay) {
+		long ticks = (delay + tickDuration - 1) / tickDuration;
+		if(ticks < 1) {
+			return 1;
+		}
+		return ticks > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) ticks;
+	}
+
+	/**
+	 * Schedules an event to run after the specified number of ticks. If the
+	 * event is already scheduled it is moved.
+	 * @param event The event.
+	 * @param ticks The number of ticks, which must be at least one.
+	 * @throws IllegalArgumentException if the number of ticks is not
+	 * positive.
+	 */
+	public synchronized void schedule(Event event, int ticks) {
+		if(ticks < 1) {
+			throw new IllegalArgumentException("Ticks must be positive.");
+		}
+		if(event.wheel != null) {
+			event.wheel.cancel(event);
+		}
+		int slot = (int) ((tick + ticks) & mask);
+		event.wheel = this;
+		event.slot = slot;
+		event.rounds = (ticks - 1) / slots.length;
+		event.previous = null;
+		event.next = slots[slot];
+		if(event.next != null) {
+			event.next.previous = event;
+		}
+		slots[slot] = event;
+		size++;
+	}
+
+	/**
+	 * Removes an event from the wheel, if it is scheduled in it.
+	 * @param event The event.
+	 */
+	public synchronized void cancel(Event event) {
+		if(event.wheel != this) {
+			return;
+		}
+		if(event.previous != null) {
+			event.previous.next = event.next;
+		} else {
+			slots[event.slot] = event.next;
+		}
+		if(event.next != null) {
+			event.next.previous = event.previous;
+		}
+		event.wheel = null;
+		event.previous = null;
+		event.next = null;
+		size--;
+	}
+
+	/**
+	 * Advances the wheel by one tick, running every event which is due and
+	 * rescheduling those which are still running afterwards.
+	 */
+	public void advance() {
+		int count = 0;
+		synchronized(this) {
+			tick++;
+			Event event = slots[(int) (tick & mask)];
+			while(event != null) {
+				Event next = event.next;
+				if(event.rounds > 0) {
+					event.rounds--;
+				} else {
+					cancel(event);
+					if(count == due.length) {
+						Event[] expanded = new Event[due.length * 2];
+						System.arraycopy(due, 0, expanded, 0, count);
+						due = expanded;
+					}
+					due[count++] = event;
+				}
+				event = next;
+			}
+		}
+
+		/*
+		 * The events are run outside of the lock, and may schedule or cancel
+		 * other events (including ones which are due in this tick) as they
+		 * go.
+		 */
+		for(int i = 0; i < count; i++) {
+			Event event = due[i];
+			due[i] = null;
+			if(event.isRunning()) {
+				if(throttling && event.isThrottleable() && !event.throttled) {
+					/*
+					 * Hold the event back for one tick. It is not held back
+					 * again the next time, so it still makes progress.
+					 */
+					event.throttled = true;
+					throttledCount.incrementAndGet();
+					schedule(event, 1);
+					continue;
+				}
+				event.throttled = false;
+				event.execute();
+				if(event.isRunning() && event.wheel == null) {
+					schedule(event, toTicks(event.getDelay()));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sets whether throttleable events are throttled.
+	 * @param throttling <code>true</code> to throttle them, <code>false</code>
+	 * to run them as normal.
+	 */
+	public void setThrottling(boolean throttling) {
+		this.throttling = throttling;
+	}
+	
+	/**
+	 * Checks if throttleable events are being throttled.
+	 * @return <code>true</code> if so, <code>false</code> if not.
+	 */
+	public boolean isThrottling() {
+		return throttling;
+	}
+	
+	/**
+	 * Gets the number of times an event has been held back by throttling.
+	 * @return The number of times.
+	 */
+	public long getThrottledCount() {
+		return throttledCount.get();
+	}
+	
+	/**
+	 * Gets the current tick.
+	 * @return The current tick.
+	 */
+	public long getTick() {
+		return tick;
+	}
+
+	/**
+	 * Gets the number of scheduled events.
+	 * @return The number of scheduled events.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+}
@@ -0,0 +1,29 @@
+package org.hyperion.rs2.event.impl;
+
+import org.hyperion.rs2.event.Event;
+import org.hyperion.rs2.model.World;
+import org.hyperion.rs2.task.impl.RegionEvictionTask;
+
+/**
+ * An event which runs periodically and evicts idle regions.
+ */
+public class RegionEvictionEvent extends Event {
+
+	/**
+	 * The delay in milliseconds between consecutive evictions.
+	 */
+	public static final int EVICTION_CYCLE_TIME = 60000;
+	
+	/**
+	 * Creates the region eviction event to run every minute.
+	 */
+	public RegionEvictionEvent() {
+		super(EVICTION_CYCLE_TIME);
+	}
+
+	@Override
+	public void execute() {
+		World.getWorld().submit(new RegionEvictionTask());
+	}
+
+}
@@ -1,22 +1,9 @@
 package org.hyperion.rs2.event.impl;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
-
+import org.hyperion.rs2.Constants;
 import org.hyperion.rs2.event.Event;
-import org.hyperion.rs2.model.NPC;
-import org.hyperion.rs2.model.Player;
 import org.hyperion.rs2.model.World;
-import org.hyperion.rs2.task.ConsecutiveTask;
-import org.hyperion.rs2.task.ParallelTask;
-import org.hyperion.rs2.task.Task;
-import org.hyperion.rs2.task.impl.NPCResetTask;
-import org.hyperion.rs2.task.impl.NPCTickTask;
-import org.hyperion.rs2.task.impl.NPCUpdateTask;
-import org.hyperion.rs2.task.impl.PlayerResetTask;
-import org.hyperion.rs2.task.impl.PlayerTickTask;
-import org.hyperion.rs2.task.impl.PlayerUpdateTask;
+import org.hyperion.rs2.task.impl.UpdateCycleTask;
 
 /**
  * An event which starts player update tasks.
@@ -24,48 +11,92 @@ import org.hyperion.rs2.task.impl.PlayerUpdateTask;
  *
  */
 public class UpdateEvent extends Event {
+	
+	/**
+	 * The ways in which the tick phase can be run.
+	 */
+	public enum TickMode {
+		
+		/**
+		 * Every entity is ticked one after another.
+		 */
+		CONSECUTIVE,
+		
+		/**
+		 * Entities are grouped by region and the groups are ticked in
+		 * parallel, with region changes handed off afterwards.
+		 */
+		PARTITIONED,
+		
+	}
 
 	/**
 	 * The cycle time, in milliseconds.
 	 */
 	public static final int CYCLE_TIME = 600;
 	
+	/**
+	 * The tick mode.
+	 */
+	private volatile TickMode tickMode = TickMode.CONSECUTIVE;
+	
+	/**
+	 * The number of packets handled for each player every cycle.
+	 */
+	private volatile int packetsPerTick = Constants.PACKETS_PER_TICK;
+	
+	/**
+	 * The task which runs each update cycle.
+	 */
+	private final UpdateCycleTask cycleTask = new UpdateCycleTask(this);
+	
 	/**
 	 * Creates the update event to cycle every 600 milliseconds.
 	 */
 	public UpdateEvent() {
 		super(CYCLE_TIME);
 	}
+	
+	/**
+	 * Gets the tick mode.
+	 * @return The tick mode.
+	 */
+	public TickMode getTickMode() {
+		return tickMode;
+	}
+	
+	/**
+	 * Sets the tick mode.
+	 * @param tickMode The tick mode.
+	 */
+	public void setTickMode(TickMode tickMode) {
+		this.tickMode = tickMode;
+	}
 
+	/**
+	 * Gets the number of packets handled for each player every cycle.
+	 * @return The number of packets.
+	 */
+	public int getPacketsPerTick() {
+		return packetsPerTick;
+	}
+	
+	/**
+	 * Sets the number of packets handled for each player every cycle. Any
+	 * more are left queued until the next cycle.
+	 * @param packetsPerTick The number of packets, which must be positive.
+	 * @throws IllegalArgumentException if the number is not positive.
+	 */
+	public void setPacketsPerTick(int packetsPerTick) {
+		if(packetsPerTick < 1) {
+			throw new IllegalArgumentException("Packets per tick must be positive.");
+		}
+		this.packetsPerTick = packetsPerTick;
+	}
+	
 	@Override
 	public void execute() {
-		List<Task> tickTasks = new ArrayList<Task>();
-		List<Task> updateTasks = new ArrayList<Task>();
-		List<Task> resetTasks = new ArrayList<Task>();
-		
-		for(NPC npc : World.getWorld().getNPCs()) {
-			tickTasks.add(new NPCTickTask(npc));
-			resetTasks.add(new NPCResetTask(npc));
-		}
-		
-		Iterator<Player> it$ = World.getWorld().getPlayers().iterator();
-		while(it$.hasNext()) {
-			Player player = it$.next();
-			if(!player.getSession().isConnected()) {
-				it$.remove();
-			} else {
-				tickTasks.add(new PlayerTickTask(player));
-				updateTasks.add(new ConsecutiveTask(new PlayerUpdateTask(player), new NPCUpdateTask(player)));
-				resetTasks.add(new PlayerResetTask(player));
-			}
-		}
-		
-		// ticks can no longer be parallel due to region code
-		Task tickTask = new ConsecutiveTask(tickTasks.toArray(new Task[0]));
-		Task updateTask = new ParallelTask(updateTasks.toArray(new Task[0]));
-		Task resetTask = new ParallelTask(resetTasks.toArray(new Task[0]));
-		
-		World.getWorld().submit(new ConsecutiveTask(tickTask, updateTask, resetTask));
+		World.getWorld().getEngine().pushCriticalTask(cycleTask);
 	}
 
 }
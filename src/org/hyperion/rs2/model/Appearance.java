@@ -72,6 +72,11 @@ public class Appearance {
 	 */
 	private int skinColour;
 	
+	/**
+	 * The version of the look, incremented whenever it is set.
+	 */
+	private int version = 0;
+	
 	/**
 	 * Creates the default player appearance.
 	 */
@@ -136,6 +141,15 @@ public class Appearance {
 		legColour = look[3];
 		feetColour = look[4];
 		skinColour = look[5];
+		version++;
+	}
+	
+	/**
+	 * Gets the version of the look, which changes whenever it is set.
+	 * @return The version.
+	 */
+	public int getVersion() {
+		return version;
 	}
 	
 	/**
@@ -1,10 +1,10 @@
 package org.hyperion.rs2.model;
 
-import java.util.LinkedList;
-import java.util.List;
-
 import org.hyperion.rs2.model.UpdateFlags.UpdateFlag;
 import org.hyperion.rs2.model.region.Region;
+import org.hyperion.rs2.model.region.RegionManager;
+import org.hyperion.rs2.net.UpdateBlock;
+import org.hyperion.rs2.util.LocalEntityList;
 
 /**
  * Represents a character in the game world, i.e. a <code>Player</code> or
@@ -67,12 +67,12 @@ public abstract class Entity {
 	/**
 	 * The list of local players.
 	 */
-	private final List<Player> localPlayers = new LinkedList<Player>();
+	private final LocalEntityList<Player> localPlayers = new LocalEntityList<Player>();
 	
 	/**
 	 * The list of local npcs.
 	 */
-	private final List<NPC> localNpcs = new LinkedList<NPC>();
+	private final LocalEntityList<NPC> localNpcs = new LocalEntityList<NPC>();
 	
 	/**
 	 * The teleporting flag.
@@ -114,6 +114,27 @@ public abstract class Entity {
 	 */
 	private Region currentRegion;
 	
+	/**
+	 * The position of this entity in its region's set of players or npcs.
+	 */
+	private int regionPosition = -1;
+	
+	/**
+	 * The update blocks encoded for this entity, one for each variant.
+	 */
+	private final UpdateBlock[] updateBlocks = new UpdateBlock[UpdateBlock.VARIANTS];
+	
+	/**
+	 * The state store this entity's hot state is written through to, if
+	 * any.
+	 */
+	private EntityStateStore stateStore;
+	
+	/**
+	 * Flag indicating a region change is waiting for the region hand-off.
+	 */
+	private boolean regionChangeDeferred = false;
+	
 	/**
 	 * The interacting entity.
 	 */
@@ -275,6 +296,38 @@ public abstract class Entity {
 		return currentRegion;
 	}
 	
+	/**
+	 * Gets the update block for a variant, which must only be used while
+	 * synchronized on this entity.
+	 * @param variant The variant.
+	 * @return The update block.
+	 */
+	public UpdateBlock getUpdateBlock(int variant) {
+		UpdateBlock block = updateBlocks[variant];
+		if(block == null) {
+			block = updateBlocks[variant] = new UpdateBlock();
+		}
+		return block;
+	}
+	
+	/**
+	 * Gets the position of this entity in its region's set of players or
+	 * npcs.
+	 * @return The position, or -1 if it is not in a region.
+	 */
+	public int getRegionPosition() {
+		return regionPosition;
+	}
+	
+	/**
+	 * Sets the position of this entity in its region's set of players or
+	 * npcs. This is only meant to be called by the set.
+	 * @param regionPosition The position.
+	 */
+	public void setRegionPosition(int regionPosition) {
+		this.regionPosition = regionPosition;
+	}
+	
 	/**
 	 * Gets the current animation.
 	 * @return The current animation;
@@ -416,7 +469,7 @@ public abstract class Entity {
 	 * Gets the list of local players.
 	 * @return The list of local players.
 	 */
-	public List<Player> getLocalPlayers() {
+	public LocalEntityList<Player> getLocalPlayers() {
 		return localPlayers;
 	}
 	
@@ -424,7 +477,7 @@ public abstract class Entity {
 	 * Gets the list of local npcs.
 	 * @return The list of local npcs.
 	 */
-	public List<NPC> getLocalNPCs() {
+	public LocalEntityList<NPC> getLocalNPCs() {
 		return localNpcs;
 	}
 	
@@ -449,7 +502,36 @@ public abstract class Entity {
 	 * @param location The current location.
 	 */
 	public void setLocation(Location location) {
+		Location from = this.location;
 		this.location = location;
+		if(stateStore != null) {
+			stateStore.setLocation(index, location);
+		}
+		if(currentRegion != null) {
+			currentRegion.entityMoved(this, from);
+		}
+		
+		/*
+		 * While regions are being ticked in parallel, region membership is
+		 * left alone and changed later in the region hand-off step.
+		 */
+		RegionManager regionManager = World.getWorld().getRegionManager();
+		if(regionManager.isHandOffPending()) {
+			if(!regionChangeDeferred && !regionManager.isInRegion(location, currentRegion)) {
+				regionChangeDeferred = true;
+				regionManager.deferRegionChange(this);
+			}
+		} else {
+			updateRegion();
+		}
+	}
+	
+	/**
+	 * Moves this entity into the region which contains its current
+	 * location, if it is not already in it.
+	 */
+	public void updateRegion() {
+		regionChangeDeferred = false;
 		
 		Region newRegion = World.getWorld().getRegionManager().getRegionByLocation(location);
 		if(newRegion != currentRegion) {
@@ -458,9 +540,40 @@ public abstract class Entity {
 			}
 			currentRegion = newRegion;
 			addToRegion(currentRegion);
+			if(stateStore != null) {
+				stateStore.setRegion(index, currentRegion);
+			}
 		}
 	}
 	
+	/**
+	 * Gets the state store this entity's hot state is written through to.
+	 * @return The state store, or <code>null</code> if it is not attached to
+	 * one.
+	 */
+	public EntityStateStore getStateStore() {
+		return stateStore;
+	}
+	
+	/**
+	 * Starts writing this entity's hot state through to a state store.
+	 * @param stateStore The state store.
+	 */
+	void attach(EntityStateStore stateStore) {
+		this.stateStore = stateStore;
+		updateFlags.attach(stateStore, index);
+		sprites.attach(stateStore, index);
+	}
+	
+	/**
+	 * Stops writing this entity's hot state through to a state store.
+	 */
+	void detach() {
+		stateStore = null;
+		updateFlags.detach();
+		sprites.detach();
+	}
+	
 	/**
 	 * Destroys this entity.
 	 */
@@ -1,20 +1,24 @@
 package org.hyperion.rs2.model;
 
-import java.util.BitSet;
-
-import org.hyperion.rs2.event.impl.CooldownEvent;
-
 /**
- * Represents an entity's individual cooldowns.
+ * Represents an entity's individual cooldowns. Each cooldown is stored as the
+ * tick it expires on, and is active until the world's tick reaches it, so no
+ * event is needed to clear it.
  * @author Graham Edgecombe
  * @author Adaptations by Brett Russell
  */
 public class EntityCooldowns {
+
+	/**
+	 * A tick which is never reached, used for cooldowns which are set until
+	 * they are cleared.
+	 */
+	private static final long NEVER = Long.MAX_VALUE;
 	
 	/**
-	 * The bitset (flag data).
+	 * The tick each cooldown expires on, indexed by ordinal.
 	 */
-	private BitSet cooldowns = new BitSet();
+	private final long[] expiries = new long[CooldownFlags.values().length];
 	
 	/**
 	 * Represents a single type of update flag.
@@ -41,51 +45,62 @@ public class EntityCooldowns {
 		 * Represents a special attack bar segmentcooldown.
 		 */
 		SPECIAL_ATTACK,
-		
-		
+	
+	
 	}
 	
 	/**
-	 * Checks if an update required.
-	 * @return <code>true</code> if 1 or more flags are set,
+	 * Checks if any cooldowns are active.
+	 * @return <code>true</code> if 1 or more cooldowns are active,
 	 * <code>false</code> if not.
 	 */
 	public boolean areCooldownsPending() {
-		return !cooldowns.isEmpty();
+		long tick = World.getWorld().getTick();
+		for(long expiry : expiries) {
+			if(tick < expiry) {
+				return true;
+			}
+		}
+		return false;
 	}
 	
 	/**
-	 * Flags (sets to true) a flag.
-	 * @param flag The flag to flag.
+	 * Starts a cooldown.
+	 * @param cooldown The cooldown.
+	 * @param duration The duration, in milliseconds, which is rounded up to
+	 * a whole number of ticks.
 	 */
-	public void flag(CooldownFlags cooldown, int duration, Entity entity) {
-		cooldowns.set(cooldown.ordinal(), true);
-		World.getWorld().submit(new CooldownEvent(entity, cooldown, duration));
+	public void flag(CooldownFlags cooldown, int duration) {
+		World world = World.getWorld();
+		expiries[cooldown.ordinal()] = world.getTick() + world.toTicks(duration);
 	}
 	
 	/**
-	 * Sets a cooldown.
-	 * @param flag The flag.
+	 * Sets a cooldown. A cooldown which is set stays active until it is
+	 * cleared.
+	 * @param cooldown The cooldown.
 	 * @param value The value.
 	 */
 	public void set(CooldownFlags cooldown, boolean value) {
-		cooldowns.set(cooldown.ordinal(), value);
+		expiries[cooldown.ordinal()] = value ? NEVER : 0;
 	}
 	
 	/**
-	 * Gets the value of a flag.
-	 * @param cooldownFlags The flag to get the value of.
-	 * @return The flag value.
+	 * Checks if a cooldown is active.
+	 * @param cooldownFlags The cooldown.
+	 * @return <code>true</code> if it is active, <code>false</code> if not.
 	 */
 	public boolean get(CooldownFlags cooldownFlags) {
-		return cooldowns.get(cooldownFlags.ordinal());
+		return World.getWorld().getTick() < expiries[cooldownFlags.ordinal()];
 	}
 	
 	/**
-	 * Resest all update flags.
+	 * Clears all cooldowns.
 	 */
 	public void reset() {
-		cooldowns.clear();
+		for(int i = 0; i < expiries.length; i++) {
+			expiries[i] = 0;
+		}
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,230 @@
+package org.hyperion.rs2.model;
+
+import org.hyperion.rs2.model.region.Region;
+
+/**
+ * <p>Holds the state of a group of entities which is read every cycle in
+ * packed primitive arrays, indexed by entity index.</p>
+ *
+ * <p>The update tasks look at the location and update flags of hundreds of
+ * other entities per observer. Reading them through each entity means
+ * following a pointer to the entity, then to its <code>Location</code> or
+ * <code>UpdateFlags</code>, for every one. With a store attached, the same
+ * values sit side by side in a few arrays.</p>
+ *
+ * <p>An entity is attached when it is added to an <code>EntityList</code>
+ * which has a store, and from then on its location, region, sprites and
+ * update flags are written through to the store as they change. The entity's
+ * own objects are still the source of truth for anything else.</p>
+ *
+ * <p>Coordinates are packed into a single int: 14 bits each for x and y, and
+ * 2 bits for the height level.</p>
+ */
+public class EntityStateStore {
+
+	/**
+	 * The packed coordinates of each entity.
+	 */
+	private final int[] coordinates;
+
+	/**
+	 * The sprites of each entity, the primary sprite plus one in the low
+	 * byte and the secondary sprite plus one in the next.
+	 */
+	private final int[] sprites;
+
+	/**
+	 * The update flag mask of each entity.
+	 */
+	private final int[] updateMasks;
+
+	/**
+	 * The packed coordinates of the region each entity is in, or -1.
+	 */
+	private final int[] regions;
+
+	/**
+	 * Creates the store.
+	 * @param capacity The highest entity index which can be stored.
+	 */
+	public EntityStateStore(int capacity) {
+		coordinates = new int[capacity + 1];
+		sprites = new int[capacity + 1];
+		updateMasks = new int[capacity + 1];
+		regions = new int[capacity + 1];
+	}
+
+	/**
+	 * Attaches an entity at its current index, copying in its state.
+	 * @param entity The entity.
+	 */
+	public void attach(Entity entity) {
+		int index = entity.getIndex();
+		entity.attach(this);
+		setLocation(index, entity.getLocation());
+		setRegion(index, entity.getRegion());
+		setSprites(index, entity.getSprites().getPrimarySprite(), entity.getSprites().getSecondarySprite());
+		setUpdateMask(index, entity.getUpdateFlags().getMask());
+	}
+
+	/**
+	 * Detaches an entity, clearing its state.
+	 * @param entity The entity.
+	 */
+	public void detach(Entity entity) {
+		int index = entity.getIndex();
+		entity.detach();
+		coordinates[index] = 0;
+		sprites[index] = 0;
+		updateMasks[index] = 0;
+		regions[index] = -1;
+	}
+
+	/**
+	 * Packs a location into an int.
+	 * @param location The location.
+	 * @return The packed coordinates.
+	 */
+	public static int pack(Location location) {
+		return (location.getZ() & 0x3) << 28 | (location.getX() & 0x3FFF) << 14 | (location.getY() & 0x3FFF);
+	}
+
+	/**
+	 * Checks if two packed coordinates are within viewing distance of each
+	 * other, matching <code>Location.isWithinDistance(Location)</code>.
+	 * @param coordinates The first packed coordinates.
+	 * @param other The second packed coordinates.
+	 * @return <code>true</code> if so, <code>false</code> if not.
+	 */
+	public static boolean isWithinDistance(int coordinates, int other) {
+		if((coordinates >>> 28) != (other >>> 28)) {
+			return false;
+		}
+		int deltaX = ((other >> 14) & 0x3FFF) - ((coordinates >> 14) & 0x3FFF);
+		int deltaY = (other & 0x3FFF) - (coordinates & 0x3FFF);
+		return deltaX <= 14 && deltaX >= -15 && deltaY <= 14 && deltaY >= -15;
+	}
+
+	/**
+	 * Checks if two packed coordinates are within a distance of each other,
+	 * matching <code>Location.isWithinDistance(Location, int)</code>.
+	 * @param coordinates The first packed coordinates.
+	 * @param other The second packed coordinates.
+	 * @param distance The distance.
+	 * @return <code>true</code> if so, <code>false</code> if not.
+	 */
+	public static boolean isWithinDistance(int coordinates, int other, int distance) {
+		if((coordinates >>> 28) != (other >>> 28)) {
+			return false;
+		}
+		int deltaX = ((other >> 14) & 0x3FFF) - ((coordinates >> 14) & 0x3FFF);
+		int deltaY = (other & 0x3FFF) - (coordinates & 0x3FFF);
+		return deltaX <= distance && deltaX >= -distance && deltaY <= distance && deltaY >= -distance;
+	}
+
+	/**
+	 * Gets the distance between two packed coordinates, which is the larger
+	 * of the distances along each axis. The height levels are not compared.
+	 * @param coordinates The first packed coordinates.
+	 * @param other The second packed coordinates.
+	 * @return The distance.
+	 */
+	public static int getDistance(int coordinates, int other) {
+		int deltaX = Math.abs(((other >> 14) & 0x3FFF) - ((coordinates >> 14) & 0x3FFF));
+		int deltaY = Math.abs((other & 0x3FFF) - (coordinates & 0x3FFF));
+		return Math.max(deltaX, deltaY);
+	}
+
+	/**
+	 * Sets the location of an entity.
+	 * @param index The entity index.
+	 * @param location The location.
+	 */
+	void setLocation(int index, Location location) {
+		coordinates[index] = pack(location);
+	}
+
+	/**
+	 * Sets the region of an entity.
+	 * @param index The entity index.
+	 * @param region The region, or <code>null</code>.
+	 */
+	void setRegion(int index, Region region) {
+		regions[index] = region == null ? -1 : region.getCoordinates().getX() << 16 | region.getCoordinates().getY();
+	}
+
+	/**
+	 * Sets the sprites of an entity.
+	 * @param index The entity index.
+	 * @param primary The primary sprite.
+	 * @param secondary The secondary sprite.
+	 */
+	void setSprites(int index, int primary, int secondary) {
+		sprites[index] = (primary + 1) & 0xFF | ((secondary + 1) & 0xFF) << 8;
+	}
+
+	/**
+	 * Sets the update flag mask of an entity.
+	 * @param index The entity index.
+	 * @param mask The mask.
+	 */
+	void setUpdateMask(int index, int mask) {
+		updateMasks[index] = mask;
+	}
+
+	/**
+	 * Gets the packed coordinates of an entity.
+	 * @param index The entity index.
+	 * @return The packed coordinates.
+	 */
+	public int getCoordinates(int index) {
+		return coordinates[index];
+	}
+
+	/**
+	 * Gets the primary sprite of an entity.
+	 * @param index The entity index.
+	 * @return The primary sprite.
+	 */
+	public int getPrimarySprite(int index) {
+		return (sprites[index] & 0xFF) - 1;
+	}
+
+	/**
+	 * Gets the secondary sprite of an entity.
+	 * @param index The entity index.
+	 * @return The secondary sprite.
+	 */
+	public int getSecondarySprite(int index) {
+		return ((sprites[index] >> 8) & 0xFF) - 1;
+	}
+
+	/**
+	 * Gets the update flag mask of an entity.
+	 * @param index The entity index.
+	 * @return The mask.
+	 */
+	public int getUpdateMask(int index) {
+		return updateMasks[index];
+	}
+
+	/**
+	 * Checks if an entity needs an update block.
+	 * @param index The entity index.
+	 * @return <code>true</code> if so, <code>false</code> if not.
+	 */
+	public boolean isUpdateRequired(int index) {
+		return updateMasks[index] != 0;
+	}
+
+	/**
+	 * Gets the packed coordinates of the region an entity is in.
+	 * @param index The entity index.
+	 * @return The region x coordinate in the high 16 bits and the y
+	 * coordinate in the low 16 bits, or -1 if it is not in a region.
+	 */
+	public int getRegion(int index) {
+		return regions[index];
+	}
+
+}
@@ -147,6 +147,22 @@ public class Location {
 		return deltaX <= 2 && deltaX >= -3 && deltaY <= 2 && deltaY >= -3;
 	}
 	
+	/**
+	 * Checks if this location is within a number of tiles of another, in
+	 * both directions along each axis.
+	 * @param other The other location.
+	 * @param distance The number of tiles.
+	 * @return <code>true</code> if the location is in range,
+	 * <code>false</code> if not.
+	 */
+	public boolean isWithinDistance(Location other, int distance) {
+		if(z != other.z) {
+			return false;
+		}
+		int deltaX = other.x - x, deltaY = other.y - y;
+		return deltaX <= distance && deltaX >= -distance && deltaY <= distance && deltaY >= -distance;
+	}
+	
 	@Override
 	public int hashCode() {
 		return z << 30 | x << 15 | y;
@@ -1,11 +1,16 @@
 package org.hyperion.rs2.model;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.session.IoSession;
 import org.hyperion.data.Persistable;
+import org.hyperion.rs2.Constants;
 import org.hyperion.rs2.action.ActionQueue;
 import org.hyperion.rs2.action.impl.AttackAction;
 import org.hyperion.rs2.event.impl.DeathEvent;
@@ -14,6 +19,7 @@ import org.hyperion.rs2.model.container.Bank;
 import org.hyperion.rs2.model.container.Container;
 import org.hyperion.rs2.model.container.Equipment;
 import org.hyperion.rs2.model.container.Inventory;
+import org.hyperion.rs2.model.container.impl.InterfaceContainerListener;
 import org.hyperion.rs2.model.region.Region;
 import org.hyperion.rs2.model.Damage.Hit;
 import org.hyperion.rs2.model.Damage.HitType;
@@ -144,6 +150,22 @@ public class Player extends Entity implements Persistable {
 	 */
 	private final Queue<Packet> pendingPackets = new LinkedList<Packet>();
 	
+	/**
+	 * A queue of packets received from the client which are waiting to be
+	 * handled.
+	 */
+	private final Queue<Packet> queuedPackets = new ConcurrentLinkedQueue<Packet>();
+	
+	/**
+	 * The number of packets in the queue of received packets.
+	 */
+	private final AtomicInteger queuedPacketCount = new AtomicInteger(0);
+	
+	/**
+	 * The container listeners whose refresh has been deferred.
+	 */
+	private final List<InterfaceContainerListener> deferredContainerRefreshes = new ArrayList<InterfaceContainerListener>();
+	
 	/**
 	 * The request manager which manages trading and duelling requests.
 	 */
@@ -192,6 +214,29 @@ public class Player extends Entity implements Persistable {
 	 */
 	private final Appearance appearance = new Appearance();
 	
+	/**
+	 * The version of the player's appearance block, incremented whenever the
+	 * equipment, combat level or anything else in it besides the look
+	 * changes.
+	 */
+	private int appearanceVersion = 0;
+	
+	/**
+	 * The cached appearance block, including its length, or
+	 * <code>null</code> if it has not been encoded.
+	 */
+	private byte[] appearanceBlock;
+	
+	/**
+	 * The appearance version the cached block was encoded at.
+	 */
+	private int appearanceBlockVersion = -1;
+	
+	/**
+	 * The look version the cached block was encoded at.
+	 */
+	private int appearanceBlockLookVersion = -1;
+	
 	/**
 	 * The player's equipment.
 	 */
@@ -217,14 +262,6 @@ public class Player extends Entity implements Persistable {
 	 */
 	private final Settings settings = new Settings();
 	
-	/*
-	 * Cached details.
-	 */
-	/**
-	 * The cached update block.
-	 */
-	private Packet cachedUpdateBlock;
-	
 	/**
 	 * Creates a player based on the details object.
 	 * @param details The details object.
@@ -238,7 +275,7 @@ public class Player extends Entity implements Persistable {
 		this.nameLong = NameUtils.nameToLong(this.name);
 		this.password = details.getPassword();
 		this.uid = details.getUID();
-		this.getUpdateFlags().flag(UpdateFlag.APPEARANCE);
+		this.flagAppearance();
 		this.setTeleporting(true);
 	}
 	
@@ -286,50 +323,69 @@ public class Player extends Entity implements Persistable {
 	}
 	
 	/**
-	 * Gets the player's bank.
-	 * @return The player's bank.
+	 * Queues a packet received from the client, to be handled at the start of
+	 * the next cycle. This may be called from any thread.
+	 * @param packet The packet.
+	 * @return <code>true</code> if the packet was queued, <code>false</code>
+	 * if too many packets are already queued.
 	 */
-	public Container getBank() {
-		return bank;
+	public boolean queuePacket(Packet packet) {
+		if(queuedPacketCount.incrementAndGet() > Constants.MAX_QUEUED_PACKETS) {
+			queuedPacketCount.decrementAndGet();
+			return false;
+		}
+		queuedPackets.add(packet);
+		return true;
 	}
 	
 	/**
-	 * Gets the interface state.
-	 * @return The interface state.
+	 * Takes the oldest packet received from the client off the queue.
+	 * @return The packet, or <code>null</code> if the queue is empty.
 	 */
-	public InterfaceState getInterfaceState() {
-		return interfaceState;
+	public Packet pollQueuedPacket() {
+		Packet packet = queuedPackets.poll();
+		if(packet != null) {
+			queuedPacketCount.decrementAndGet();
+		}
+		return packet;
 	}
 	
 	/**
-	 * Checks if there is a cached update block for this cycle.
-	 * @return <code>true</code> if so, <code>false</code> if not.
+	 * Records a container listener whose refresh has been deferred, so it is
+	 * sent with the next batch of deferred refreshes.
+	 * @param listener The listener.
 	 */
-	public boolean hasCachedUpdateBlock() {
-		return cachedUpdateBlock != null;
+	public void deferContainerRefresh(InterfaceContainerListener listener) {
+		deferredContainerRefreshes.add(listener);
 	}
 	
 	/**
-	 * Sets the cached update block for this cycle.
-	 * @param cachedUpdateBlock The cached update block.
+	 * Sends every skill and container refresh which has been deferred.
 	 */
-	public void setCachedUpdateBlock(Packet cachedUpdateBlock) {
-		this.cachedUpdateBlock = cachedUpdateBlock;
+	public void sendDeferredRefreshes() {
+		skills.sendDeferredRefreshes();
+		if(deferredContainerRefreshes.size() > 0) {
+			for(InterfaceContainerListener listener : deferredContainerRefreshes) {
+				listener.sendDeferredRefresh();
+			}
+			deferredContainerRefreshes.clear();
+		}
 	}
 	
 	/**
-	 * Gets the cached update block.
-	 * @return The cached update block.
+	 * Gets the player's bank.
+	 * @return The player's bank.
 	 */
-	public Packet getCachedUpdateBlock() {
-		return cachedUpdateBlock;
+	public Container getBank() {
+		return bank;
 	}
 	
 	/**
-	 * Resets the cached update block.
+	 * Gets the interface state.
+	 * @return The interface state.
 	 */
-	public void resetCachedUpdateBlock() {
-		cachedUpdateBlock = null;
+	public InterfaceState getInterfaceState() {
+		return interfaceState;
 	}
 	
 	/**
@@ -364,6 +420,39 @@ public class Player extends Entity implements Persistable {
 		return appearance;
 	}
 	
+	/**
+	 * Flags an appearance update after something in the appearance block
+	 * changed, so the cached block is encoded again.
+	 */
+	public void flagAppearance() {
+		appearanceVersion++;
+		getUpdateFlags().flag(UpdateFlag.APPEARANCE);
+	}
+	
+	/**
+	 * Gets the cached appearance block. This should only be called while
+	 * synchronized on the player.
+	 * @return The block, including its length, or <code>null</code> if
+	 * the appearance has changed since it was encoded.
+	 */
+	public byte[] getAppearanceBlock() {
+		if(appearanceBlockVersion != appearanceVersion || appearanceBlockLookVersion != appearance.getVersion()) {
+			return null;
+		}
+		return appearanceBlock;
+	}
+	
+	/**
+	 * Caches the appearance block for the current appearance. This should
+	 * only be called while synchronized on the player.
+	 * @param appearanceBlock The block, including its length.
+	 */
+	public void setAppearanceBlock(byte[] appearanceBlock) {
+		this.appearanceBlock = appearanceBlock;
+		this.appearanceBlockVersion = appearanceVersion;
+		this.appearanceBlockLookVersion = appearance.getVersion();
+	}
+	
 	/**
 	 * Gets the player's equipment.
 	 * @return The player's equipment.
@@ -588,6 +677,7 @@ public class Player extends Entity implements Persistable {
 		for(int i = 0; i < Skills.SKILL_COUNT; i++) {
 			skills.setSkill(i, buf.getUnsigned(), buf.getDouble());
 		}
+		flagAppearance();
 		for(int i = 0; i < Inventory.SIZE; i++) {
 			int id = buf.getUnsignedShort();
 			if(id != 65535) {
@@ -1,6 +1,8 @@
 package org.hyperion.rs2.model;
 
-import org.hyperion.rs2.model.UpdateFlags.UpdateFlag;
+import java.util.BitSet;
+
+import org.hyperion.rs2.event.TickBudget;
 
 /**
  * Represents a player's skill and experience levels.
@@ -55,6 +57,11 @@ public class Skills {
 	 */
 	private double[] exps = new double[SKILL_COUNT];
 	
+	/**
+	 * The skills whose refresh has been deferred.
+	 */
+	private final BitSet deferredRefreshes = new BitSet(SKILL_COUNT);
+	
 	/**
 	 * Creates a skills object.
 	 * @param player The player whose skills this object represents.
@@ -92,13 +99,25 @@ public class Skills {
 	 * @return The combat level.
 	 */
 	public int getCombatLevel() {
-		final int attack = getLevelForExperience(0);
-		final int defence = getLevelForExperience(1);
-		final int strength = getLevelForExperience(2);
-		final int hp = getLevelForExperience(3);
-		final int prayer = getLevelForExperience(5);
-		final int ranged = getLevelForExperience(4);
-		final int magic = getLevelForExperience(6);
+		return getCombatLevel(-1, 0);
+	}
+	
+	/**
+	 * Gets the combat level the player would have if one skill were at a
+	 * different level.
+	 * @param skill The skill, or <code>-1</code> to use the real level of
+	 * every skill.
+	 * @param level The level used for that skill.
+	 * @return The combat level.
+	 */
+	private int getCombatLevel(int skill, int level) {
+		final int attack = skill == ATTACK ? level : getLevelForExperience(ATTACK);
+		final int defence = skill == DEFENCE ? level : getLevelForExperience(DEFENCE);
+		final int strength = skill == STRENGTH ? level : getLevelForExperience(STRENGTH);
+		final int hp = skill == HITPOINTS ? level : getLevelForExperience(HITPOINTS);
+		final int prayer = skill == PRAYER ? level : getLevelForExperience(PRAYER);
+		final int ranged = skill == RANGE ? level : getLevelForExperience(RANGE);
+		final int magic = skill == MAGIC ? level : getLevelForExperience(MAGIC);
 		int combatLevel = 3;	
 		combatLevel = (int) ((defence + hp + Math.floor(prayer / 2)) * 0.2535) + 1;
 		final double melee = (attack + strength) * 0.325;
@@ -119,7 +138,9 @@ public class Skills {
 	}
 	
 	/**
-	 * Sets a skill.
+	 * Sets a skill. This does not flag an appearance update, so a caller
+	 * which may change the combat level should call
+	 * <code>Player.flagAppearance()</code> once it is done.
 	 * @param skill The skill id.
 	 * @param level The level.
 	 * @param exp The experience.
@@ -127,7 +148,7 @@ public class Skills {
 	public void setSkill(int skill, int level, double exp) {
 		levels[skill] = level;
 		exps[skill] = exp;
-		player.getActionSender().sendSkill(skill);
+		refresh(skill);
 	}
 	
 	/**
@@ -137,7 +158,7 @@ public class Skills {
 	 */
 	public void setLevel(int skill, int level) {
 		levels[skill] = level;
-		player.getActionSender().sendSkill(skill);
+		refresh(skill);
 	}
 	
 	/**
@@ -148,10 +169,10 @@ public class Skills {
 	public void setExperience(int skill, double exp) {
 		int oldLvl = getLevelForExperience(skill);
 		exps[skill] = exp;
-		player.getActionSender().sendSkill(skill);
+		refresh(skill);
 		int newLvl = getLevelForExperience(skill);
-		if(oldLvl != newLvl) {
-			player.getUpdateFlags().flag(UpdateFlag.APPEARANCE);
+		if(oldLvl != newLvl && skill <= MAGIC && getCombatLevel() != getCombatLevel(skill, oldLvl)) {
+			player.flagAppearance();
 		}
 	}
 	
@@ -161,7 +182,7 @@ public class Skills {
 	 */
 	public void incrementLevel(int skill) {
 		levels[skill]++;
-		player.getActionSender().sendSkill(skill);
+		refresh(skill);
 	}
 	
 	/**
@@ -170,7 +191,7 @@ public class Skills {
 	 */
 	public void decrementLevel(int skill) {
 		levels[skill]--;
-		player.getActionSender().sendSkill(skill);
+		refresh(skill);
 	}
 	
 	/**
@@ -186,7 +207,7 @@ public class Skills {
 			amount = levels[skill];
 		}
 		levels[skill] = levels[skill] - amount;
-		player.getActionSender().sendSkill(skill);
+		refresh(skill);
 	}
 	
 	/**
@@ -197,10 +218,10 @@ public class Skills {
 		int norm = getLevelForExperience(skill);
 		if(levels[skill] > norm) {
 			levels[skill]--;
-			player.getActionSender().sendSkill(skill);
+			refresh(skill);
 		} else if(levels[skill] < norm) {
 			levels[skill]++;
-			player.getActionSender().sendSkill(skill);
+			refresh(skill);
 		}
 	}
 	
@@ -266,6 +287,7 @@ public class Skills {
 	 */
 	public void addExperience(int skill, double exp) {
 		int oldLevel = levels[skill];
+		int oldExperienceLevel = getLevelForExperience(skill);
 		exps[skill] += exp;
 		if(exps[skill] > MAXIMUM_EXP) {
 			exps[skill] = MAXIMUM_EXP;
@@ -274,9 +296,41 @@ public class Skills {
 		int levelDiff = newLevel - oldLevel;
 		if(levelDiff > 0) {
 			levels[skill] += levelDiff;
-			player.getUpdateFlags().flag(UpdateFlag.APPEARANCE);
 		}
-		player.getActionSender().sendSkill(skill);
+		/*
+		 * The appearance block only shows the combat level, which is worked
+		 * out from the experience levels of the combat skills.
+		 */
+		if(newLevel != oldExperienceLevel && skill <= MAGIC && getCombatLevel() != getCombatLevel(skill, oldExperienceLevel)) {
+			player.flagAppearance();
+		}
+		refresh(skill);
 	}
 
+	
+	/**
+	 * Sends a skill to the client, unless refreshes are being deferred, in
+	 * which case it is sent with the next batch of deferred refreshes.
+	 * @param skill The skill.
+	 */
+	private void refresh(int skill) {
+		TickBudget budget = World.getWorld().getTickBudget();
+		if(budget != null && budget.isDeferringRefreshes()) {
+			deferredRefreshes.set(skill);
+			budget.recordDeferredSkillRefresh();
+		} else {
+			deferredRefreshes.clear(skill);
+			player.getActionSender().sendSkill(skill);
+		}
+	}
+	
+	/**
+	 * Sends every skill whose refresh was deferred.
+	 */
+	public void sendDeferredRefreshes() {
+		for(int skill = deferredRefreshes.nextSetBit(0); skill >= 0; skill = deferredRefreshes.nextSetBit(skill + 1)) {
+			player.getActionSender().sendSkill(skill);
+		}
+		deferredRefreshes.clear();
+	}
 }
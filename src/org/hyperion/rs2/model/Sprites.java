@@ -17,6 +17,16 @@ public class Sprites {
 	 */
 	private int secondary = -1;
 	
+	/**
+	 * The state store the sprites are written through to, if any.
+	 */
+	private EntityStateStore store;
+	
+	/**
+	 * The index of the entity in the state store.
+	 */
+	private int index;
+	
 	/**
 	 * Gets the primary sprite.
 	 * @return The primary sprite.
@@ -41,6 +51,26 @@ public class Sprites {
 	public void setSprites(int primary, int secondary) {
 		this.primary = primary;
 		this.secondary = secondary;
+		if(store != null) {
+			store.setSprites(index, primary, secondary);
+		}
+	}
+	
+	/**
+	 * Starts writing the sprites through to a state store.
+	 * @param store The state store.
+	 * @param index The index of the entity in the state store.
+	 */
+	void attach(EntityStateStore store, int index) {
+		this.store = store;
+		this.index = index;
+	}
+	
+	/**
+	 * Stops writing the sprites through to a state store.
+	 */
+	void detach() {
+		this.store = null;
 	}
 
 }
@@ -1,18 +1,26 @@
 package org.hyperion.rs2.model;
 
-import java.util.BitSet;
-
 /**
- * Holds update flags.
+ * Holds update flags, as a mask with one bit per flag.
  * @author Graham Edgecombe
  *
  */
 public class UpdateFlags {
 	
 	/**
-	 * The bitset (flag data).
+	 * The flag mask.
+	 */
+	private int flags = 0;
+	
+	/**
+	 * The state store the mask is written through to, if any.
+	 */
+	private EntityStateStore store;
+	
+	/**
+	 * The index of the entity in the state store.
 	 */
-	private BitSet flags = new BitSet();
+	private int index;
 	
 	/**
 	 * Represents a single type of update flag.
@@ -78,7 +86,7 @@ public class UpdateFlags {
 	 * <code>false</code> if not.
 	 */
 	public boolean isUpdateRequired() {
-		return !flags.isEmpty();
+		return flags != 0;
 	}
 	
 	/**
@@ -86,7 +94,7 @@ public class UpdateFlags {
 	 * @param flag The flag to flag.
 	 */
 	public void flag(UpdateFlag flag) {
-		flags.set(flag.ordinal(), true);
+		setMask(flags | 1 << flag.ordinal());
 	}
 	
 	/**
@@ -95,7 +103,11 @@ public class UpdateFlags {
 	 * @param value The value.
 	 */
 	public void set(UpdateFlag flag, boolean value) {
-		flags.set(flag.ordinal(), value);
+		if(value) {
+			setMask(flags | 1 << flag.ordinal());
+		} else {
+			setMask(flags & ~(1 << flag.ordinal()));
+		}
 	}
 	
 	/**
@@ -104,14 +116,51 @@ public class UpdateFlags {
 	 * @return The flag value.
 	 */
 	public boolean get(UpdateFlag flag) {
-		return flags.get(flag.ordinal());
+		return (flags & 1 << flag.ordinal()) != 0;
 	}
 	
 	/**
 	 * Resest all update flags.
 	 */
 	public void reset() {
-		flags.clear();
+		setMask(0);
+	}
+	
+	/**
+	 * Gets the flag mask, with bit <code>n</code> set if the flag with
+	 * ordinal <code>n</code> is set.
+	 * @return The flag mask.
+	 */
+	public int getMask() {
+		return flags;
+	}
+	
+	/**
+	 * Sets the flag mask, writing it through to the state store.
+	 * @param flags The flag mask.
+	 */
+	private void setMask(int flags) {
+		this.flags = flags;
+		if(store != null) {
+			store.setUpdateMask(index, flags);
+		}
+	}
+	
+	/**
+	 * Starts writing the mask through to a state store.
+	 * @param store The state store.
+	 * @param index The index of the entity in the state store.
+	 */
+	void attach(EntityStateStore store, int index) {
+		this.store = store;
+		this.index = index;
+	}
+	
+	/**
+	 * Stops writing the mask through to a state store.
+	 */
+	void detach() {
+		this.store = null;
 	}
 
 }
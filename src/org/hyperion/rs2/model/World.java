@@ -5,6 +5,8 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
 import java.util.logging.Logger;
 
@@ -17,7 +19,11 @@ import org.hyperion.rs2.WorldLoader;
 import org.hyperion.rs2.WorldLoader.LoginResult;
 import org.hyperion.rs2.event.Event;
 import org.hyperion.rs2.event.EventManager;
+import org.hyperion.rs2.event.TickBudget;
+import org.hyperion.rs2.event.TickClock;
+import org.hyperion.rs2.event.TickProfiler;
 import org.hyperion.rs2.event.impl.CleanupEvent;
+import org.hyperion.rs2.event.impl.RegionEvictionEvent;
 import org.hyperion.rs2.event.impl.UpdateEvent;
 import org.hyperion.rs2.login.LoginServerConnector;
 import org.hyperion.rs2.login.LoginServerWorldLoader;
@@ -72,20 +78,56 @@ public class World {
 	 */
 	private EventManager eventManager;
 	
+	/**
+	 * The clock which drives the update cycle.
+	 */
+	private TickClock tickClock;
+	
+	/**
+	 * The update event.
+	 */
+	private final UpdateEvent updateEvent = new UpdateEvent();
+	
+	/**
+	 * The budget which decides what to shed when cycles run long.
+	 */
+	private TickBudget tickBudget;
+	
+	/**
+	 * The profiler which records how long each phase of the cycle takes.
+	 */
+	private final TickProfiler profiler = new TickProfiler();
+	
 	/**
 	 * The current loader implementation.
 	 */
 	private WorldLoader loader;
 	
+	/**
+	 * The hot state of connected players.
+	 */
+	private final EntityStateStore playerStates = new EntityStateStore(Constants.MAX_PLAYERS);
+	
 	/**
 	 * A list of connected players.
 	 */
-	private EntityList<Player> players = new EntityList<Player>(Constants.MAX_PLAYERS);
+	private EntityList<Player> players = new EntityList<Player>(Constants.MAX_PLAYERS, playerStates);
+	
+	/**
+	 * The registered players, keyed by their name expressed as a long. This
+	 * may be read from any thread.
+	 */
+	private final ConcurrentMap<Long, Player> playerNames = new ConcurrentHashMap<Long, Player>(Constants.MAX_PLAYERS);
+	
+	/**
+	 * The hot state of active NPCs.
+	 */
+	private final EntityStateStore npcStates = new EntityStateStore(Constants.MAX_NPCS);
 	
 	/**
 	 * A list of active NPCs.
 	 */
-	private EntityList<NPC> npcs = new EntityList<NPC>(Constants.MAX_NPCS);
+	private EntityList<NPC> npcs = new EntityList<NPC>(Constants.MAX_NPCS, npcStates);
 	
 	/**
 	 * The game object manager.
@@ -163,6 +205,7 @@ public class World {
 		} else {
 			this.engine = engine;
 			this.eventManager = new EventManager(engine);
+			this.tickBudget = new TickBudget(UpdateEvent.CYCLE_TIME, eventManager.getTimingWheel());
 			this.registerGlobalEvents();
 			this.loadConfiguration();
 		}
@@ -189,6 +232,26 @@ public class World {
 				this.loader = new GenericWorldLoader();
 				logger.fine("WorldLoader set to default");
 			}
+			if(mappings.containsKey("tickMode")) {
+				updateEvent.setTickMode(UpdateEvent.TickMode.valueOf(mappings.get("tickMode").toUpperCase()));
+				logger.fine("Tick mode set to : " + updateEvent.getTickMode());
+			}
+			if(mappings.containsKey("waitStrategy")) {
+				engine.setWaitStrategy(GameEngine.WaitStrategy.valueOf(mappings.get("waitStrategy").toUpperCase()));
+				logger.fine("Wait strategy set to : " + engine.getWaitStrategy());
+			}
+			if(mappings.containsKey("packetsPerTick")) {
+				updateEvent.setPacketsPerTick(Integer.parseInt(mappings.get("packetsPerTick")));
+				logger.fine("Packets per tick set to : " + updateEvent.getPacketsPerTick());
+			}
+			if(mappings.containsKey("regionIdleTime")) {
+				regionManager.setIdleTime(Integer.parseInt(mappings.get("regionIdleTime")));
+				logger.fine("Region idle time set to : " + regionManager.getIdleTime());
+			}
+			if(mappings.containsKey("playerViewBudget")) {
+				regionManager.getInterestManager().setPlayerViewBudget(Integer.parseInt(mappings.get("playerViewBudget")));
+				logger.fine("Player view budget set to : " + regionManager.getInterestManager().getPlayerViewBudget());
+			}
 			Map<String, Map<String, String>> complexMappings = p.getComplexMappings();
 			if(complexMappings.containsKey("packetHandlers")) {
 				Map<Class<?>, Object> loadedHandlers = new HashMap<Class<?>, Object>();
@@ -218,8 +281,43 @@ public class World {
 	 * Registers global events such as updating.
 	 */
 	private void registerGlobalEvents() {
-		submit(new UpdateEvent());
+		tickClock = new TickClock(engine, eventManager, updateEvent);
+		tickClock.start();
 		submit(new CleanupEvent());
+		submit(new RegionEvictionEvent());
+	}
+	
+	/**
+	 * Gets the update event.
+	 * @return The update event.
+	 */
+	public UpdateEvent getUpdateEvent() {
+		return updateEvent;
+	}
+	
+	/**
+	 * Gets the clock which drives the update cycle.
+	 * @return The tick clock.
+	 */
+	public TickClock getTickClock() {
+		return tickClock;
+	}
+	
+	/**
+	 * Gets the tick budget.
+	 * @return The tick budget, or <code>null</code> if the world has not been
+	 * initialised.
+	 */
+	public TickBudget getTickBudget() {
+		return tickBudget;
+	}
+	
+	/**
+	 * Gets the tick profiler.
+	 * @return The tick profiler.
+	 */
+	public TickProfiler getProfiler() {
+		return profiler;
 	}
 	
 	/**
@@ -231,11 +329,31 @@ public class World {
 	}
 	
 	/**
-	 * Submits a new task.
+	 * Gets the current tick, which goes up by one every cycle.
+	 * @return The current tick, or zero if the world has not been
+	 * initialised.
+	 */
+	public long getTick() {
+		return eventManager == null ? 0 : eventManager.getTimingWheel().getTick();
+	}
+	
+	/**
+	 * Converts a delay to a number of ticks, rounding up.
+	 * @param delay The delay, in milliseconds.
+	 * @return The number of ticks, which is at least one.
+	 */
+	public int toTicks(long delay) {
+		return eventManager.getTimingWheel().toTicks(delay);
+	}
+	
+	/**
+	 * Submits a new task. It may be dropped if the engine is overloaded.
 	 * @param task The task to submit.
+	 * @return <code>true</code> if the task was queued, <code>false</code> if
+	 * it was rejected.
 	 */
-	public void submit(Task task) {
-		this.engine.pushTask(task);
+	public boolean submit(Task task) {
+		return this.engine.pushTask(task);
 	}
 	
 	/**
@@ -286,7 +404,10 @@ public class World {
 				} else {
 					lr.getPlayer().getSession().setAttribute("player", lr.getPlayer());
 					loader.loadPlayer(lr.getPlayer());
-					engine.pushTask(new SessionLoginTask(lr.getPlayer()));
+					if(!engine.pushCriticalTask(new SessionLoginTask(lr.getPlayer()))) {
+						logger.warning("Could not log in : " + lr.getPlayer().getName() + ".");
+						lr.getPlayer().getSession().close(false);
+					}
 				}
 			}
 		});
@@ -316,10 +437,11 @@ public class World {
 	public void register(final Player player) {
 		// do final checks e.g. is player online? is world full?
 		int returnCode = 2;
-		if(isPlayerOnline(player.getName())) {
+		if(playerNames.putIfAbsent(player.getNameAsLong(), player) != null) {
 			returnCode = 5;
 		} else {
 			if(!players.add(player)) {
+				playerNames.remove(player.getNameAsLong(), player);
 				returnCode = 7;
 				logger.info("Could not register player : " + player + " [world full]");
 			}
@@ -360,19 +482,48 @@ public class World {
 		return npcs;
 	}
 	
+	/**
+	 * Gets the hot state of the players in the player list.
+	 * @return The player state store.
+	 */
+	public EntityStateStore getPlayerStates() {
+		return playerStates;
+	}
+	
+	/**
+	 * Gets the hot state of the npcs in the npc list.
+	 * @return The npc state store.
+	 */
+	public EntityStateStore getNPCStates() {
+		return npcStates;
+	}
+	
 	/**
 	 * Checks if a player is online.
 	 * @param name The player's name.
 	 * @return <code>true</code> if they are online, <code>false</code> if not.
 	 */
 	public boolean isPlayerOnline(String name) {
-		name = NameUtils.formatName(name);
-		for(Player player : players) {
-			if(player.getName().equalsIgnoreCase(name)) {
-				return true;
-			}
-		}
-		return false;
+		return playerNames.containsKey(NameUtils.nameToLong(name));
+	}
+	
+	/**
+	 * Gets an online player by name.
+	 * @param name The player's name.
+	 * @return The player, or <code>null</code> if they are not online.
+	 */
+	public Player getPlayer(String name) {
+		return playerNames.get(NameUtils.nameToLong(name));
+	}
+	
+	/**
+	 * Gets an online player by their name expressed as a long, as sent by
+	 * the client in private messages.
+	 * @param nameLong The player's name expressed as a long.
+	 * @return The player, or <code>null</code> if they are not online.
+	 */
+	public Player getPlayer(long nameLong) {
+		return playerNames.get(nameLong);
 	}
 
 	/**
@@ -384,6 +535,7 @@ public class World {
 		player.destroy();
 		player.getSession().close(false);
 		players.remove(player);
+		playerNames.remove(player.getNameAsLong(), player);
 		logger.info("Unregistered player : " + player + " [online=" + players.size() + "]");
 		engine.submitWork(new Runnable() {
 			public void run() {
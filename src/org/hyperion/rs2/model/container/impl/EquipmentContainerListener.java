@@ -1,7 +1,6 @@
 package org.hyperion.rs2.model.container.impl;
 
 import org.hyperion.rs2.model.Player;
-import org.hyperion.rs2.model.UpdateFlags.UpdateFlag;
 import org.hyperion.rs2.model.container.Container;
 import org.hyperion.rs2.model.container.ContainerListener;
 
@@ -28,17 +27,17 @@ public class EquipmentContainerListener implements ContainerListener {
 
 	@Override
 	public void itemChanged(Container container, int slot) {
-		player.getUpdateFlags().flag(UpdateFlag.APPEARANCE);
+		player.flagAppearance();
 	}
 
 	@Override
 	public void itemsChanged(Container container) {
-		player.getUpdateFlags().flag(UpdateFlag.APPEARANCE);
+		player.flagAppearance();
 	}
 
 	@Override
 	public void itemsChanged(Container container, int[] slots) {
-		player.getUpdateFlags().flag(UpdateFlag.APPEARANCE);
+		player.flagAppearance();
 	}
 
 }
@@ -1,7 +1,9 @@
 package org.hyperion.rs2.model.container.impl;
 
+import org.hyperion.rs2.event.TickBudget;
 import org.hyperion.rs2.model.Item;
 import org.hyperion.rs2.model.Player;
+import org.hyperion.rs2.model.World;
 import org.hyperion.rs2.model.container.Container;
 import org.hyperion.rs2.model.container.ContainerListener;
 
@@ -23,6 +25,12 @@ public class InterfaceContainerListener implements ContainerListener {
 	 */
 	private int interfaceId;
 	
+	/**
+	 * The container whose refresh has been deferred, or <code>null</code> if
+	 * there is no deferred refresh.
+	 */
+	private Container deferredContainer;
+	
 	/**
 	 * Creates the container listener.
 	 * @param player The player.
@@ -35,18 +43,60 @@ public class InterfaceContainerListener implements ContainerListener {
 
 	@Override
 	public void itemChanged(Container container, int slot) {
+		if(defer(container)) {
+			return;
+		}
 		Item item = container.get(slot);
 		player.getActionSender().sendUpdateItem(interfaceId, slot, item);
 	}
 
 	@Override
 	public void itemsChanged(Container container) {
+		if(defer(container)) {
+			return;
+		}
 		player.getActionSender().sendUpdateItems(interfaceId, container.toArray());
 	}
 
 	@Override
 	public void itemsChanged(Container container, int[] slots) {
+		if(defer(container)) {
+			return;
+		}
 		player.getActionSender().sendUpdateItems(interfaceId, slots, container.toArray());
 	}
+	
+	/**
+	 * Defers a change if refreshes are being deferred, or if an earlier
+	 * change is already waiting to be sent. A deferred refresh sends the
+	 * whole container, so it covers every change made in the meantime.
+	 * @param container The container.
+	 * @return <code>true</code> if the change was deferred,
+	 * <code>false</code> if it should be sent now.
+	 */
+	private boolean defer(Container container) {
+		TickBudget budget = World.getWorld().getTickBudget();
+		if(deferredContainer == null && (budget == null || !budget.isDeferringRefreshes())) {
+			return false;
+		}
+		if(deferredContainer == null) {
+			player.deferContainerRefresh(this);
+		}
+		deferredContainer = container;
+		if(budget != null) {
+			budget.recordDeferredContainerRefresh();
+		}
+		return true;
+	}
+	
+	/**
+	 * Sends the whole container, if its refresh was deferred.
+	 */
+	public void sendDeferredRefresh() {
+		if(deferredContainer != null) {
+			player.getActionSender().sendUpdateItems(interfaceId, deferredContainer.toArray());
+			deferredContainer = null;
+		}
+	}
 
 }
@@ -0,0 +1,105 @@
+package org.hyperion.rs2.model.region;
+
+import org.hyperion.rs2.model.Location;
+
+/**
+ * What an observer knew about one kind of entity, players or npcs, when it
+ * last looked for entities entering its view. The
+ * <code>InterestManager</code> uses this to decide if it needs to look
+ * again.
+ */
+public class Interest {
+
+	/**
+	 * The cycle of the last scan, or -1 if there has not been one.
+	 */
+	private long cycle = -1;
+
+	/**
+	 * The observer's location at the last scan.
+	 */
+	private Location location;
+
+	/**
+	 * The viewing distance at the last scan.
+	 */
+	private int distance;
+
+	/**
+	 * A flag indicating if the last scan added every entity in view.
+	 */
+	private boolean complete = false;
+
+	/**
+	 * Records a scan.
+	 * @param cycle The cycle.
+	 * @param location The observer's location.
+	 * @param distance The viewing distance, see <code>ViewDistance</code>.
+	 */
+	void scanned(long cycle, Location location, int distance) {
+		this.cycle = cycle;
+		this.location = location;
+		this.distance = distance;
+		this.complete = true;
+	}
+
+	/**
+	 * Marks the last scan as incomplete, because some entities in view were
+	 * left out. The next query will scan again.
+	 */
+	public void setIncomplete() {
+		complete = false;
+	}
+
+	/**
+	 * Records the viewing distance the entities found by the last scan were
+	 * narrowed down to, so later queries only look for entities stepping
+	 * over the edge of that distance.
+	 * @param distance The distance, see <code>ViewDistance</code>.
+	 */
+	public void setDistance(int distance) {
+		this.distance = distance;
+	}
+
+	/**
+	 * Forgets the last scan, so the next query will scan again.
+	 */
+	public void invalidate() {
+		cycle = -1;
+		location = null;
+		complete = false;
+	}
+
+	/**
+	 * Gets the cycle of the last scan.
+	 * @return The cycle, or -1 if there has not been one.
+	 */
+	long getCycle() {
+		return cycle;
+	}
+
+	/**
+	 * Gets the observer's location at the last scan.
+	 * @return The location.
+	 */
+	Location getLocation() {
+		return location;
+	}
+
+	/**
+	 * Gets the viewing distance at the last scan.
+	 * @return The distance.
+	 */
+	int getDistance() {
+		return distance;
+	}
+
+	/**
+	 * Checks if the last scan added every entity in view.
+	 * @return <code>true</code> if so, <code>false</code> if not.
+	 */
+	boolean isComplete() {
+		return complete;
+	}
+
+}
@@ -0,0 +1,166 @@
+package org.hyperion.rs2.model.region;
+
+import org.hyperion.rs2.Constants;
+import org.hyperion.rs2.model.Entity;
+import org.hyperion.rs2.model.Location;
+import org.hyperion.rs2.model.NPC;
+import org.hyperion.rs2.model.Player;
+
+/**
+ * <p>Decides when an observer needs to look for players or npcs entering its
+ * view.</p>
+ *
+ * <p>Every region remembers the last cycle in which a player or npc entered
+ * or left it, or jumped within it, and the last cycle in which one stepped
+ * into each 4x4 cell of it. An entity can only step into an observer's view
+ * by ending up near the edge of it, so an observer only has to scan its
+ * surrounding regions again if it has moved, if its last scan left entities
+ * out, if one of those regions had an entity enter, leave or jump, or if an
+ * entity stepped into a cell near the edge of its view. Steps deeper inside
+ * or further outside the view are ignored, and otherwise the query yields
+ * no entities at all.</p>
+ *
+ * <p>The entities which enter the view are handed to the update tasks as a
+ * cursor, see {@link #findEnteringPlayers}. Entities leaving the view are
+ * found by the update tasks as they walk their local lists, which they must
+ * do every cycle anyway to send the movement of each local entity.</p>
+ *
+ * <p>The cycle counter is advanced once the updates of a cycle have been
+ * sent, so changes made between then and the next update are stamped with
+ * the next cycle and seen by the next scan.</p>
+ */
+public class InterestManager {
+
+	/**
+	 * The region manager.
+	 */
+	private final RegionManager regionManager;
+
+	/**
+	 * The current cycle.
+	 */
+	private volatile long cycle = 0;
+	
+	/**
+	 * The number of players each player's local list is kept to.
+	 */
+	private volatile int playerViewBudget = Constants.PLAYER_VIEW_BUDGET;
+
+	/**
+	 * Creates the interest manager.
+	 * @param regionManager The region manager.
+	 */
+	public InterestManager(RegionManager regionManager) {
+		this.regionManager = regionManager;
+	}
+
+	/**
+	 * Gets the current cycle.
+	 * @return The current cycle.
+	 */
+	public long getCycle() {
+		return cycle;
+	}
+
+	/**
+	 * Moves on to the next cycle. This is called once the updates of a cycle
+	 * have been sent.
+	 */
+	public void advance() {
+		cycle++;
+	}
+	
+	/**
+	 * Gets the number of players each player's local list is kept to.
+	 * @return The budget.
+	 */
+	public int getPlayerViewBudget() {
+		return playerViewBudget;
+	}
+	
+	/**
+	 * Sets the number of players each player's local list is kept to. This
+	 * applies to players who log in afterwards.
+	 * @param playerViewBudget The budget, from 1 to 255.
+	 * @throws IllegalArgumentException if the budget is out of range.
+	 */
+	public void setPlayerViewBudget(int playerViewBudget) {
+		if(playerViewBudget < 1 || playerViewBudget > 255) {
+			throw new IllegalArgumentException("Player view budget must be from 1 to 255.");
+		}
+		this.playerViewBudget = playerViewBudget;
+	}
+	
+	/**
+	 * Starts a cursor over the players in full view of an observer, if any
+	 * may have entered its view since the last query. If nothing can have
+	 * changed the cursor yields no players. An observer which narrows the
+	 * players down to a shorter viewing distance records it with
+	 * {@link Interest#setDistance}.
+	 * @param observer The observer.
+	 * @param interest The observer's interest in players.
+	 * @param cursor The cursor.
+	 * @return <code>true</code> if the cursor was started, <code>false</code>
+	 * if nothing can have changed.
+	 */
+	public boolean findEnteringPlayers(Entity observer, Interest interest, LocalEntityCursor<Player> cursor) {
+		Region[] regions = regionManager.getSurroundingRegions(observer.getLocation());
+		if(isScanRequired(observer.getLocation(), interest, regions, true)) {
+			interest.scanned(cycle, observer.getLocation(), ViewDistance.MAXIMUM);
+			cursor.start(regions, observer.getLocation(), true, ViewDistance.MAXIMUM);
+			return true;
+		}
+		cursor.stop();
+		return false;
+	}
+
+	/**
+	 * Starts a cursor over the npcs which may have entered an observer's view
+	 * since the last query. If nothing can have changed the cursor yields no
+	 * npcs.
+	 * @param observer The observer.
+	 * @param interest The observer's interest in npcs.
+	 * @param cursor The cursor.
+	 * @return <code>true</code> if the cursor was started, <code>false</code>
+	 * if nothing can have changed.
+	 */
+	public boolean findEnteringNpcs(Entity observer, Interest interest, LocalEntityCursor<NPC> cursor) {
+		Region[] regions = regionManager.getSurroundingRegions(observer.getLocation());
+		if(isScanRequired(observer.getLocation(), interest, regions, false)) {
+			interest.scanned(cycle, observer.getLocation(), ViewDistance.MAXIMUM);
+			cursor.start(regions, observer.getLocation(), false, ViewDistance.MAXIMUM);
+			return true;
+		}
+		cursor.stop();
+		return false;
+	}
+
+	/**
+	 * Checks if an observer needs to scan its surrounding regions.
+	 * @param location The observer's location.
+	 * @param interest The observer's interest.
+	 * @param regions The surrounding regions.
+	 * @param players <code>true</code> to check for players,
+	 * <code>false</code> to check for npcs.
+	 * @return <code>true</code> if so, <code>false</code> if not.
+	 */
+	boolean isScanRequired(Location location, Interest interest, Region[] regions, boolean players) {
+		if(!interest.isComplete() || interest.getLocation() != location) {
+			return true;
+		}
+		/*
+		 * An entity which steps into view ends up within a step of the edge.
+		 * One more tile is allowed for the full viewing box, which reaches a
+		 * tile further on one side.
+		 */
+		int outer = interest.getDistance();
+		int inner = outer - Region.MAXIMUM_STEP - 1;
+		for(Region region : regions) {
+			if(region.isChangedSince(players, interest.getCycle(), location, inner, outer)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,132 @@
+package org.hyperion.rs2.model.region;
+
+import org.hyperion.rs2.model.Entity;
+import org.hyperion.rs2.model.Location;
+
+/**
+ * <p>A cursor over the players or npcs within viewing distance of a
+ * location.</p>
+ *
+ * <p>The cursor walks the region sets of the surrounding regions directly,
+ * skipping entities which are too far away, so a query neither copies the
+ * sets nor builds a list of results. A cursor can be kept and reused for
+ * every query made by the same thread, in which case a query allocates
+ * nothing at all. It is started by {@link RegionManager#findLocalPlayers}
+ * or {@link RegionManager#findLocalNpcs}, and used like this:</p>
+ *
+ * <pre>
+ * regionManager.findLocalPlayers(entity, cursor);
+ * while(cursor.next()) {
+ * 	Player player = cursor.get();
+ * 	...
+ * }
+ * </pre>
+ * @param <E> The type of entity.
+ */
+public class LocalEntityCursor<E extends Entity> {
+
+	/**
+	 * The regions being walked.
+	 */
+	private Region[] regions;
+
+	/**
+	 * The centre of the query.
+	 */
+	private Location centre;
+
+	/**
+	 * A flag indicating if players, rather than npcs, are being walked.
+	 */
+	private boolean players;
+
+	/**
+	 * The viewing distance.
+	 */
+	private int distance;
+
+	/**
+	 * The position of the current region.
+	 */
+	private int region;
+
+	/**
+	 * The position of the next entity in the current region's set.
+	 */
+	private int position;
+
+	/**
+	 * The current entity.
+	 */
+	private E current;
+
+	/**
+	 * Starts a new query.
+	 * @param regions The regions to walk.
+	 * @param centre The centre of the query.
+	 * @param players <code>true</code> to walk players, <code>false</code> to
+	 * walk npcs.
+	 * @param distance The viewing distance, see <code>ViewDistance</code>.
+	 */
+	void start(Region[] regions, Location centre, boolean players, int distance) {
+		this.regions = regions;
+		this.centre = centre;
+		this.players = players;
+		this.distance = distance;
+		this.region = 0;
+		this.position = 0;
+		this.current = null;
+	}
+
+	/**
+	 * Ends the query, so the cursor yields no entities.
+	 */
+	void stop() {
+		regions = null;
+		centre = null;
+		current = null;
+	}
+
+	/**
+	 * Moves to the next entity within viewing distance.
+	 * @return <code>true</code> if there is one, <code>false</code> if the
+	 * query is finished.
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean next() {
+		if(regions == null) {
+			return false;
+		}
+		while(region < regions.length) {
+			RegionEntitySet<? extends Entity> set = players ? regions[region].getPlayers() : regions[region].getNpcs();
+			while(position < set.size()) {
+				Entity entity = set.get(position++);
+				if(ViewDistance.isInView(entity.getLocation(), centre, distance)) {
+					current = (E) entity;
+					return true;
+				}
+			}
+			region++;
+			position = 0;
+		}
+		/*
+		 * Let go of everything so a cursor kept between queries does not hold
+		 * on to the world.
+		 */
+		stop();
+		return false;
+	}
+
+	/**
+	 * Gets the current entity.
+	 * @return The current entity.
+	 * @throws IllegalStateException if there is no current entity.
+	 */
+	public E get() {
+		if(current == null) {
+			throw new IllegalStateException();
+		}
+		return current;
+	}
+
+}
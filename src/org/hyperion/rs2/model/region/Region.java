@@ -1,11 +1,13 @@
 package org.hyperion.rs2.model.region;
 
 import java.util.Collection;
-import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
 
+import org.hyperion.rs2.model.Entity;
 import org.hyperion.rs2.model.GameObject;
+import org.hyperion.rs2.model.Location;
 import org.hyperion.rs2.model.NPC;
 import org.hyperion.rs2.model.Player;
 
@@ -16,32 +18,93 @@ import org.hyperion.rs2.model.Player;
  */
 public class Region {
 
+	/**
+	 * The width of the square cells a region is split into when recording
+	 * where entities moved.
+	 */
+	private static final int CELL_SIZE = 4;
+	
+	/**
+	 * The number of cells along each side of a region.
+	 */
+	private static final int CELLS = RegionManager.REGION_SIZE / CELL_SIZE;
+	
+	/**
+	 * The furthest an entity can move in a single step. Longer moves, like
+	 * teleports, are recorded as changes to the whole region.
+	 */
+	static final int MAXIMUM_STEP = 1;
+	
 	/**
 	 * The region coordinates.
 	 */
 	private RegionCoordinates coordinate;
 	
 	/**
-	 * A list of players in this region.
+	 * The players in this region.
 	 */
-	private List<Player> players = new LinkedList<Player>();
+	private final RegionEntitySet<Player> players = new RegionEntitySet<Player>();
 	
 	/**
-	 * A list of NPCs in this region.
+	 * The NPCs in this region.
 	 */
-	private List<NPC> npcs = new LinkedList<NPC>();
+	private final RegionEntitySet<NPC> npcs = new RegionEntitySet<NPC>();
 	
 	/**
 	 * A list of objects in this region.
 	 */
 	private List<GameObject> objects = new LinkedList<GameObject>();
 	
+	/**
+	 * The regions surrounding this one, or <code>null</code> if they have not
+	 * been worked out yet.
+	 */
+	private volatile Region[] surrounding;
+	
+	/**
+	 * The interest manager, or <code>null</code> if changes are not tracked.
+	 */
+	private final InterestManager interestManager;
+	
+	/**
+	 * The last cycle in which a player entered or left this region, or
+	 * jumped within it.
+	 */
+	private volatile long playersChanged = 0;
+	
+	/**
+	 * The last cycle in which an NPC entered or left this region, or jumped
+	 * within it.
+	 */
+	private volatile long npcsChanged = 0;
+	
+	/**
+	 * The last cycle in which a player stepped into each cell.
+	 */
+	private final AtomicLongArray playerCells = new AtomicLongArray(CELLS * CELLS);
+	
+	/**
+	 * The last cycle in which an NPC stepped into each cell.
+	 */
+	private final AtomicLongArray npcCells = new AtomicLongArray(CELLS * CELLS);
+	
 	/**
 	 * Creates a region.
 	 * @param coordinate The coordinate.
 	 */
 	public Region(RegionCoordinates coordinate) {
+		this(coordinate, null);
+	}
+	
+	/**
+	 * Creates a region which tells an interest manager when it changes.
+	 * @param coordinate The coordinate.
+	 * @param interestManager The interest manager.
+	 */
+	public Region(RegionCoordinates coordinate, InterestManager interestManager) {
 		this.coordinate = coordinate;
+		this.interestManager = interestManager;
+		this.playersChanged = this.npcsChanged = getCycle();
 	}
 	
 	/**
@@ -51,25 +114,188 @@ public class Region {
 	public RegionCoordinates getCoordinates() {
 		return coordinate;
 	}
+	
+	/**
+	 * Gets the regions surrounding this one.
+	 * @return The surrounding regions, or <code>null</code> if they have not
+	 * been worked out yet.
+	 */
+	Region[] getSurroundingRegions() {
+		return surrounding;
+	}
+	
+	/**
+	 * Sets the regions surrounding this one.
+	 * @param surrounding The surrounding regions.
+	 */
+	void setSurroundingRegions(Region[] surrounding) {
+		this.surrounding = surrounding;
+	}
 
 	/**
-	 * Gets the list of players.
-	 * @return The list of players.
+	 * Gets the players. The set cannot be modified, and is read in place
+	 * rather than copied, see {@link RegionEntitySet}.
+	 * @return The players.
 	 */
-	public Collection<Player> getPlayers() {
-		synchronized(this) {
-			return Collections.unmodifiableCollection(new LinkedList<Player>(players));
+	public RegionEntitySet<Player> getPlayers() {
+		return players;
+	}
+	
+	/**
+	 * Gets the NPCs. The set cannot be modified, and is read in place rather
+	 * than copied, see {@link RegionEntitySet}.
+	 * @return The NPCs.
+	 */
+	public RegionEntitySet<NPC> getNpcs() {
+		return npcs;
+	}
+	
+	/**
+	 * Gets the last cycle in which a player entered or left this region, or
+	 * jumped within it.
+	 * @return The cycle.
+	 */
+	public long getPlayersChanged() {
+		return playersChanged;
+	}
+	
+	/**
+	 * Gets the last cycle in which an NPC entered or left this region, or
+	 * jumped within it.
+	 * @return The cycle.
+	 */
+	public long getNpcsChanged() {
+		return npcsChanged;
+	}
+	
+	/**
+	 * Gets the last cycle in which anything entered or left this region, or
+	 * jumped within it, or the cycle it was created in if nothing has.
+	 * @return The cycle.
+	 */
+	public long getLastActive() {
+		return Math.max(playersChanged, npcsChanged);
+	}
+	
+	/**
+	 * Checks if this region has no players or NPCs in it.
+	 * @return <code>true</code> if so, <code>false</code> if not.
+	 */
+	public boolean isUnoccupied() {
+		return players.isEmpty() && npcs.isEmpty();
+	}
+	
+	/**
+	 * Checks if this region holds nothing at all: no players, NPCs or
+	 * objects. Such a region can be thrown away and created again when it is
+	 * next needed.
+	 * @return <code>true</code> if so, <code>false</code> if not.
+	 */
+	public boolean isEmpty() {
+		return isUnoccupied() && objects.isEmpty();
+	}
+	
+	/**
+	 * Records that an entity in this region has moved.
+	 * @param entity The entity.
+	 * @param from The location it moved from, or <code>null</code> if it
+	 * had none.
+	 */
+	public void entityMoved(Entity entity, Location from) {
+		if(entity instanceof Player) {
+			entityMoved(true, from, entity.getLocation(), entity.isTeleporting());
+		} else if(entity instanceof NPC) {
+			entityMoved(false, from, entity.getLocation(), entity.isTeleporting());
 		}
 	}
 	
 	/**
-	 * Gets the list of NPCs.
-	 * @return The list of NPCs.
+	 * Records that a player or NPC in this region has moved. A step within
+	 * the region only stamps the cell it ends in. Any other move, which may
+	 * make the entity appear anywhere, stamps the whole region.
+	 * @param players <code>true</code> for a player, <code>false</code> for
+	 * an NPC.
+	 * @param from The location it moved from, or <code>null</code> if it
+	 * had none.
+	 * @param to The location it moved to.
+	 * @param teleporting A flag indicating if the entity is teleporting.
 	 */
-	public Collection<NPC> getNpcs() {
-		synchronized(this) {
-			return Collections.unmodifiableCollection(new LinkedList<NPC>(npcs));
+	void entityMoved(boolean players, Location from, Location to, boolean teleporting) {
+		long cycle = getCycle();
+		int x = to.getX() - coordinate.getX() * RegionManager.REGION_SIZE;
+		int y = to.getY() - coordinate.getY() * RegionManager.REGION_SIZE;
+		boolean step = !teleporting && from != null && from.getZ() == to.getZ()
+				&& Math.abs(to.getX() - from.getX()) <= MAXIMUM_STEP && Math.abs(to.getY() - from.getY()) <= MAXIMUM_STEP
+				&& x >= 0 && x < RegionManager.REGION_SIZE && y >= 0 && y < RegionManager.REGION_SIZE;
+		if(step) {
+			(players ? playerCells : npcCells).set((x / CELL_SIZE) * CELLS + y / CELL_SIZE, cycle);
+		} else if(players) {
+			playersChanged = cycle;
+		} else {
+			npcsChanged = cycle;
+		}
+	}
+	
+	/**
+	 * Checks if players or NPCs may have come into view of an observer since
+	 * a cycle. This is the case if any entered or left this region or jumped
+	 * within it, or stepped into a cell which lies partly within a band of
+	 * distances from the observer. Steps further in or further out cannot
+	 * have brought anything into view.
+	 * @param players <code>true</code> to check for players,
+	 * <code>false</code> to check for NPCs.
+	 * @param cycle The cycle.
+	 * @param centre The observer's location.
+	 * @param inner The nearest distance of the band.
+	 * @param outer The furthest distance of the band.
+	 * @return <code>true</code> if so, <code>false</code> if not.
+	 */
+	boolean isChangedSince(boolean players, long cycle, Location centre, int inner, int outer) {
+		if((players ? playersChanged : npcsChanged) > cycle) {
+			return true;
+		}
+		AtomicLongArray cells = players ? playerCells : npcCells;
+		int baseX = coordinate.getX() * RegionManager.REGION_SIZE;
+		int baseY = coordinate.getY() * RegionManager.REGION_SIZE;
+		for(int cellX = 0; cellX < CELLS; cellX++) {
+			int minX = baseX + cellX * CELL_SIZE;
+			int nearX = getNearestDistance(centre.getX(), minX, minX + CELL_SIZE - 1);
+			int farX = Math.max(Math.abs(minX - centre.getX()), Math.abs(minX + CELL_SIZE - 1 - centre.getX()));
+			for(int cellY = 0; cellY < CELLS; cellY++) {
+				int minY = baseY + cellY * CELL_SIZE;
+				int nearY = getNearestDistance(centre.getY(), minY, minY + CELL_SIZE - 1);
+				int farY = Math.max(Math.abs(minY - centre.getY()), Math.abs(minY + CELL_SIZE - 1 - centre.getY()));
+				if(Math.max(nearX, nearY) <= outer && Math.max(farX, farY) >= inner && cells.get(cellX * CELLS + cellY) > cycle) {
+					return true;
+				}
+			}
 		}
+		return false;
+	}
+	
+	/**
+	 * Gets the distance from a coordinate to the nearest coordinate in a
+	 * span.
+	 * @param coordinate The coordinate.
+	 * @param min The first coordinate of the span.
+	 * @param max The last coordinate of the span.
+	 * @return The distance, which is zero if the coordinate is in the span.
+	 */
+	private static int getNearestDistance(int coordinate, int min, int max) {
+		if(coordinate < min) {
+			return min - coordinate;
+		} else if(coordinate > max) {
+			return coordinate - max;
+		}
+		return 0;
+	}
+	
+	/**
+	 * Gets the current cycle.
+	 * @return The current cycle.
+	 */
+	private long getCycle() {
+		return interestManager == null ? 0 : interestManager.getCycle();
 	}
 	
 	/**
@@ -86,7 +312,8 @@ public class Region {
 	 */
 	public void addPlayer(Player player) {
 		synchronized(this) {
-			players.add(player);
+			players.addMember(player);
+			playersChanged = getCycle();
 		}
 	}
 
@@ -96,7 +323,8 @@ public class Region {
 	 */
 	public void removePlayer(Player player) {
 		synchronized(this) {
-			players.remove(player);
+			players.removeMember(player);
+			playersChanged = getCycle();
 		}
 	}
 
@@ -106,7 +334,8 @@ public class Region {
 	 */
 	public void addNpc(NPC npc) {
 		synchronized(this) {
-			npcs.add(npc);
+			npcs.addMember(npc);
+			npcsChanged = getCycle();
 		}
 	}
 
@@ -116,7 +345,8 @@ public class Region {
 	 */
 	public void removeNpc(NPC npc) {
 		synchronized(this) {
-			npcs.remove(npc);
+			npcs.removeMember(npc);
+			npcsChanged = getCycle();
 		}
 	}
 
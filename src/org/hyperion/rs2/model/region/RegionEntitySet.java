@@ -0,0 +1,137 @@
+package org.hyperion.rs2.model.region;
+
+import java.util.AbstractCollection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.hyperion.rs2.model.Entity;
+
+/**
+ * <p>The players or npcs in a region, packed into an array.</p>
+ *
+ * <p>Each entity remembers its position in the set of the region it is in,
+ * so removing it moves the last entity into its place rather than searching
+ * for it. The order is therefore not stable.</p>
+ *
+ * <p>The set can be read from any number of threads at once without
+ * locking or copying, as long as nothing changes it at the same time. The
+ * update cycle makes sure of this by deferring region changes while it is
+ * running in parallel. Outside the update cycle it is only changed and read
+ * by the game engine thread.</p>
+ * @param <E> The type of entity.
+ */
+public class RegionEntitySet<E extends Entity> extends AbstractCollection<E> {
+
+	/**
+	 * An empty array, shared by sets which have never had anything added.
+	 */
+	private static final Entity[] EMPTY = new Entity[0];
+
+	/**
+	 * The capacity used when the first entity is added.
+	 */
+	private static final int INITIAL_CAPACITY = 8;
+
+	/**
+	 * The entities.
+	 */
+	private Entity[] entities = EMPTY;
+
+	/**
+	 * The number of entities.
+	 */
+	private int size = 0;
+
+	/**
+	 * Adds an entity.
+	 * @param entity The entity.
+	 */
+	void addMember(E entity) {
+		if(size == entities.length) {
+			Entity[] expanded = new Entity[Math.max(INITIAL_CAPACITY, size * 2)];
+			System.arraycopy(entities, 0, expanded, 0, size);
+			entities = expanded;
+		}
+		entity.setRegionPosition(size);
+		entities[size++] = entity;
+	}
+
+	/**
+	 * Removes an entity, moving the last entity into its place.
+	 * @param entity The entity.
+	 * @return <code>true</code> if it was removed, <code>false</code> if it
+	 * was not in the set.
+	 */
+	boolean removeMember(E entity) {
+		int position = entity.getRegionPosition();
+		if(position < 0 || position >= size || entities[position] != entity) {
+			return false;
+		}
+		Entity last = entities[--size];
+		entities[position] = last;
+		last.setRegionPosition(position);
+		entities[size] = null;
+		entity.setRegionPosition(-1);
+		return true;
+	}
+
+	/**
+	 * Gets an entity by its position.
+	 * @param position The position.
+	 * @return The entity.
+	 * @throws IndexOutOfBoundsException if the position is out of bounds.
+	 */
+	@SuppressWarnings("unchecked")
+	public E get(int position) {
+		if(position < 0 || position >= size) {
+			throw new IndexOutOfBoundsException();
+		}
+		return (E) entities[position];
+	}
+
+	@Override
+	public boolean contains(Object object) {
+		if(!(object instanceof Entity)) {
+			return false;
+		}
+		int position = ((Entity) object).getRegionPosition();
+		return position >= 0 && position < size && entities[position] == object;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		return new Iterator<E>() {
+
+			/**
+			 * The position of the next entity.
+			 */
+			private int cursor = 0;
+
+			@Override
+			public boolean hasNext() {
+				return cursor < size;
+			}
+
+			@SuppressWarnings("unchecked")
+			@Override
+			public E next() {
+				if(cursor >= size) {
+					throw new NoSuchElementException();
+				}
+				return (E) entities[cursor++];
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+
+		};
+	}
+
+}
@@ -1,19 +1,35 @@
 package org.hyperion.rs2.model.region;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 
+import org.hyperion.rs2.Constants;
 import org.hyperion.rs2.model.Entity;
 import org.hyperion.rs2.model.Location;
 import org.hyperion.rs2.model.NPC;
 import org.hyperion.rs2.model.Player;
 
 /**
- * Manages the world regions.
+ * <p>Manages the world regions.</p>
+ * 
+ * <p>Regions are looked up from many threads at once during the update
+ * cycle, so they are kept in a concurrent map keyed by their coordinates
+ * packed into a long. A region is created the first time it is asked for,
+ * and if two threads race to create the same region both get the one which
+ * made it into the map.</p>
+ * 
+ * <p>Regions which hold nothing, and have had nothing in them for a while,
+ * are evicted by {@link #evictIdleRegions(long)} so wandering players and
+ * path finding do not slowly fill the map with empty regions. Regions with
+ * objects in them are never evicted, as the objects are only loaded once.</p>
  * @author Graham Edgecombe
  *
  */
@@ -31,58 +47,221 @@ public class RegionManager {
 	private static final int LOWER_BOUND = REGION_SIZE / 2 - 1;
 	
 	/**
-	 * The active (loaded) region map.
+	 * The order in which deferred region changes are applied: NPCs before
+	 * players, then by index. This keeps the hand-off deterministic no matter
+	 * which threads the changes were deferred from.
 	 */
-	private Map<RegionCoordinates, Region> activeRegions = new HashMap<RegionCoordinates, Region>();
+	private static final Comparator<Entity> HAND_OFF_ORDER = new Comparator<Entity>() {
+		@Override
+		public int compare(Entity a, Entity b) {
+			boolean playerA = a instanceof Player, playerB = b instanceof Player;
+			if(playerA != playerB) {
+				return playerA ? 1 : -1;
+			}
+			return a.getIndex() - b.getIndex();
+		}
+	};
+	
+	/**
+	 * The active (loaded) region map, keyed by packed coordinates.
+	 */
+	private final ConcurrentMap<Long, Region> activeRegions = new ConcurrentHashMap<Long, Region>();
+	
+	/**
+	 * The interest manager, which is told when regions change.
+	 */
+	private final InterestManager interestManager = new InterestManager(this);
+	
+	/**
+	 * Flag indicating region changes are being deferred to the hand-off.
+	 */
+	private volatile boolean handOffPending = false;
+	
+	/**
+	 * Entities which crossed a region boundary while changes were deferred.
+	 */
+	private final Queue<Entity> handOffQueue = new ConcurrentLinkedQueue<Entity>();
+	
+	/**
+	 * The time in milliseconds an empty region must go without any activity
+	 * before it is evicted.
+	 */
+	private volatile int idleTime = Constants.REGION_IDLE_TIME;
+	
+	/**
+	 * Gets the interest manager.
+	 * @return The interest manager.
+	 */
+	public InterestManager getInterestManager() {
+		return interestManager;
+	}
+	
+	/**
+	 * Gets the time an empty region must go without any activity before it
+	 * is evicted.
+	 * @return The time in milliseconds.
+	 */
+	public int getIdleTime() {
+		return idleTime;
+	}
+	
+	/**
+	 * Sets the time an empty region must go without any activity before it
+	 * is evicted.
+	 * @param idleTime The time in milliseconds, which must be positive.
+	 * @throws IllegalArgumentException if the time is not positive.
+	 */
+	public void setIdleTime(int idleTime) {
+		if(idleTime < 1) {
+			throw new IllegalArgumentException("Region idle time must be positive.");
+		}
+		this.idleTime = idleTime;
+	}
+	
+	/**
+	 * Starts deferring region changes. Until {@link #completeHandOff()} is
+	 * called entities which cross a region boundary stay in their old region,
+	 * which means entities in different regions can be moved in parallel.
+	 */
+	public void beginHandOff() {
+		handOffPending = true;
+	}
+	
+	/**
+	 * Checks if region changes are currently being deferred.
+	 * @return <code>true</code> if so, <code>false</code> if not.
+	 */
+	public boolean isHandOffPending() {
+		return handOffPending;
+	}
+	
+	/**
+	 * Defers an entity's region change until the hand-off.
+	 * @param entity The entity.
+	 */
+	public void deferRegionChange(Entity entity) {
+		handOffQueue.add(entity);
+	}
+	
+	/**
+	 * Stops deferring region changes and moves every entity which crossed a
+	 * region boundary into its new region, in a deterministic order.
+	 */
+	public void completeHandOff() {
+		handOffPending = false;
+		List<Entity> entities = new ArrayList<Entity>(handOffQueue);
+		handOffQueue.clear();
+		Collections.sort(entities, HAND_OFF_ORDER);
+		for(Entity entity : entities) {
+			entity.updateRegion();
+		}
+	}
+	
+	/**
+	 * Checks if a location lies within a region without creating or looking
+	 * up any regions.
+	 * @param location The location.
+	 * @param region The region, may be <code>null</code>.
+	 * @return <code>true</code> if so, <code>false</code> if not.
+	 */
+	public boolean isInRegion(Location location, Region region) {
+		if(region == null) {
+			return false;
+		}
+		RegionCoordinates coordinates = region.getCoordinates();
+		return coordinates.getX() == location.getX() / REGION_SIZE && coordinates.getY() == location.getY() / REGION_SIZE;
+	}
 	
 	/**
-	 * Gets the local players around an entity.
+	 * Gets the local players around an entity. This builds a new collection,
+	 * code which runs every cycle should use
+	 * {@link #findLocalPlayers(Entity, LocalEntityCursor)} instead.
 	 * @param entity The entity.
 	 * @return The collection of local players.
 	 */
 	public Collection<Player> getLocalPlayers(Entity entity) {
-		List<Player> localPlayers = new LinkedList<Player>();
-		Region[] regions = getSurroundingRegions(entity.getLocation());
-		for(Region region : regions) {
-			for(Player player : region.getPlayers()) {
-				if(player.getLocation().isWithinDistance(entity.getLocation())) {
-					localPlayers.add(player);
-				}
-			}
+		List<Player> localPlayers = new ArrayList<Player>();
+		LocalEntityCursor<Player> cursor = new LocalEntityCursor<Player>();
+		findLocalPlayers(entity, cursor);
+		while(cursor.next()) {
+			localPlayers.add(cursor.get());
 		}
 		return Collections.unmodifiableCollection(localPlayers);
 	}
 	
 	/**
-	 * Gets the local NPCs around an entity.
+	 * Gets the local NPCs around an entity. This builds a new collection,
+	 * code which runs every cycle should use
+	 * {@link #findLocalNpcs(Entity, LocalEntityCursor)} instead.
 	 * @param entity The entity.
 	 * @return The collection of local NPCs.
 	 */
 	public Collection<NPC> getLocalNpcs(Entity entity) {
-		List<NPC> localPlayers = new LinkedList<NPC>();
-		Region[] regions = getSurroundingRegions(entity.getLocation());
-		for(Region region : regions) {
-			for(NPC npc : region.getNpcs()) {
-				if(npc.getLocation().isWithinDistance(entity.getLocation())) {
-					localPlayers.add(npc);
-				}
-			}
+		List<NPC> localNpcs = new ArrayList<NPC>();
+		LocalEntityCursor<NPC> cursor = new LocalEntityCursor<NPC>();
+		findLocalNpcs(entity, cursor);
+		while(cursor.next()) {
+			localNpcs.add(cursor.get());
 		}
-		return Collections.unmodifiableCollection(localPlayers);
+		return Collections.unmodifiableCollection(localNpcs);
+	}
+	
+	/**
+	 * Starts a cursor over the local players around an entity.
+	 * @param entity The entity.
+	 * @param cursor The cursor.
+	 */
+	public void findLocalPlayers(Entity entity, LocalEntityCursor<Player> cursor) {
+		cursor.start(getSurroundingRegions(entity.getLocation()), entity.getLocation(), true, ViewDistance.MAXIMUM);
 	}
 	
 	/**
-	 * Gets the regions surrounding a location.
+	 * Starts a cursor over the local NPCs around an entity.
+	 * @param entity The entity.
+	 * @param cursor The cursor.
+	 */
+	public void findLocalNpcs(Entity entity, LocalEntityCursor<NPC> cursor) {
+		cursor.start(getSurroundingRegions(entity.getLocation()), entity.getLocation(), false, ViewDistance.MAXIMUM);
+	}
+	
+	/**
+	 * Gets the regions surrounding a location. The array is shared by every
+	 * caller and must not be modified.
 	 * @param location The location.
 	 * @return The regions surrounding the location.
 	 */
-	public Region[] getSurroundingRegions(Location location) {		
-		int regionX = location.getX() / REGION_SIZE;
-		int regionY = location.getY() / REGION_SIZE;
-		
-//		int regionPositionX = location.getX() % REGION_SIZE;
-//		int regionPositionY = location.getY() % REGION_SIZE;
-		
+	public Region[] getSurroundingRegions(Location location) {
+		return getSurroundingRegions(getRegionByLocation(location));
+	}
+	
+	/**
+	 * Gets the regions surrounding a region, including the region itself
+	 * first. They are worked out the first time they are asked for and then
+	 * kept by the region. The array is shared by every caller and must not be
+	 * modified.
+	 * @param region The region.
+	 * @return The regions surrounding the region.
+	 */
+	public Region[] getSurroundingRegions(Region region) {
+		Region[] surrounding = region.getSurroundingRegions();
+		if(surrounding == null) {
+			/*
+			 * Two threads may both get here, but as getRegion always returns
+			 * the same regions they will work out equal arrays.
+			 */
+			surrounding = createSurroundingRegions(region.getCoordinates().getX(), region.getCoordinates().getY());
+			region.setSurroundingRegions(surrounding);
+		}
+		return surrounding;
+	}
+	
+	/**
+	 * Works out the regions surrounding a region.
+	 * @param regionX The region x coordinate.
+	 * @param regionY The region y coordinate.
+	 * @return The regions surrounding the region.
+	 */
+	private Region[] createSurroundingRegions(int regionX, int regionY) {
 		Region[] surrounding = new Region[9];
 		surrounding[0] = getRegion(regionX, regionY);
 		surrounding[1] = getRegion(regionX - 1, regionY - 1);
@@ -94,32 +273,84 @@ public class RegionManager {
 		surrounding[7] = getRegion(regionX - 1, regionY + 1);
 		surrounding[8] = getRegion(regionX + 1, regionY - 1);
 
-//		FIXME
-//		if(regionPositionX <= LOWER_BOUND) {
-//			if(regionPositionY <= LOWER_BOUND) {
-//				surrounding[1] = getRegion(regionX - 1, regionY - 1);
-//				surrounding[2] = getRegion(regionX - 1, regionY);
-//				surrounding[3] = getRegion(regionX, regionY - 1);
-//			} else {
-//				surrounding[1] = getRegion(regionX + 1, regionY - 1);
-//				surrounding[2] = getRegion(regionX + 1, regionY);
-//				surrounding[3] = getRegion(regionX, regionY - 1);
-//			}
-//		} else {
-//			if(regionPositionY <= LOWER_BOUND) {
-//				surrounding[1] = getRegion(regionX - 1, regionY + 1);
-//				surrounding[2] = getRegion(regionX - 1, regionY);
-//				surrounding[3] = getRegion(regionX, regionY + 1);
-//			} else {
-//				surrounding[1] = getRegion(regionX + 1, regionY + 1);
-//				surrounding[2] = getRegion(regionX + 1, regionY);
-//				surrounding[3] = getRegion(regionX, regionY + 1);
-//			}
-//		}
-		
 		return surrounding;
 	}
 
+	/**
+	 * Evicts every region which is empty, has been idle for at least a
+	 * number of cycles and has no players or NPCs in the regions around it.
+	 * This must only be called from the game engine thread, outside the
+	 * update cycle.
+	 * @param idleCycles The number of cycles.
+	 * @return The number of regions evicted.
+	 */
+	public int evictIdleRegions(long idleCycles) {
+		long cycle = interestManager.getCycle();
+		int evicted = 0;
+		for(Iterator<Region> it$ = activeRegions.values().iterator(); it$.hasNext();) {
+			Region region = it$.next();
+			if(!region.isEmpty() || cycle - region.getLastActive() < idleCycles) {
+				continue;
+			}
+			int x = region.getCoordinates().getX();
+			int y = region.getCoordinates().getY();
+			if(isNeighbourOccupied(x, y)) {
+				continue;
+			}
+			it$.remove();
+			/*
+			 * The neighbours' cached surrounding regions point at this
+			 * region, so they must be worked out again if it is recreated.
+			 */
+			for(int dx = -1; dx <= 1; dx++) {
+				for(int dy = -1; dy <= 1; dy++) {
+					Region neighbour = activeRegions.get(pack(x + dx, y + dy));
+					if(neighbour != null) {
+						neighbour.setSurroundingRegions(null);
+					}
+				}
+			}
+			evicted++;
+		}
+		return evicted;
+	}
+	
+	/**
+	 * Checks if any of the regions around a region have players or NPCs in
+	 * them, without creating any regions.
+	 * @param x The region x coordinate.
+	 * @param y The region y coordinate.
+	 * @return <code>true</code> if so, <code>false</code> if not.
+	 */
+	private boolean isNeighbourOccupied(int x, int y) {
+		for(int dx = -1; dx <= 1; dx++) {
+			for(int dy = -1; dy <= 1; dy++) {
+				Region neighbour = activeRegions.get(pack(x + dx, y + dy));
+				if(neighbour != null && !neighbour.isUnoccupied()) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Gets the number of regions which are currently loaded.
+	 * @return The number of regions.
+	 */
+	public int getActiveRegionCount() {
+		return activeRegions.size();
+	}
+	
+	/**
+	 * Gets a region by location if it is loaded, without creating it.
+	 * @param location The location.
+	 * @return The region, or <code>null</code> if it is not loaded.
+	 */
+	public Region findRegionByLocation(Location location) {
+		return activeRegions.get(pack(location.getX() / REGION_SIZE, location.getY() / REGION_SIZE));
+	}
+	
 	/**
 	 * Gets a region by location.
 	 * @param location The location.
@@ -136,14 +367,26 @@ public class RegionManager {
 	 * @return The region.
 	 */
 	public Region getRegion(int x, int y) {
-		RegionCoordinates key = new RegionCoordinates(x, y);
-		if(activeRegions.containsKey(key)) {
-			return activeRegions.get(key);
-		} else {
-			Region region = new Region(key);
-			activeRegions.put(key, region);
-			return region;
+		Long key = pack(x, y);
+		Region region = activeRegions.get(key);
+		if(region == null) {
+			region = new Region(new RegionCoordinates(x, y), interestManager);
+			Region existing = activeRegions.putIfAbsent(key, region);
+			if(existing != null) {
+				region = existing;
+			}
 		}
+		return region;
+	}
+	
+	/**
+	 * Packs a pair of region coordinates into a long.
+	 * @param x The x coordinate.
+	 * @param y The y coordinate.
+	 * @return The packed coordinates.
+	 */
+	private static long pack(int x, int y) {
+		return (long) x << 32 | (y & 0xFFFFFFFFL);
 	}
 
 }
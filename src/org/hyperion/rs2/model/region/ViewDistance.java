@@ -0,0 +1,158 @@
+package org.hyperion.rs2.model.region;
+
+import java.util.Arrays;
+
+import org.hyperion.rs2.model.EntityStateStore;
+import org.hyperion.rs2.model.Location;
+
+/**
+ * <p>The distance an observer can see other entities from, which shrinks
+ * when the observer is in a crowd.</p>
+ *
+ * <p>The cost of an update grows with the number of entities in the local
+ * list. Each observer is given a budget, and whenever the entities around it
+ * may have changed they are counted by distance. The view distance is then
+ * fitted to the budget: it is the furthest distance at which the budget is
+ * not exceeded, so the nearest entities are the ones in view and the local
+ * list is filled nearest first.</p>
+ *
+ * <p>The distance shrinks as soon as the budget is exceeded, but only grows
+ * once the larger distance would leave an eighth of the budget spare. In an
+ * even crowd the next ring out holds many entities, and without this margin
+ * small movements would make the distance, and the local list, swing back
+ * and forth every cycle.</p>
+ *
+ * <p>At the full distance the usual viewing box of
+ * <code>Location.isWithinDistance(Location)</code> is used, so nothing changes
+ * for observers who are not in a crowd. Below it the box is square.</p>
+ */
+public class ViewDistance {
+
+	/**
+	 * The smallest distance.
+	 */
+	public static final int MINIMUM = 4;
+
+	/**
+	 * The full distance, which the client can show entities at.
+	 */
+	public static final int MAXIMUM = 15;
+
+	/**
+	 * The number of entities the local list is kept to.
+	 */
+	private final int budget;
+
+	/**
+	 * The current distance.
+	 */
+	private int distance = MAXIMUM;
+
+	/**
+	 * The number of entities counted at each distance.
+	 */
+	private final int[] counts = new int[MAXIMUM + 1];
+
+	/**
+	 * Creates a view distance.
+	 * @param budget The number of entities the local list is kept to.
+	 */
+	public ViewDistance(int budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * Gets the number of entities the local list is kept to.
+	 * @return The budget.
+	 */
+	public int getBudget() {
+		return budget;
+	}
+
+	/**
+	 * Gets the current distance.
+	 * @return The distance.
+	 */
+	public int getDistance() {
+		return distance;
+	}
+
+	/**
+	 * Starts counting the entities around the observer.
+	 */
+	public void beginCount() {
+		Arrays.fill(counts, 0);
+	}
+
+	/**
+	 * Counts an entity around the observer. Entities outside the full view
+	 * are ignored.
+	 * @param coordinates The packed coordinates of the entity.
+	 * @param centre The packed coordinates of the observer.
+	 * @return The distance of the entity, or -1 if it was ignored.
+	 */
+	public int count(int coordinates, int centre) {
+		if(!EntityStateStore.isWithinDistance(coordinates, centre)) {
+			return -1;
+		}
+		int distance = Math.min(MAXIMUM, EntityStateStore.getDistance(coordinates, centre));
+		counts[distance]++;
+		return distance;
+	}
+
+	/**
+	 * Finishes counting and fits the distance to the budget.
+	 */
+	public void endCount() {
+		int spare = budget - budget / 8;
+		int fits = MINIMUM;
+		int fitsWithSpare = MINIMUM;
+		boolean exceeded = false;
+		int total = 0;
+		for(int i = 0; i <= MAXIMUM; i++) {
+			total += counts[i];
+			if(i == distance && total > budget) {
+				exceeded = true;
+			}
+			if(i > MINIMUM && total <= budget) {
+				fits = i;
+			}
+			if(i > MINIMUM && total <= spare) {
+				fitsWithSpare = i;
+			}
+		}
+		if(exceeded) {
+			distance = fits;
+		} else if(fitsWithSpare > distance) {
+			distance = fitsWithSpare;
+		}
+	}
+
+	/**
+	 * Checks if a packed location is in view.
+	 * @param coordinates The packed coordinates of the entity.
+	 * @param centre The packed coordinates of the observer.
+	 * @return <code>true</code> if so, <code>false</code> if not.
+	 */
+	public boolean isInView(int coordinates, int centre) {
+		if(distance >= MAXIMUM) {
+			return EntityStateStore.isWithinDistance(coordinates, centre);
+		}
+		return EntityStateStore.isWithinDistance(coordinates, centre, distance);
+	}
+
+	/**
+	 * Checks if a location is within a distance of a centre.
+	 * @param location The location of the entity.
+	 * @param centre The location of the observer.
+	 * @param distance The distance.
+	 * @return <code>true</code> if so, <code>false</code> if not.
+	 */
+	static boolean isInView(Location location, Location centre, int distance) {
+		if(distance >= MAXIMUM) {
+			return location.isWithinDistance(centre);
+		}
+		return location.isWithinDistance(centre, distance);
+	}
+
+}
@@ -0,0 +1,123 @@
+package org.hyperion.rs2.net;
+
+/**
+ * <p>Writes a stream of bits, most significant bit first, into a byte
+ * array.</p>
+ *
+ * <p>Bits are collected in a 64-bit accumulator and only copied into the
+ * array a whole 32-bit word at a time, when the accumulator cannot take the
+ * next value. The array is grown at most once per word, so writing a value
+ * costs a shift and an or. The final partial byte is padded with zeroes.</p>
+ *
+ * <p><code>PacketBuilder</code> uses a writer between
+ * <code>startBitAccess</code> and <code>finishBitAccess</code>, leased from
+ * the current thread's <code>PacketBufferPool</code>.</p>
+ */
+public final class BitWriter {
+
+	/**
+	 * The array the bits are written into.
+	 */
+	private byte[] data;
+
+	/**
+	 * The number of bytes written into the array.
+	 */
+	private int position = 0;
+
+	/**
+	 * The bits which have not been copied into the array yet, in the low
+	 * <code>count</code> bits.
+	 */
+	private long accumulator = 0;
+
+	/**
+	 * The number of bits in the accumulator.
+	 */
+	private int count = 0;
+
+	/**
+	 * Creates a writer.
+	 * @param capacity The initial capacity of the array, in bytes.
+	 */
+	public BitWriter(int capacity) {
+		data = new byte[Math.max(4, capacity)];
+	}
+
+	/**
+	 * Discards everything written so far.
+	 */
+	public void reset() {
+		position = 0;
+		accumulator = 0;
+		count = 0;
+	}
+
+	/**
+	 * Writes some bits.
+	 * @param numBits The number of bits to write, from 0 to 32.
+	 * @param value The value, of which only the low <code>numBits</code> bits
+	 * are written.
+	 */
+	public void putBits(int numBits, int value) {
+		if(count + numBits > 64) {
+			flushWord();
+		}
+		accumulator = (accumulator << numBits) | (value & ((1L << numBits) - 1));
+		count += numBits;
+	}
+
+	/**
+	 * Copies the oldest 32 bits in the accumulator into the array.
+	 */
+	private void flushWord() {
+		if(position + 4 > data.length) {
+			byte[] expanded = new byte[data.length * 2];
+			System.arraycopy(data, 0, expanded, 0, position);
+			data = expanded;
+		}
+		int word = (int) (accumulator >>> (count - 32));
+		data[position] = (byte) (word >> 24);
+		data[position + 1] = (byte) (word >> 16);
+		data[position + 2] = (byte) (word >> 8);
+		data[position + 3] = (byte) word;
+		position += 4;
+		count -= 32;
+	}
+
+	/**
+	 * Copies the rest of the accumulator into the array, padding the final
+	 * byte with zeroes. Nothing else may be written until the writer is
+	 * reset.
+	 * @return The number of bytes written.
+	 */
+	public int finish() {
+		if(count > 32) {
+			flushWord();
+		}
+		int bytes = (count + 7) >> 3;
+		if(position + bytes > data.length) {
+			byte[] expanded = new byte[data.length * 2];
+			System.arraycopy(data, 0, expanded, 0, position);
+			data = expanded;
+		}
+		long padded = accumulator << (bytes * 8 - count);
+		for(int i = bytes - 1; i >= 0; i--) {
+			data[position + i] = (byte) padded;
+			padded >>>= 8;
+		}
+		position += bytes;
+		count = 0;
+		return position;
+	}
+
+	/**
+	 * Gets the array the bits were written into. Only the bytes counted by
+	 * <code>finish</code> are meaningful.
+	 * @return The array.
+	 */
+	public byte[] getData() {
+		return data;
+	}
+
+}
@@ -49,6 +49,12 @@ public class Packet {
 	 */
 	private IoBuffer payload;
 	
+	/**
+	 * A flag indicating if the payload was leased from a
+	 * <code>PacketBufferPool</code> and has not been released yet.
+	 */
+	private boolean leased;
+	
 	/**
 	 * Creates a packet.
 	 * @param opcode The opcode.
@@ -56,9 +62,34 @@ public class Packet {
 	 * @param payload The payload.
 	 */
 	public Packet(int opcode, Type type, IoBuffer payload) {
+		this(opcode, type, payload, false);
+	}
+	
+	/**
+	 * Creates a packet.
+	 * @param opcode The opcode.
+	 * @param type The type.
+	 * @param payload The payload.
+	 * @param leased A flag indicating if the payload was leased from a
+	 * <code>PacketBufferPool</code>.
+	 */
+	Packet(int opcode, Type type, IoBuffer payload, boolean leased) {
 		this.opcode = opcode;
 		this.type = type;
 		this.payload = payload;
+		this.leased = leased;
+	}
+	
+	/**
+	 * Releases a leased payload back into the current thread's pool, once
+	 * it has been copied. This does nothing if the payload was not leased.
+	 * The packet must not be read afterwards.
+	 */
+	public void release() {
+		if(leased) {
+			leased = false;
+			PacketBufferPool.getPool().release(payload);
+		}
 	}
 	
 	/**
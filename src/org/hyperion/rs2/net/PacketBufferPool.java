@@ -0,0 +1,147 @@
+package org.hyperion.rs2.net;
+
+import org.apache.mina.core.buffer.IoBuffer;
+
+/**
+ * <p>A pool of buffers which leased packet builders write into, and of the
+ * bit writers used by every packet builder during bit access.</p>
+ *
+ * <p>Each thread has its own pool, so acquiring and releasing a buffer never
+ * needs a lock. A buffer does not have to be released by the thread which
+ * acquired it: a packet is released by whichever thread encodes it, and the
+ * buffer simply joins that thread's pool. A buffer keeps any capacity it grew
+ * to while it was leased, so after a few cycles the pooled buffers are large
+ * enough for the packets written into them.</p>
+ */
+public final class PacketBufferPool {
+
+	/**
+	 * The maximum number of buffers kept by each pool.
+	 */
+	private static final int MAXIMUM_BUFFERS = 16;
+
+	/**
+	 * The capacity above which a released buffer is thrown away instead of
+	 * being kept, so one huge packet does not pin its buffer forever.
+	 */
+	private static final int MAXIMUM_CAPACITY = 65536;
+
+	/**
+	 * The maximum number of bit writers kept by each pool.
+	 */
+	private static final int MAXIMUM_WRITERS = 4;
+
+	/**
+	 * The initial capacity of a bit writer, in bytes.
+	 */
+	private static final int WRITER_CAPACITY = 256;
+
+	/**
+	 * The pool of each thread.
+	 */
+	private static final ThreadLocal<PacketBufferPool> POOLS = new ThreadLocal<PacketBufferPool>() {
+		@Override
+		protected PacketBufferPool initialValue() {
+			return new PacketBufferPool();
+		}
+	};
+
+	/**
+	 * Gets the pool of the current thread.
+	 * @return The pool.
+	 */
+	public static PacketBufferPool getPool() {
+		return POOLS.get();
+	}
+
+	/**
+	 * The pooled buffers.
+	 */
+	private final IoBuffer[] buffers = new IoBuffer[MAXIMUM_BUFFERS];
+
+	/**
+	 * The number of pooled buffers.
+	 */
+	private int size = 0;
+
+	/**
+	 * The pooled bit writers.
+	 */
+	private final BitWriter[] writers = new BitWriter[MAXIMUM_WRITERS];
+
+	/**
+	 * The number of pooled bit writers.
+	 */
+	private int writerCount = 0;
+
+	/**
+	 * Creates a pool.
+	 */
+	private PacketBufferPool() {
+
+	}
+
+	/**
+	 * Acquires an empty, automatically expanding buffer.
+	 * @param capacity The capacity the buffer should have to begin with.
+	 * @return The buffer.
+	 */
+	public IoBuffer acquire(int capacity) {
+		if(size == 0) {
+			IoBuffer buffer = IoBuffer.allocate(capacity);
+			buffer.setAutoExpand(true);
+			return buffer;
+		}
+		IoBuffer buffer = buffers[--size];
+		buffers[size] = null;
+		buffer.clear();
+		if(buffer.capacity() < capacity) {
+			buffer.capacity(capacity);
+		}
+		return buffer;
+	}
+
+	/**
+	 * Releases a buffer back into the pool. It must not be used afterwards.
+	 * @param buffer The buffer.
+	 */
+	public void release(IoBuffer buffer) {
+		if(size < MAXIMUM_BUFFERS && buffer.capacity() <= MAXIMUM_CAPACITY) {
+			buffers[size++] = buffer;
+		}
+	}
+
+	/**
+	 * Acquires an empty bit writer.
+	 * @return The bit writer.
+	 */
+	public BitWriter acquireWriter() {
+		if(writerCount == 0) {
+			return new BitWriter(WRITER_CAPACITY);
+		}
+		BitWriter writer = writers[--writerCount];
+		writers[writerCount] = null;
+		writer.reset();
+		return writer;
+	}
+
+	/**
+	 * Releases a bit writer back into the pool. It must not be used
+	 * afterwards.
+	 * @param writer The bit writer.
+	 */
+	public void releaseWriter(BitWriter writer) {
+		if(writerCount < MAXIMUM_WRITERS) {
+			writers[writerCount++] = writer;
+		}
+	}
+
+	/**
+	 * Gets the number of pooled buffers.
+	 * @return The number of pooled buffers.
+	 */
+	public int size() {
+		return size;
+	}
+
+}
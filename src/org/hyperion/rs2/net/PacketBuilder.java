@@ -4,7 +4,14 @@ import org.apache.mina.core.buffer.IoBuffer;
 import org.hyperion.rs2.net.Packet.Type;
 
 /**
- * A utility class for building packets.
+ * <p>A utility class for building packets.</p>
+ *
+ * <p>A builder created with <code>new</code> has its own buffer, which starts
+ * small and grows as it is written. One created with <code>lease</code>
+ * instead writes into a buffer from the current thread's
+ * <code>PacketBufferPool</code>, sized by a hint for its opcode. A leased
+ * buffer goes back to the pool either when the builder is released or, if it
+ * was turned into a packet and written, when the packet is encoded.</p>
  * @author Graham Edgecombe
  *
  */
@@ -24,6 +31,44 @@ public class PacketBuilder {
 		}
 	}
 	
+	/**
+	 * The capacity of a buffer when there is no hint for its opcode.
+	 */
+	private static final int DEFAULT_CAPACITY = 16;
+	
+	/**
+	 * The capacity to lease for each opcode, or 0 to use the default.
+	 */
+	private static final int[] SIZE_HINTS = new int[256];
+	
+	/**
+	 * Sets the size hints. The player and npc update packets are given the
+	 * most the client can read in one packet.
+	 */
+	static {
+		SIZE_HINTS[81] = 5000;
+		SIZE_HINTS[65] = 5000;
+	}
+	
+	/**
+	 * Leases a raw packet builder.
+	 * @return The packet builder.
+	 */
+	public static PacketBuilder lease() {
+		return lease(-1, Type.FIXED);
+	}
+	
+	/**
+	 * Leases a packet builder with the specified opcode and type.
+	 * @param opcode The opcode.
+	 * @param type The type.
+	 * @return The packet builder.
+	 */
+	public static PacketBuilder lease(int opcode, Type type) {
+		int capacity = opcode == -1 || SIZE_HINTS[opcode] == 0 ? DEFAULT_CAPACITY : SIZE_HINTS[opcode];
+		return new PacketBuilder(opcode, type, PacketBufferPool.getPool().acquire(capacity), true);
+	}
+	
 	/**
 	 * The opcode.
 	 */
@@ -37,12 +82,18 @@ public class PacketBuilder {
 	/**
 	 * The payload.
 	 */
-	private IoBuffer payload = IoBuffer.allocate(16);
+	private IoBuffer payload;
 	
 	/**
-	 * The current bit position.
+	 * A flag indicating if the payload was leased from a pool.
 	 */
-	private int bitPosition;
+	private final boolean leased;
+	
+	/**
+	 * The writer bits are written into during bit access, or
+	 * <code>null</code> outside of it.
+	 */
+	private BitWriter bitWriter;
 	
 	/**
 	 * Creates a raw packet builder.
@@ -65,12 +116,25 @@ public class PacketBuilder {
 	 * @param type The type.
 	 */
 	public PacketBuilder(int opcode, Type type) {
-		this.opcode = opcode;
-		this.type = type;
+		this(opcode, type, IoBuffer.allocate(DEFAULT_CAPACITY), false);
 		payload.setAutoExpand(true);
 		payload.setAutoShrink(true);
 	}
 	
+	/**
+	 * Creates a packet builder which writes into a buffer.
+	 * @param opcode The opcode.
+	 * @param type The type.
+	 * @param payload The buffer.
+	 * @param leased A flag indicating if the buffer was leased from a pool.
+	 */
+	private PacketBuilder(int opcode, Type type, IoBuffer payload, boolean leased) {
+		this.opcode = opcode;
+		this.type = type;
+		this.payload = payload;
+		this.leased = leased;
+	}
+	
 	/**
 	 * Writes a byte.
 	 * @param b The byte to write.
@@ -122,13 +186,30 @@ public class PacketBuilder {
 	}
 	
 	/**
-	 * Converts this PacketBuilder to a packet.
+	 * Converts this PacketBuilder to a packet. The packet of a leased
+	 * builder shares its buffer, which is released when the packet is
+	 * encoded.
 	 * @return The Packet object.
 	 */
 	public Packet toPacket() {
+		if(leased) {
+			return new Packet(opcode, type, payload.flip(), true);
+		}
 		return new Packet(opcode, type, payload.flip().asReadOnlyBuffer());
 	}
 	
+	/**
+	 * Releases a leased builder's buffer back into the current thread's
+	 * pool. Neither the builder nor any packet converted from it may be used
+	 * afterwards. This does nothing if the builder was not leased.
+	 */
+	public void release() {
+		if(leased && payload != null) {
+			PacketBufferPool.getPool().release(payload);
+			payload = null;
+		}
+	}
+	
 	/**
 	 * Writes a RuneScape string.
 	 * @param string The string to write.
@@ -185,51 +266,30 @@ public class PacketBuilder {
 	 * @return The PacketBuilder instance, for chaining.
 	 */
 	public PacketBuilder startBitAccess() {
-		bitPosition = payload.position() * 8;
+		bitWriter = PacketBufferPool.getPool().acquireWriter();
 		return this;
 	}
 	
 	/**
-	 * Finishes bit access.
+	 * Finishes bit access, copying the bits written into the payload.
 	 * @return The PacketBuilder instance, for chaining.
 	 */
 	public PacketBuilder finishBitAccess() {
-		payload.position((bitPosition + 7) / 8);
+		int bytes = bitWriter.finish();
+		payload.put(bitWriter.getData(), 0, bytes);
+		PacketBufferPool.getPool().releaseWriter(bitWriter);
+		bitWriter = null;
 		return this;
 	}
 
 	/**
 	 * Writes some bits.
-	 * @param numBits The number of bits to write.
+	 * @param numBits The number of bits to write, from 0 to 32.
 	 * @param value The value.
 	 * @return The PacketBuilder instance, for chaining.
 	 */
 	public PacketBuilder putBits(int numBits, int value) {
-		if(!payload.hasArray()) {
-			throw new UnsupportedOperationException("The IoBuffer implementation must support array() for bit usage.");
-		}
-		
-		int bytes = (int) Math.ceil((double) numBits / 8D) + 1;
-		payload.expand((bitPosition + 7) / 8 + bytes);
-		
-		byte[] buffer = payload.array();
-		
-		int bytePos = bitPosition >> 3;
-		int bitOffset = 8 - (bitPosition & 7);
-		bitPosition += numBits;
-		
-		for(; numBits > bitOffset; bitOffset = 8) {
-			buffer[bytePos] &= ~BIT_MASK_OUT[bitOffset];
-			buffer[bytePos++] |= (value >> (numBits-bitOffset)) & BIT_MASK_OUT[bitOffset];
-			numBits -= bitOffset;
-		}
-		if(numBits == bitOffset) {
-			buffer[bytePos] &= ~BIT_MASK_OUT[bitOffset];
-			buffer[bytePos] |= value & BIT_MASK_OUT[bitOffset];
-		} else {
-			buffer[bytePos] &= ~(BIT_MASK_OUT[numBits] << (bitOffset - numBits));
-			buffer[bytePos] |= (value & BIT_MASK_OUT[numBits]) << (bitOffset - numBits);
-		}
+		bitWriter.putBits(numBits, value);
 		return this;
 	}
 
@@ -72,9 +72,11 @@ public class RS2Encoder implements ProtocolEncoder {
 			}
 			
 			/*
-			 * Write the payload itself.
+			 * Write the payload itself, after which a leased payload can go
+			 * back to its pool.
 			 */
 			buffer.put(p.getPayload());
+			p.release();
 			
 			/*
 			 * Flip and dispatch the packet.
@@ -0,0 +1,117 @@
+package org.hyperion.rs2.net;
+
+/**
+ * <p>An entity's update block for one cycle, encoded once and then copied
+ * into the packet of every player who can see the entity.</p>
+ *
+ * <p>A player's block differs depending on who it is sent to: a player
+ * who is new to the observer is always sent the appearance, and the player
+ * is not sent their own chat. Each of these variants is kept separately.
+ * NPCs only have the normal variant.</p>
+ *
+ * <p>The bytes live in an <code>UpdateBlockArena</code>. A block is only
+ * valid in the cycle it was encoded in, after which the arena may reuse the
+ * bytes. Within that cycle the bytes never change, so once the array, offset
+ * and length have been read under the entity's lock they can be copied
+ * without it.</p>
+ */
+public final class UpdateBlock {
+
+	/**
+	 * The block sent to players who already know the entity.
+	 */
+	public static final int NORMAL = 0;
+
+	/**
+	 * The block sent to players the entity is new to, with the appearance.
+	 */
+	public static final int FORCED_APPEARANCE = 1;
+
+	/**
+	 * The block a player is sent about themselves, without their chat.
+	 */
+	public static final int NO_CHAT = 2;
+
+	/**
+	 * The number of variants.
+	 */
+	public static final int VARIANTS = 3;
+
+	/**
+	 * The array holding the bytes.
+	 */
+	private byte[] data;
+
+	/**
+	 * The offset of the bytes in the array.
+	 */
+	private int offset;
+
+	/**
+	 * The number of bytes.
+	 */
+	private int length;
+
+	/**
+	 * The cycle the block was encoded in, or -1 if it never has been.
+	 */
+	private long cycle = -1;
+
+	/**
+	 * Gets the variant of a player's block.
+	 * @param forceAppearance The force appearance flag.
+	 * @param noChat The no chat flag.
+	 * @return The variant.
+	 */
+	public static int getVariant(boolean forceAppearance, boolean noChat) {
+		return noChat ? NO_CHAT : forceAppearance ? FORCED_APPEARANCE : NORMAL;
+	}
+
+	/**
+	 * Checks if the block was encoded in a cycle.
+	 * @param cycle The cycle.
+	 * @return <code>true</code> if so, <code>false</code> if not.
+	 */
+	public boolean isValid(long cycle) {
+		return this.cycle == cycle;
+	}
+
+	/**
+	 * Sets the bytes of the block.
+	 * @param data The array holding the bytes.
+	 * @param offset The offset of the bytes in the array.
+	 * @param length The number of bytes.
+	 * @param cycle The cycle the block was encoded in.
+	 */
+	void set(byte[] data, int offset, int length, long cycle) {
+		this.data = data;
+		this.offset = offset;
+		this.length = length;
+		this.cycle = cycle;
+	}
+
+	/**
+	 * Gets the array holding the bytes.
+	 * @return The array holding the bytes.
+	 */
+	public byte[] getData() {
+		return data;
+	}
+
+	/**
+	 * Gets the offset of the bytes in the array.
+	 * @return The offset of the bytes in the array.
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Gets the number of bytes.
+	 * @return The number of bytes.
+	 */
+	public int getLength() {
+		return length;
+	}
+
+}
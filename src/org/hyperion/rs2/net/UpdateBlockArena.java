@@ -0,0 +1,84 @@
+package org.hyperion.rs2.net;
+
+import org.apache.mina.core.buffer.IoBuffer;
+
+/**
+ * <p>A byte array which the update blocks encoded by one thread in one cycle
+ * are packed into.</p>
+ *
+ * <p>Each thread has its own arena, so threads encoding blocks in parallel
+ * never share one. The first block stored in a new cycle starts again from
+ * the beginning of the array, as the blocks of the previous cycle are no
+ * longer valid. When the array fills up a larger one is started, and the
+ * blocks already stored keep the old array, so nothing is ever copied or
+ * overwritten within a cycle.</p>
+ */
+public final class UpdateBlockArena {
+
+	/**
+	 * The initial size of each arena.
+	 */
+	private static final int INITIAL_CAPACITY = 16384;
+
+	/**
+	 * The arena of each thread.
+	 */
+	private static final ThreadLocal<UpdateBlockArena> ARENAS = new ThreadLocal<UpdateBlockArena>() {
+		@Override
+		protected UpdateBlockArena initialValue() {
+			return new UpdateBlockArena();
+		}
+	};
+
+	/**
+	 * Gets the arena of the current thread.
+	 * @return The arena.
+	 */
+	public static UpdateBlockArena getArena() {
+		return ARENAS.get();
+	}
+
+	/**
+	 * The array.
+	 */
+	private byte[] data = new byte[INITIAL_CAPACITY];
+
+	/**
+	 * The position of the next block in the array.
+	 */
+	private int position = 0;
+
+	/**
+	 * The cycle the blocks in the array were encoded in.
+	 */
+	private long cycle = -1;
+
+	/**
+	 * Creates an arena.
+	 */
+	private UpdateBlockArena() {
+
+	}
+
+	/**
+	 * Stores the remaining bytes of a buffer as an update block.
+	 * @param block The block.
+	 * @param payload The buffer.
+	 * @param cycle The current cycle.
+	 */
+	public void store(UpdateBlock block, IoBuffer payload, long cycle) {
+		if(cycle != this.cycle) {
+			this.cycle = cycle;
+			position = 0;
+		}
+		int length = payload.remaining();
+		if(position + length > data.length) {
+			data = new byte[Math.max(data.length * 2, length)];
+			position = 0;
+		}
+		payload.get(data, position, length);
+		block.set(data, position, length, cycle);
+		position += length;
+	}
+
+}
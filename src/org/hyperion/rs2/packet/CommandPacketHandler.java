@@ -1,11 +1,14 @@
 package org.hyperion.rs2.packet;
 
+import org.hyperion.rs2.event.TickClock;
+import org.hyperion.rs2.event.TickProfiler;
 import org.hyperion.rs2.model.Animation;
 import org.hyperion.rs2.model.Graphic;
 import org.hyperion.rs2.model.Item;
 import org.hyperion.rs2.model.Location;
 import org.hyperion.rs2.model.Player;
 import org.hyperion.rs2.model.Skills;
+import org.hyperion.rs2.model.World;
 import org.hyperion.rs2.model.container.Bank;
 import org.hyperion.rs2.net.Packet;
 import org.hyperion.rs2.pf.AStarPathFinder;
@@ -139,6 +142,27 @@ public class CommandPacketHandler implements PacketHandler {
 					" E: " + t.isEasternTraversalPermitted() +
 					" S: " + t.isSouthernTraversalPermitted() +
 					" W: " + t.isWesternTraversalPermitted());
+			} else if(command.equals("profile")) {
+				if(player.getRights() != Player.Rights.ADMINISTRATOR) {
+					return;
+				}
+				TickProfiler profiler = World.getWorld().getProfiler();
+				if(args.length == 2 && args[1].equals("reset")) {
+					profiler.reset();
+					player.getActionSender().sendMessage("The tick profiler has been reset.");
+					return;
+				}
+				TickClock clock = World.getWorld().getTickClock();
+				player.getActionSender().sendMessage("clock: ticks=" + clock.getTicks() + " late=" + clock.getLateTicks()
+						+ " skipped=" + clock.getSkippedTicks() + " max late=" + (clock.getMaximumLateness() / 1000000) + "ms");
+				player.getActionSender().sendMessage("tasks: queued=" + World.getWorld().getEngine().getQueueDepth()
+						+ " rejected=" + World.getWorld().getEngine().getRejectedTaskCount());
+				for(String line : World.getWorld().getTickBudget().summarise()) {
+					player.getActionSender().sendMessage(line);
+				}
+				for(String line : profiler.summarise()) {
+					player.getActionSender().sendMessage(line);
+				}
 			}
 		} catch(Exception ex) {
 			player.getActionSender().sendMessage("Error while processing command.");
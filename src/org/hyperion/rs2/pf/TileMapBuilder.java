@@ -58,7 +58,11 @@ public class TileMapBuilder {
 		for(int x = (-radius-1); x <= (radius+1); x++) {
 			for(int y = (-radius-1); y <= (radius+1); y++) {
 				Location loc = centerPosition.transform(x, y, 0);
-				coveredRegions.add(mgr.getRegionByLocation(loc));
+				// regions which are not loaded have no objects in them
+				Region region = mgr.findRegionByLocation(loc);
+				if(region != null) {
+					coveredRegions.add(region);
+				}
 			}
 		}
 		
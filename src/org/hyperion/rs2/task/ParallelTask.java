@@ -1,52 +1,126 @@
 package org.hyperion.rs2.task;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.List;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RecursiveAction;
 
 import org.hyperion.rs2.GameEngine;
+import org.hyperion.rs2.model.World;
 
 /**
- * A task which can execute multiple child tasks simultaneously.
+ * <p>A task which can execute multiple child tasks simultaneously.</p>
+ *
+ * <p>The child tasks are split into ranges which are run by the engine's
+ * work-stealing task pool, so idle workers take over ranges from busy ones.
+ * Execution returns once every child has completed, which makes each
+ * <code>ParallelTask</code> a barrier between the phases either side of
+ * it.</p>
  * @author Graham Edgecombe
  *
  */
 public class ParallelTask implements Task {
-	
+
+	/**
+	 * The number of ranges each worker thread is given, on average. More
+	 * ranges than threads gives work stealing something to balance.
+	 */
+	private static final int RANGES_PER_THREAD = 4;
+
 	/**
 	 * The child tasks.
 	 */
-	private Collection<Task> tasks;
-	
+	private final Task[] tasks;
+
 	/**
 	 * Creates the parallel task.
 	 * @param tasks The child tasks.
 	 */
 	public ParallelTask(Task... tasks) {
-		List<Task> taskList = new ArrayList<Task>();
-		for(Task task : tasks) {
-			taskList.add(task);
-		}
-		this.tasks = Collections.unmodifiableCollection(taskList);
+		this.tasks = tasks.clone();
 	}
-	
+
 	@Override
-	public void execute(final GameEngine context) {
-		for(final Task task : tasks) {
-			context.submitTask(new Runnable() {
-				@Override
-				public void run() {
-					task.execute(context);
-				}
-			});
+	public void execute(GameEngine context) {
+		execute(context, tasks, tasks.length);
+	}
+	
+	/**
+	 * Executes the first <code>count</code> tasks in an array in parallel,
+	 * returning once every one of them has completed.
+	 * @param context The game engine.
+	 * @param tasks The tasks.
+	 * @param count The number of tasks to execute.
+	 */
+	static void execute(GameEngine context, Task[] tasks, int count) {
+		if(count == 0) {
+			return;
 		}
-		try {
-			context.waitForPendingParallelTasks();
-		} catch(ExecutionException e) {
-			throw new RuntimeException(e);
+		int threshold = Math.max(1, count / (context.getParallelism() * RANGES_PER_THREAD));
+		context.invokeTask(new Range(context, tasks, 0, count, threshold));
+	}
+
+	/**
+	 * A range of child tasks which is either executed directly or split in
+	 * two.
+	 */
+	@SuppressWarnings("serial")
+	private static final class Range extends RecursiveAction {
+
+		/**
+		 * The game engine.
+		 */
+		private final GameEngine context;
+
+		/**
+		 * The child tasks.
+		 */
+		private final Task[] tasks;
+
+		/**
+		 * The first index in this range.
+		 */
+		private final int start;
+
+		/**
+		 * The index after the last in this range.
+		 */
+		private final int end;
+
+		/**
+		 * The largest range which is executed without being split.
+		 */
+		private final int threshold;
+
+		/**
+		 * Creates the range.
+		 * @param context The game engine.
+		 * @param tasks The child tasks.
+		 * @param start The first index.
+		 * @param end The index after the last.
+		 * @param threshold The largest range which is not split.
+		 */
+		public Range(GameEngine context, Task[] tasks, int start, int end, int threshold) {
+			this.context = context;
+			this.tasks = tasks;
+			this.start = start;
+			this.end = end;
+			this.threshold = threshold;
 		}
+
+		@Override
+		protected void compute() {
+			if(end - start <= threshold) {
+				for(int i = start; i < end; i++) {
+					try {
+						tasks[i].execute(context);
+					} catch(Throwable t) {
+						World.getWorld().handleError(t);
+					}
+				}
+			} else {
+				int middle = (start + end) >>> 1;
+				invokeAll(new Range(context, tasks, start, middle, threshold), new Range(context, tasks, middle, end, threshold));
+			}
+		}
+
 	}
 
 }
@@ -0,0 +1,82 @@
+package org.hyperion.rs2.task;
+
+import java.util.Arrays;
+
+import org.hyperion.rs2.GameEngine;
+
+/**
+ * <p>A reusable group of tasks which are executed either in sequence or in
+ * parallel.</p>
+ *
+ * <p>Unlike <code>ConsecutiveTask</code> and <code>ParallelTask</code> the
+ * group can be cleared and refilled, and its backing array only ever grows,
+ * so a group which is rebuilt every cycle stops allocating once it has
+ * reached its largest size.</p>
+ */
+public class TaskGroup implements Task {
+
+	/**
+	 * The tasks.
+	 */
+	private Task[] tasks;
+
+	/**
+	 * The number of tasks.
+	 */
+	private int size = 0;
+
+	/**
+	 * A flag indicating if the tasks are executed in parallel.
+	 */
+	private final boolean parallel;
+
+	/**
+	 * Creates the task group.
+	 * @param capacity The initial capacity.
+	 * @param parallel <code>true</code> to execute the tasks in parallel,
+	 * <code>false</code> to execute them in sequence.
+	 */
+	public TaskGroup(int capacity, boolean parallel) {
+		this.tasks = new Task[Math.max(1, capacity)];
+		this.parallel = parallel;
+	}
+
+	/**
+	 * Adds a task to the end of the group.
+	 * @param task The task.
+	 */
+	public void add(Task task) {
+		if(size == tasks.length) {
+			tasks = Arrays.copyOf(tasks, tasks.length * 2);
+		}
+		tasks[size++] = task;
+	}
+
+	/**
+	 * Removes every task from the group, keeping the backing array.
+	 */
+	public void clear() {
+		Arrays.fill(tasks, 0, size, null);
+		size = 0;
+	}
+
+	/**
+	 * Gets the number of tasks in the group.
+	 * @return The number of tasks.
+	 */
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void execute(GameEngine context) {
+		if(parallel) {
+			ParallelTask.execute(context, tasks, size);
+		} else {
+			for(int i = 0; i < size; i++) {
+				tasks[i].execute(context);
+			}
+		}
+	}
+
+}
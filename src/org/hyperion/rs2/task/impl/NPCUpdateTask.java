@@ -1,17 +1,24 @@
 package org.hyperion.rs2.task.impl;
 
+import java.util.BitSet;
 import java.util.Iterator;
 
 import org.hyperion.rs2.GameEngine;
+import org.hyperion.rs2.event.TickBudget;
 import org.hyperion.rs2.model.Entity;
+import org.hyperion.rs2.model.EntityStateStore;
 import org.hyperion.rs2.model.Location;
 import org.hyperion.rs2.model.NPC;
 import org.hyperion.rs2.model.Player;
 import org.hyperion.rs2.model.UpdateFlags;
 import org.hyperion.rs2.model.World;
 import org.hyperion.rs2.model.UpdateFlags.UpdateFlag;
+import org.hyperion.rs2.model.region.Interest;
+import org.hyperion.rs2.model.region.LocalEntityCursor;
 import org.hyperion.rs2.net.Packet;
 import org.hyperion.rs2.net.PacketBuilder;
+import org.hyperion.rs2.net.UpdateBlock;
+import org.hyperion.rs2.net.UpdateBlockArena;
 import org.hyperion.rs2.task.Task;
 
 /**
@@ -26,6 +33,31 @@ public class NPCUpdateTask implements Task {
 	 */
 	private Player player;
 	
+	/**
+	 * The cursor used to find npcs to add, kept so finding them does not
+	 * allocate.
+	 */
+	private final LocalEntityCursor<NPC> cursor = new LocalEntityCursor<NPC>();
+	
+	/**
+	 * The player's interest in npcs, used to skip looking for npcs to add
+	 * when nothing nearby has changed.
+	 */
+	private final Interest interest = new Interest();
+	
+	/**
+	 * The indices of local npcs which moved while their movement was being
+	 * left out of the update. The client no longer knows where they are, so
+	 * they are removed and added again once shedding stops.
+	 */
+	private final BitSet stale = new BitSet();
+	
+	/**
+	 * A flag indicating the npcs around the player have to be looked for
+	 * again once shedding stops, because some were left out or are stale.
+	 */
+	private boolean rescanPending = false;
+	
 	/**
 	 * Creates an npc update task.
 	 * @param player The player.
@@ -40,20 +72,35 @@ public class NPCUpdateTask implements Task {
 		 * The update block holds the update masks and data, and is written
 		 * after the main block.
 		 */
-		PacketBuilder updateBlock = new PacketBuilder();
+		PacketBuilder updateBlock = PacketBuilder.lease();
 		
 		/*
 		 * The main packet holds information about adding, moving and removing
 		 * NPCs.
 		 */
-		PacketBuilder packet = new PacketBuilder(65, Packet.Type.VARIABLE_SHORT);
+		PacketBuilder packet = PacketBuilder.lease(65, Packet.Type.VARIABLE_SHORT);
 		packet.startBitAccess();
 		
+		/*
+		 * When the server is overloaded, npcs beyond a shorter distance are
+		 * left out of the update.
+		 */
+		TickBudget budget = World.getWorld().getTickBudget();
+		boolean shedding = budget != null && budget.isSheddingNPCs();
+		int shed = 0;
+		
 		/*
 		 * Write the current size of the npc list.
 		 */
 		packet.putBits(8, player.getLocalNPCs().size());
 		
+		/*
+		 * The distance and update checks below read the packed state of the
+		 * npcs rather than following each one to its objects.
+		 */
+		EntityStateStore states = World.getWorld().getNPCStates();
+		int coordinates = EntityStateStore.pack(player.getLocation());
+		
 		/*
 		 * Iterate through the local npc list.
 		 */
@@ -62,11 +109,25 @@ public class NPCUpdateTask implements Task {
 			 * Get the next NPC.
 			 */
 			NPC npc = it$.next();
+			int index = npc.getIndex();
 			
 			/*
 			 * If the NPC should still be in our list.
 			 */
-			if(World.getWorld().getNPCs().contains(npc) && !npc.isTeleporting() && npc.getLocation().isWithinDistance(player.getLocation())) {
+			if(World.getWorld().getNPCs().contains(npc) && !npc.isTeleporting() && EntityStateStore.isWithinDistance(states.getCoordinates(index), coordinates) && (shedding || !stale.get(index))) {
+				if(shedding && !EntityStateStore.isWithinDistance(states.getCoordinates(index), coordinates, TickBudget.SHED_NPC_DISTANCE)) {
+					/*
+					 * Keep distant npcs, but leave out their movement and
+					 * update blocks.
+					 */
+					if(states.getPrimarySprite(index) != -1 || states.getSecondarySprite(index) != -1) {
+						stale.set(index);
+					}
+					packet.putBits(1, 0);
+					shed++;
+					continue;
+				}
+				
 				/*
 				 * Update the movement.
 				 */
@@ -75,7 +136,7 @@ public class NPCUpdateTask implements Task {
 				/*
 				 * Check if an update is required, and if so, send the update.
 				 */
-				if(npc.getUpdateFlags().isUpdateRequired()) {
+				if(states.isUpdateRequired(index)) {
 					updateNPC(updateBlock, npc);
 				}
 			} else {
@@ -83,7 +144,15 @@ public class NPCUpdateTask implements Task {
 				 * Otherwise, remove the NPC from the list.
 				 */
 				it$.remove();
-								
+				
+				/*
+				 * A stale npc is added again by the scan below.
+				 */
+				if(stale.get(index)) {
+					stale.clear(index);
+					rescanPending = true;
+				}
+				
 				/*
 				 * Tell the client to remove the NPC from the list.
 				 */
@@ -93,9 +162,20 @@ public class NPCUpdateTask implements Task {
 		}
 		
 		/*
-		 * Loop through all NPCs in the world.
+		 * Once shedding stops, look for the npcs which were left out.
 		 */
-		for(NPC npc : World.getWorld().getRegionManager().getLocalNpcs(player)) {
+		if(!shedding && rescanPending) {
+			interest.setIncomplete();
+			rescanPending = false;
+		}
+		
+		/*
+		 * Loop through every NPC which may have come into view.
+		 */
+		World.getWorld().getRegionManager().getInterestManager().findEnteringNpcs(player, interest, cursor);
+		while(cursor.next()) {
+			NPC npc = cursor.get();
+			
 			/*
 			 * Check if there is room left in the local list.
 			 */
@@ -105,6 +185,7 @@ public class NPCUpdateTask implements Task {
 				 * more NPCs, so we just ignore the extra ones. They will be
 				 * added as other NPCs get removed.
 				 */
+				interest.setIncomplete();
 				break;
 			}
 			
@@ -115,6 +196,16 @@ public class NPCUpdateTask implements Task {
 				continue;
 			}
 			
+			/*
+			 * Do not add distant npcs if shedding. They are looked for again
+			 * once shedding stops.
+			 */
+			if(shedding && !EntityStateStore.isWithinDistance(states.getCoordinates(npc.getIndex()), coordinates, TickBudget.SHED_NPC_DISTANCE)) {
+				rescanPending = true;
+				shed++;
+				continue;
+			}
+			
 			/*
 			 * Add the npc to the local list if it is within distance.
 			 */
@@ -160,9 +251,18 @@ public class NPCUpdateTask implements Task {
 		}
 		
 		/*
-		 * Write the packet.
+		 * The update block has been copied into the packet by now.
+		 */
+		updateBlock.release();
+		
+		/*
+		 * Write the packet, which releases its buffer once it is encoded.
 		 */
 		player.write(packet.toPacket());
+		
+		if(shed > 0) {
+			budget.recordShedNPCs(shed);
+		}
 	}
 
 	/**
@@ -288,6 +388,35 @@ public class NPCUpdateTask implements Task {
 	 * @param npc The npc.
 	 */
 	private void updateNPC(PacketBuilder packet, NPC npc) {
+		/*
+		 * The block is the same for every observer, so it is only encoded
+		 * once per cycle and then copied. The lock is only held to check and
+		 * encode the block, not for the copy.
+		 */
+		long cycle = World.getWorld().getRegionManager().getInterestManager().getCycle();
+		byte[] data;
+		int offset, length;
+		synchronized(npc) {
+			UpdateBlock cached = npc.getUpdateBlock(UpdateBlock.NORMAL);
+			if(!cached.isValid(cycle)) {
+				PacketBuilder block = PacketBuilder.lease();
+				appendUpdateBlock(block, npc);
+				UpdateBlockArena.getArena().store(cached, block.toPacket().getPayload(), cycle);
+				block.release();
+			}
+			data = cached.getData();
+			offset = cached.getOffset();
+			length = cached.getLength();
+		}
+		packet.put(data, offset, length);
+	}
+	
+	/**
+	 * Encodes an NPC's update block.
+	 * @param packet The update block.
+	 * @param npc The npc.
+	 */
+	private void appendUpdateBlock(PacketBuilder packet, NPC npc) {
 		/*
 		 * Calculate the mask.
 		 */
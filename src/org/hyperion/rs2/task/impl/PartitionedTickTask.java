@@ -0,0 +1,44 @@
+package org.hyperion.rs2.task.impl;
+
+import org.hyperion.rs2.GameEngine;
+import org.hyperion.rs2.model.World;
+import org.hyperion.rs2.model.region.RegionManager;
+import org.hyperion.rs2.task.Task;
+
+/**
+ * <p>A task which runs groups of tick tasks in parallel, where each group
+ * holds the entities of a single region.</p>
+ *
+ * <p>Region changes are deferred while the groups run, so the only state
+ * shared between groups is left untouched. Once every group has finished the
+ * entities which crossed a region boundary are handed off to their new
+ * regions in a deterministic order.</p>
+ */
+public class PartitionedTickTask implements Task {
+
+	/**
+	 * The task which runs the groups.
+	 */
+	private final Task groups;
+
+	/**
+	 * Creates the partitioned tick task.
+	 * @param groups The task which runs the groups in parallel, each of which
+	 * ticks the entities in one region.
+	 */
+	public PartitionedTickTask(Task groups) {
+		this.groups = groups;
+	}
+
+	@Override
+	public void execute(GameEngine context) {
+		RegionManager regionManager = World.getWorld().getRegionManager();
+		regionManager.beginHandOff();
+		try {
+			groups.execute(context);
+		} finally {
+			regionManager.completeHandOff();
+		}
+	}
+
+}
@@ -0,0 +1,42 @@
+package org.hyperion.rs2.task.impl;
+
+import org.hyperion.rs2.GameEngine;
+import org.hyperion.rs2.model.Player;
+import org.hyperion.rs2.model.World;
+import org.hyperion.rs2.net.Packet;
+import org.hyperion.rs2.net.PacketManager;
+import org.hyperion.rs2.task.Task;
+
+/**
+ * A task which handles the packets a player has sent since the last cycle, up
+ * to the number allowed each cycle. Any left over are handled in later
+ * cycles, so a client which floods the server only slows itself down.
+ */
+public class PlayerPacketTask implements Task {
+
+	/**
+	 * The player.
+	 */
+	private Player player;
+
+	/**
+	 * Creates the packet task.
+	 * @param player The player whose packets are handled.
+	 */
+	public PlayerPacketTask(Player player) {
+		this.player = player;
+	}
+
+	@Override
+	public void execute(GameEngine context) {
+		int limit = World.getWorld().getUpdateEvent().getPacketsPerTick();
+		for(int i = 0; i < limit; i++) {
+			Packet packet = player.pollQueuedPacket();
+			if(packet == null) {
+				break;
+			}
+			PacketManager.getPacketManager().handle(player.getSession(), packet);
+		}
+	}
+
+}
@@ -30,7 +30,6 @@ public class PlayerResetTask implements Task {
 		player.setTeleporting(false);
 		player.setMapRegionChanging(false);
 		player.resetTeleportTarget();
-		player.resetCachedUpdateBlock();
 		player.reset();
 	}
 
@@ -3,8 +3,10 @@ package org.hyperion.rs2.task.impl;
 import java.util.Queue;
 
 import org.hyperion.rs2.GameEngine;
+import org.hyperion.rs2.event.TickBudget;
 import org.hyperion.rs2.model.ChatMessage;
 import org.hyperion.rs2.model.Player;
+import org.hyperion.rs2.model.World;
 import org.hyperion.rs2.model.UpdateFlags.UpdateFlag;
 import org.hyperion.rs2.task.Task;
 
@@ -41,6 +43,10 @@ public class PlayerTickTask implements Task {
 			player.setCurrentChatMessage(null);
 		}
 		player.getWalkingQueue().processNextMovement();
+		TickBudget budget = World.getWorld().getTickBudget();
+		if(budget != null && budget.isRefreshDue()) {
+			player.sendDeferredRefreshes();
+		}
 	}
 
 }
@@ -1,11 +1,13 @@
 package org.hyperion.rs2.task.impl;
 
+import java.util.Arrays;
 import java.util.Iterator;
 
 import org.hyperion.rs2.GameEngine;
 import org.hyperion.rs2.model.Appearance;
 import org.hyperion.rs2.model.ChatMessage;
 import org.hyperion.rs2.model.Entity;
+import org.hyperion.rs2.model.EntityStateStore;
 import org.hyperion.rs2.model.Item;
 import org.hyperion.rs2.model.Location;
 import org.hyperion.rs2.model.Player;
@@ -15,8 +17,14 @@ import org.hyperion.rs2.model.UpdateFlags.UpdateFlag;
 import org.hyperion.rs2.model.container.Container;
 import org.hyperion.rs2.model.container.Equipment;
 import org.hyperion.rs2.model.container.Equipment.EquipmentType;
+import org.hyperion.rs2.model.region.Interest;
+import org.hyperion.rs2.model.region.InterestManager;
+import org.hyperion.rs2.model.region.LocalEntityCursor;
+import org.hyperion.rs2.model.region.ViewDistance;
 import org.hyperion.rs2.net.Packet;
 import org.hyperion.rs2.net.PacketBuilder;
+import org.hyperion.rs2.net.UpdateBlock;
+import org.hyperion.rs2.net.UpdateBlockArena;
 import org.hyperion.rs2.task.Task;
 
 /**
@@ -26,17 +34,75 @@ import org.hyperion.rs2.task.Task;
  */
 public class PlayerUpdateTask implements Task {
 	
+	/**
+	 * The players found by a scan, by their distance from the observer.
+	 */
+	private static final class Candidates {
+		
+		/**
+		 * The indices of the players at each distance.
+		 */
+		private final int[][] indices = new int[ViewDistance.MAXIMUM + 1][16];
+		
+		/**
+		 * The number of players at each distance.
+		 */
+		private final int[] counts = new int[ViewDistance.MAXIMUM + 1];
+		
+		/**
+		 * Adds a player.
+		 * @param distance The player's distance from the observer.
+		 * @param index The player's index.
+		 */
+		private void add(int distance, int index) {
+			if(counts[distance] == indices[distance].length) {
+				indices[distance] = Arrays.copyOf(indices[distance], counts[distance] * 2);
+			}
+			indices[distance][counts[distance]++] = index;
+		}
+		
+	}
+	
+	/**
+	 * The candidates of each thread. Sharing them between the tasks run by
+	 * a thread keeps them in the cache, which one set for each task does not.
+	 */
+	private static final ThreadLocal<Candidates> CANDIDATES = new ThreadLocal<Candidates>() {
+		@Override
+		protected Candidates initialValue() {
+			return new Candidates();
+		}
+	};
+	
 	/**
 	 * The player.
 	 */
 	private Player player;
 	
+	/**
+	 * The cursor used to find players to add, kept so finding them does not
+	 * allocate.
+	 */
+	private final LocalEntityCursor<Player> cursor = new LocalEntityCursor<Player>();
+	
+	/**
+	 * The player's interest in other players, used to skip looking for
+	 * players to add when nothing nearby has changed.
+	 */
+	private final Interest interest = new Interest();
+	
+	/**
+	 * The player's view distance, which shrinks in crowds.
+	 */
+	private final ViewDistance viewDistance;
+	
 	/**
 	 * Creates an update task.
 	 * @param player The player.
 	 */
 	public PlayerUpdateTask(Player player) {
 		this.player = player;
+		this.viewDistance = new ViewDistance(World.getWorld().getRegionManager().getInterestManager().getPlayerViewBudget());
 	}
 
 	@Override
@@ -54,14 +120,14 @@ public class PlayerUpdateTask implements Task {
 		 * The update block packet holds update blocks and is send after the
 		 * main packet. 
 		 */
-		PacketBuilder updateBlock = new PacketBuilder();
+		PacketBuilder updateBlock = PacketBuilder.lease();
 		
 		/*
 		 * The main packet is written in bits instead of bytes and holds
 		 * information about the local list, players to add and remove,
 		 * movement and which updates are required.
 		 */
-		PacketBuilder packet = new PacketBuilder(81, Packet.Type.VARIABLE_SHORT);
+		PacketBuilder packet = PacketBuilder.lease(81, Packet.Type.VARIABLE_SHORT);
 		packet.startBitAccess();
 		
 		/*
@@ -75,6 +141,38 @@ public class PlayerUpdateTask implements Task {
 		 */
 		packet.putBits(8, player.getLocalPlayers().size());
 		
+		/*
+		 * The distance and update checks below read the packed state of the
+		 * other players rather than following each one to its objects.
+		 */
+		EntityStateStore states = World.getWorld().getPlayerStates();
+		int coordinates = EntityStateStore.pack(player.getLocation());
+		
+		/*
+		 * If the players around this one may have changed, walk them once,
+		 * counting them by distance and keeping them as candidates to add.
+		 * The view distance is fitted to the budget before anyone is removed
+		 * or added, so the nearest players are the ones in view.
+		 */
+		Candidates candidates = CANDIDATES.get();
+		Arrays.fill(candidates.counts, 0);
+		InterestManager interestManager = World.getWorld().getRegionManager().getInterestManager();
+		if(interestManager.findEnteringPlayers(player, interest, cursor)) {
+			viewDistance.beginCount();
+			while(cursor.next()) {
+				Player otherPlayer = cursor.get();
+				if(otherPlayer == player) {
+					continue;
+				}
+				int distance = viewDistance.count(states.getCoordinates(otherPlayer.getIndex()), coordinates);
+				if(distance != -1) {
+					candidates.add(distance, otherPlayer.getIndex());
+				}
+			}
+			viewDistance.endCount();
+			interest.setDistance(viewDistance.getDistance());
+		}
+		
 		/*
 		 * Iterate through the local player list.
 		 */
@@ -87,7 +185,7 @@ public class PlayerUpdateTask implements Task {
 			/*
 			 * If the player should still be in our list.
 			 */
-			if(World.getWorld().getPlayers().contains(otherPlayer) && !otherPlayer.isTeleporting() && otherPlayer.getLocation().isWithinDistance(player.getLocation())) {
+			if(World.getWorld().getPlayers().contains(otherPlayer) && !otherPlayer.isTeleporting() && viewDistance.isInView(states.getCoordinates(otherPlayer.getIndex()), coordinates)) {
 				/*
 				 * Update the movement.
 				 */
@@ -96,7 +194,7 @@ public class PlayerUpdateTask implements Task {
 				/*
 				 * Check if an update is required, and if so, send the update.
 				 */
-				if(otherPlayer.getUpdateFlags().isUpdateRequired()) {
+				if(states.isUpdateRequired(otherPlayer.getIndex())) {
 					updatePlayer(updateBlock, otherPlayer, false, false);
 				}
 			} else {
@@ -114,25 +212,45 @@ public class PlayerUpdateTask implements Task {
 		}
 		
 		/*
-		 * Loop through every player.
+		 * Loop through every player who may have come into view, nearest
+		 * first.
 		 */
-		for(Player otherPlayer : World.getWorld().getRegionManager().getLocalPlayers(player)) {
+		int distance = 0;
+		int position = 0;
+		while(distance <= viewDistance.getDistance()) {
+			if(position == candidates.counts[distance]) {
+				distance++;
+				position = 0;
+				continue;
+			}
+			int index = candidates.indices[distance][position++];
+			Player otherPlayer = (Player) World.getWorld().getPlayers().get(index);
+			
+			/*
+			 * Skip players who are out of view or have since logged out.
+			 */
+			if(otherPlayer == null || !viewDistance.isInView(states.getCoordinates(index), coordinates)) {
+				continue;
+			}
+			
 			/*
 			 * Check if there is room left in the local list.
 			 */
-			if(player.getLocalPlayers().size() >= 255) {
+			if(player.getLocalPlayers().size() >= viewDistance.getBudget()) {
 				/*
-				 * There is no more room left in the local list. We cannot add
-				 * more players, so we just ignore the extra ones. They will be
-				 * added as other players get removed.
+				 * There is no more room left in the local list. The view
+				 * distance has been fitted to the budget, so this only happens
+				 * at the smallest distance. We cannot add more players, so we
+				 * just ignore the extra ones until others get removed.
 				 */
+				interest.setIncomplete();
 				break;
 			}
 			
 			/*
 			 * If they should not be added ignore them.
 			 */
-			if(otherPlayer == player || player.getLocalPlayers().contains(otherPlayer)) {
+			if(player.getLocalPlayers().contains(otherPlayer)) {
 				continue;
 			}
 			
@@ -174,7 +292,12 @@ public class PlayerUpdateTask implements Task {
 		}
 		
 		/*
-		 * Write the packet.
+		 * The update block has been copied into the packet by now.
+		 */
+		updateBlock.release();
+		
+		/*
+		 * Write the packet, which releases its buffer once it is encoded.
 		 */
 		player.write(packet.toPacket());
 	}
@@ -321,128 +444,141 @@ public class PlayerUpdateTask implements Task {
 		}
 		
 		/*
-		 * We can used the cached update block!
+		 * Each variant of a player's block is only encoded once per cycle,
+		 * by whichever observer gets to it first, and then copied. The lock is
+		 * only held to check and encode the block, not for the copy.
 		 */
+		long cycle = World.getWorld().getRegionManager().getInterestManager().getCycle();
+		byte[] data;
+		int offset, length;
 		synchronized(otherPlayer) {
-			if(otherPlayer.hasCachedUpdateBlock() && otherPlayer != player && !forceAppearance && !noChat) {
-				packet.put(otherPlayer.getCachedUpdateBlock().getPayload().flip());
-				return;
+			UpdateBlock cached = otherPlayer.getUpdateBlock(UpdateBlock.getVariant(forceAppearance, noChat));
+			if(!cached.isValid(cycle)) {
+				encodeUpdateBlock(cached, otherPlayer, forceAppearance, noChat, cycle);
 			}
-			
+			data = cached.getData();
+			offset = cached.getOffset();
+			length = cached.getLength();
+		}
+		
+		/*
+		 * And finally append the block at the end.
+		 */
+		packet.put(data, offset, length);
+	}
+	
+	/**
+	 * Encodes a player's update block and stores it in this thread's arena.
+	 * The caller must hold the player's lock.
+	 * @param cached The block to store it in.
+	 * @param otherPlayer The other player.
+	 * @param forceAppearance The force appearance flag.
+	 * @param noChat Indicates chat should not be relayed to this player.
+	 * @param cycle The current cycle.
+	 */
+	private void encodeUpdateBlock(UpdateBlock cached, Player otherPlayer, boolean forceAppearance, boolean noChat, long cycle) {
+		/*
+		 * We have to construct and cache our own block.
+		 */
+		PacketBuilder block = PacketBuilder.lease();
+		
+		/*
+		 * Calculate the bitmask.
+		 */
+		int mask = 0;
+		final UpdateFlags flags = otherPlayer.getUpdateFlags();
+		
+		// TODO mask 0x400
+		if(flags.get(UpdateFlag.GRAPHICS)) {
+			mask |= 0x100;
+		}
+		if(flags.get(UpdateFlag.ANIMATION)) {
+			mask |= 0x8;
+		}
+		if(flags.get(UpdateFlag.FORCED_CHAT)) {
+			mask |= 0x4;
+		}
+		if(flags.get(UpdateFlag.CHAT) && !noChat) {
+			mask |= 0x80;
+		}
+		if(flags.get(UpdateFlag.FACE_ENTITY)) {
+			mask |= 0x1;
+		}
+		if(flags.get(UpdateFlag.APPEARANCE) || forceAppearance) {
+			mask |= 0x10;
+		}
+		if(flags.get(UpdateFlag.FACE_COORDINATE)) {
+			mask |= 0x2;
+		}
+		if(flags.get(UpdateFlag.HIT)) {
+			mask |= 0x20;
+		}
+		if(flags.get(UpdateFlag.HIT_2)) {
+			mask |= 0x200;
+		}
+		
+		/*
+		 * Check if the bitmask would overflow a byte.
+		 */
+		if(mask >= 0x100) {
 			/*
-			 * We have to construct and cache our own block.
+			 * Write it as a short and indicate we have done so.
 			 */
-			PacketBuilder block = new PacketBuilder();
-			
+			mask |= 0x40;
+			block.put((byte) (mask & 0xFF));
+			block.put((byte) (mask >> 8));
+		} else {
 			/*
-			 * Calculate the bitmask.
+			 * Write it as a byte.
 			 */
-			int mask = 0;
-			final UpdateFlags flags = otherPlayer.getUpdateFlags();
-			
-			// TODO mask 0x400
-			if(flags.get(UpdateFlag.GRAPHICS)) {
-				mask |= 0x100;
-			}
-			if(flags.get(UpdateFlag.ANIMATION)) {
-				mask |= 0x8;
-			}
-			if(flags.get(UpdateFlag.FORCED_CHAT)) {
-				mask |= 0x4;
-			}
-			if(flags.get(UpdateFlag.CHAT) && !noChat) {
-				mask |= 0x80;
-			}
-			if(flags.get(UpdateFlag.FACE_ENTITY)) {
-				mask |= 0x1;
-			}
-			if(flags.get(UpdateFlag.APPEARANCE) || forceAppearance) {
-				mask |= 0x10;
-			}
-			if(flags.get(UpdateFlag.FACE_COORDINATE)) {
-				mask |= 0x2;
-			}
-			if(flags.get(UpdateFlag.HIT)) {
-				mask |= 0x20;
-			}
-			if(flags.get(UpdateFlag.HIT_2)) {
-				mask |= 0x200;
-			}
+			block.put((byte) (mask));
+		}
+		
+		/*
+		 * Append the appropriate updates.
+		 */
+		if(flags.get(UpdateFlag.GRAPHICS)) {
+			appendGraphicsUpdate(block, otherPlayer);
+		}
+		if(flags.get(UpdateFlag.ANIMATION)) {
+			appendAnimationUpdate(block, otherPlayer);
+		}
+		if(flags.get(UpdateFlag.FORCED_CHAT)) {
 			
-			/*
-			 * Check if the bitmask would overflow a byte.
-			 */
-			if(mask >= 0x100) {
-				/*
-				 * Write it as a short and indicate we have done so.
-				 */
-				mask |= 0x40;
-				block.put((byte) (mask & 0xFF));
-				block.put((byte) (mask >> 8));
+		}
+		if(flags.get(UpdateFlag.CHAT) && !noChat) {
+			appendChatUpdate(block, otherPlayer);
+		}
+		if(flags.get(UpdateFlag.FACE_ENTITY)) {
+			Entity entity = otherPlayer.getInteractingEntity();
+			block.putLEShort(entity == null ? -1 : entity.getClientIndex());
+		}
+		if(flags.get(UpdateFlag.APPEARANCE) || forceAppearance) {
+			appendPlayerAppearanceUpdate(block, otherPlayer);
+		}
+		if(flags.get(UpdateFlag.FACE_COORDINATE)) {
+			Location loc = otherPlayer.getFaceLocation();
+			if(loc == null) {
+				block.putLEShortA(0);
+				block.putLEShort(0);
 			} else {
-				/*
-				 * Write it as a byte.
-				 */
-				block.put((byte) (mask));
+				block.putLEShortA(loc.getX() * 2 + 1);
+				block.putLEShort(loc.getY() * 2 + 1);
 			}
-			
-			/*
-			 * Append the appropriate updates.
-			 */
-			if(flags.get(UpdateFlag.GRAPHICS)) {
-				appendGraphicsUpdate(block, otherPlayer);
-			}
-			if(flags.get(UpdateFlag.ANIMATION)) {
-				appendAnimationUpdate(block, otherPlayer);
-			}
-			if(flags.get(UpdateFlag.FORCED_CHAT)) {
-				
-			}
-			if(flags.get(UpdateFlag.CHAT) && !noChat) {
-				appendChatUpdate(block, otherPlayer);
-			}
-			if(flags.get(UpdateFlag.FACE_ENTITY)) {
-				Entity entity = otherPlayer.getInteractingEntity();
-				block.putLEShort(entity == null ? -1 : entity.getClientIndex());
-			}
-			if(flags.get(UpdateFlag.APPEARANCE) || forceAppearance) {
-				appendPlayerAppearanceUpdate(block, otherPlayer);
-			}
-			if(flags.get(UpdateFlag.FACE_COORDINATE)) {
-				Location loc = otherPlayer.getFaceLocation();
-				if(loc == null) {
-					block.putLEShortA(0);
-					block.putLEShort(0);
-				} else {
-					block.putLEShortA(loc.getX() * 2 + 1);
-					block.putLEShort(loc.getY() * 2 + 1);
-				}
-			}
-			if(flags.get(UpdateFlag.HIT)) {
-				appendHitUpdate(otherPlayer, block);
-			}
-			if(flags.get(UpdateFlag.HIT_2)) {
-				appendHit2Update(otherPlayer, block);
-			}
-			
-			/*
-			 * Convert the block builder to a packet.
-			 */
-			Packet blockPacket = block.toPacket();
-			
-			/*
-			 * Now it is over, cache the block if we can.
-			 */
-			if(otherPlayer != player && !forceAppearance && !noChat) {
-				otherPlayer.setCachedUpdateBlock(blockPacket);
-			}
-		
-			/*
-			 * And finally append the block at the end.
-			 */
-			packet.put(blockPacket.getPayload());
 		}
-	}
+		if(flags.get(UpdateFlag.HIT)) {
+			appendHitUpdate(otherPlayer, block);
+		}
+		if(flags.get(UpdateFlag.HIT_2)) {
+			appendHit2Update(otherPlayer, block);
+		}
+		
+		/*
+		 * Now it is over, store the block in this thread's arena.
+		 */
+		UpdateBlockArena.getArena().store(cached, block.toPacket().getPayload(), cycle);
+		block.release();
+}
 	
 	/**
 	 * Appends an animation update.
@@ -483,15 +619,30 @@ public class PlayerUpdateTask implements Task {
 	}
 
 	/**
-	 * Appends an appearance update.
+	 * Appends an appearance update, encoding the block only if the player's
+	 * appearance has changed since it was last cached.
 	 * @param packet The packet.
 	 * @param otherPlayer The player.
 	 */
 	private void appendPlayerAppearanceUpdate(PacketBuilder packet, Player otherPlayer) {
+		byte[] block = otherPlayer.getAppearanceBlock();
+		if(block == null) {
+			block = encodeAppearanceBlock(otherPlayer);
+			otherPlayer.setAppearanceBlock(block);
+		}
+		packet.put(block);
+	}
+
+	/**
+	 * Encodes an appearance block.
+	 * @param otherPlayer The player.
+	 * @return The block, starting with its length.
+	 */
+	private byte[] encodeAppearanceBlock(Player otherPlayer) {
 		Appearance app = otherPlayer.getAppearance();
 		Container eq = otherPlayer.getEquipment();
 		
-		PacketBuilder playerProps = new PacketBuilder();
+		PacketBuilder playerProps = PacketBuilder.lease();
 		playerProps.put((byte) app.getGender()); // gender
 		playerProps.put((byte) 0); // skull icon
 		
@@ -577,8 +728,12 @@ public class PlayerUpdateTask implements Task {
 		
 		Packet propsPacket = playerProps.toPacket();
 		
-		packet.putByteC(propsPacket.getLength());
-		packet.put(propsPacket.getPayload());
+		int length = propsPacket.getLength();
+		byte[] block = new byte[length + 1];
+		block[0] = (byte) -length;
+		propsPacket.getPayload().get(block, 1, length);
+		playerProps.release();
+		return block;
 	}
 
 	/**
@@ -0,0 +1,22 @@
+package org.hyperion.rs2.task.impl;
+
+import org.hyperion.rs2.GameEngine;
+import org.hyperion.rs2.event.impl.UpdateEvent;
+import org.hyperion.rs2.model.World;
+import org.hyperion.rs2.model.region.RegionManager;
+import org.hyperion.rs2.task.Task;
+
+/**
+ * Evicts regions which have been empty for longer than the region manager's
+ * idle time. This runs on the game engine thread
+ * between update cycles, so nothing is looking at the regions.
+ */
+public class RegionEvictionTask implements Task {
+
+	@Override
+	public void execute(GameEngine context) {
+		RegionManager regionManager = World.getWorld().getRegionManager();
+		regionManager.evictIdleRegions(regionManager.getIdleTime() / UpdateEvent.CYCLE_TIME);
+	}
+
+}
@@ -0,0 +1,341 @@
+package org.hyperion.rs2.task.impl;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hyperion.rs2.Constants;
+import org.hyperion.rs2.GameEngine;
+import org.hyperion.rs2.event.TickBudget;
+import org.hyperion.rs2.event.TickProfiler;
+import org.hyperion.rs2.event.TickProfiler.Phase;
+import org.hyperion.rs2.event.impl.UpdateEvent;
+import org.hyperion.rs2.event.impl.UpdateEvent.TickMode;
+import org.hyperion.rs2.model.NPC;
+import org.hyperion.rs2.model.Player;
+import org.hyperion.rs2.model.World;
+import org.hyperion.rs2.model.region.Region;
+import org.hyperion.rs2.task.Task;
+import org.hyperion.rs2.task.TaskGroup;
+import org.hyperion.rs2.util.EntityList;
+
+/**
+ * <p>A task which runs a whole update cycle: handling the packets each player
+ * has sent, ticking every entity, sending the player and npc updates and then
+ * resetting every entity.</p>
+ *
+ * <p>The task is created once and reused every cycle. The tick, update and
+ * reset tasks for each entity are kept in a slot owned by the entity's index
+ * and only replaced when a different entity takes that index, and the groups
+ * they are run in are cleared and refilled rather than rebuilt, so a cycle in
+ * which nobody logs in or out allocates nothing.</p>
+ *
+ * <p>Entities are collected by walking the dense part of each entity list, so
+ * empty indices cost nothing. The slot of an entity which has left is not
+ * cleared straight away, but is replaced when its index is next handed out,
+ * which for players is usually the next login.</p>
+ */
+public class UpdateCycleTask implements Task {
+
+	/**
+	 * The tasks belonging to the player at a single index.
+	 */
+	private static final class PlayerSlot {
+
+		/**
+		 * The player.
+		 */
+		private final Player player;
+
+		/**
+		 * The packet task.
+		 */
+		private final Task packetTask;
+
+		/**
+		 * The tick task.
+		 */
+		private final Task tickTask;
+
+		/**
+		 * The player update task.
+		 */
+		private final Task playerUpdateTask;
+
+		/**
+		 * The npc update task.
+		 */
+		private final Task npcUpdateTask;
+
+		/**
+		 * The reset task.
+		 */
+		private final Task resetTask;
+
+		/**
+		 * Creates the slot.
+		 * @param player The player.
+		 */
+		public PlayerSlot(Player player) {
+			this.player = player;
+			this.packetTask = new PlayerPacketTask(player);
+			this.tickTask = new PlayerTickTask(player);
+			this.playerUpdateTask = new PlayerUpdateTask(player);
+			this.npcUpdateTask = new NPCUpdateTask(player);
+			this.resetTask = new PlayerResetTask(player);
+		}
+
+	}
+
+	/**
+	 * The tasks belonging to the npc at a single index.
+	 */
+	private static final class NPCSlot {
+
+		/**
+		 * The npc.
+		 */
+		private final NPC npc;
+
+		/**
+		 * The tick task.
+		 */
+		private final Task tickTask;
+
+		/**
+		 * The reset task.
+		 */
+		private final Task resetTask;
+
+		/**
+		 * Creates the slot.
+		 * @param npc The npc.
+		 */
+		public NPCSlot(NPC npc) {
+			this.npc = npc;
+			this.tickTask = new NPCTickTask(npc);
+			this.resetTask = new NPCResetTask(npc);
+		}
+
+	}
+
+	/**
+	 * The update event, which decides the tick mode.
+	 */
+	private final UpdateEvent event;
+
+	/**
+	 * The player slots, indexed by player index.
+	 */
+	private final PlayerSlot[] playerSlots;
+
+	/**
+	 * The npc slots, indexed by npc index.
+	 */
+	private final NPCSlot[] npcSlots;
+
+	/**
+	 * The packet tasks, which are always run consecutively.
+	 */
+	private final TaskGroup packetTasks = new TaskGroup(64, false);
+
+	/**
+	 * The tick tasks, when ticking consecutively.
+	 */
+	private final TaskGroup tickTasks = new TaskGroup(64, false);
+
+	/**
+	 * The per-region groups of tick tasks, when ticking in parallel.
+	 */
+	private final TaskGroup tickGroups = new TaskGroup(64, true);
+
+	/**
+	 * The task which ticks the per-region groups.
+	 */
+	private final Task partitionedTickTask = new PartitionedTickTask(tickGroups);
+
+	/**
+	 * The per-region groups which are in use this cycle.
+	 */
+	private final Map<Region, TaskGroup> regionGroups = new IdentityHashMap<Region, TaskGroup>();
+
+	/**
+	 * Per-region groups which can be reused.
+	 */
+	private final List<TaskGroup> groupPool = new ArrayList<TaskGroup>();
+
+	/**
+	 * The number of pooled groups in use this cycle.
+	 */
+	private int groupsUsed = 0;
+
+	/**
+	 * The player update tasks.
+	 */
+	private final TaskGroup playerUpdateTasks = new TaskGroup(64, true);
+
+	/**
+	 * The npc update tasks.
+	 */
+	private final TaskGroup npcUpdateTasks = new TaskGroup(64, true);
+
+	/**
+	 * The reset tasks.
+	 */
+	private final TaskGroup resetTasks = new TaskGroup(64, true);
+
+	/**
+	 * Creates the update cycle task.
+	 * @param event The update event.
+	 */
+	public UpdateCycleTask(UpdateEvent event) {
+		this.event = event;
+		this.playerSlots = new PlayerSlot[Constants.MAX_PLAYERS + 1];
+		this.npcSlots = new NPCSlot[Constants.MAX_NPCS + 1];
+	}
+
+	@Override
+	public void execute(GameEngine context) {
+		final boolean partitioned = event.getTickMode() == TickMode.PARTITIONED;
+		final TickProfiler profiler = World.getWorld().getProfiler();
+		final TickBudget budget = World.getWorld().getTickBudget();
+		final long start = System.nanoTime();
+		budget.beginCycle();
+		try {
+			collectNPCs(partitioned);
+			collectPlayers(partitioned);
+			execute(context, profiler, budget, Phase.PACKETS, packetTasks);
+			if(partitioned) {
+				execute(context, profiler, budget, Phase.TICK, partitionedTickTask);
+			} else {
+				// consecutive ticks are free to change regions as they go
+				execute(context, profiler, budget, Phase.TICK, tickTasks);
+			}
+			/*
+			 * Every player update is sent before any npc update, which keeps
+			 * the two packets in the same order for each player while letting
+			 * each phase be timed on its own.
+			 */
+			execute(context, profiler, budget, Phase.PLAYER_UPDATE, playerUpdateTasks);
+			execute(context, profiler, budget, Phase.NPC_UPDATE, npcUpdateTasks);
+			World.getWorld().getRegionManager().getInterestManager().advance();
+			execute(context, profiler, budget, Phase.RESET, resetTasks);
+		} finally {
+			clear();
+		}
+		budget.endCycle();
+		profiler.record(Phase.CYCLE, System.nanoTime() - start);
+	}
+
+	/**
+	 * Executes a single phase of the cycle, records how long it took and
+	 * checks how much of the budget is left.
+	 * @param context The game engine.
+	 * @param profiler The profiler.
+	 * @param budget The tick budget.
+	 * @param phase The phase.
+	 * @param task The task which runs the phase.
+	 */
+	private static void execute(GameEngine context, TickProfiler profiler, TickBudget budget, Phase phase, Task task) {
+		long start = System.nanoTime();
+		task.execute(context);
+		profiler.record(phase, System.nanoTime() - start);
+		budget.checkpoint();
+	}
+
+	/**
+	 * Adds the tasks for every npc to the groups for this cycle.
+	 * @param partitioned The partitioned flag.
+	 */
+	private void collectNPCs(boolean partitioned) {
+		EntityList<NPC> npcs = World.getWorld().getNPCs();
+		for(int i = 0; i < npcs.size(); i++) {
+			NPC npc = npcs.getDense(i);
+			int index = npc.getIndex();
+			NPCSlot slot = npcSlots[index];
+			if(slot == null || slot.npc != npc) {
+				slot = npcSlots[index] = new NPCSlot(npc);
+			}
+			if(partitioned) {
+				getTickGroup(npc.getRegion()).add(slot.tickTask);
+			} else {
+				tickTasks.add(slot.tickTask);
+			}
+			resetTasks.add(slot.resetTask);
+		}
+	}
+
+	/**
+	 * Adds the tasks for every connected player to the groups for this cycle,
+	 * removing players who have disconnected.
+	 * @param partitioned The partitioned flag.
+	 */
+	private void collectPlayers(boolean partitioned) {
+		EntityList<Player> players = World.getWorld().getPlayers();
+		for(int i = 0; i < players.size(); i++) {
+			Player player = players.getDense(i);
+			int index = player.getIndex();
+			if(!player.getSession().isConnected()) {
+				/*
+				 * The last player is moved into this position, so it is
+				 * looked at again.
+				 */
+				players.remove(player);
+				playerSlots[index] = null;
+				i--;
+				continue;
+			}
+			PlayerSlot slot = playerSlots[index];
+			if(slot == null || slot.player != player) {
+				slot = playerSlots[index] = new PlayerSlot(player);
+			}
+			packetTasks.add(slot.packetTask);
+			if(partitioned) {
+				getTickGroup(player.getRegion()).add(slot.tickTask);
+			} else {
+				tickTasks.add(slot.tickTask);
+			}
+			playerUpdateTasks.add(slot.playerUpdateTask);
+			npcUpdateTasks.add(slot.npcUpdateTask);
+			resetTasks.add(slot.resetTask);
+		}
+	}
+
+	/**
+	 * Gets the group of tick tasks for a region, taking one from the pool if
+	 * the region does not have one yet this cycle.
+	 * @param region The region.
+	 * @return The group of tick tasks.
+	 */
+	private TaskGroup getTickGroup(Region region) {
+		TaskGroup group = regionGroups.get(region);
+		if(group == null) {
+			if(groupsUsed == groupPool.size()) {
+				groupPool.add(new TaskGroup(16, false));
+			}
+			group = groupPool.get(groupsUsed++);
+			regionGroups.put(region, group);
+			tickGroups.add(group);
+		}
+		return group;
+	}
+
+	/**
+	 * Clears every group, ready for the next cycle.
+	 */
+	private void clear() {
+		packetTasks.clear();
+		tickTasks.clear();
+		tickGroups.clear();
+		for(int i = 0; i < groupsUsed; i++) {
+			groupPool.get(i).clear();
+		}
+		groupsUsed = 0;
+		regionGroups.clear();
+		playerUpdateTasks.clear();
+		npcUpdateTasks.clear();
+		resetTasks.clear();
+	}
+
+}
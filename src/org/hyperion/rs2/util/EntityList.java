@@ -5,9 +5,21 @@ import java.util.Collection;
 import java.util.Iterator;
 
 import org.hyperion.rs2.model.Entity;
+import org.hyperion.rs2.model.EntityStateStore;
 
 /**
- * A class which represents a list of entities.
+ * <p>A class which represents a list of entities.</p>
+ * 
+ * <p>Each entity is stored at its own index, which it is told about when it
+ * is added. Free indices are kept on a stack, so adding an entity does not
+ * have to search for an empty slot, and removing or looking up an entity
+ * goes straight to its index. The occupied indices are also kept packed
+ * together so every entity can be visited without scanning empty slots, see
+ * {@link #getDense(int)}.</p>
+ * 
+ * <p>A list may be given an <code>EntityStateStore</code>, in which case
+ * entities are attached to it when they are added and detached when they are
+ * removed.</p>
  * @author Graham Edgecombe
  *
  * @param <E> The type of entity.
@@ -19,17 +31,69 @@ public class EntityList<E extends Entity> implements Collection<E>, Iterable<E>
 	 */
 	private Entity[] entities;
 	
+	/**
+	 * The stack of free indices, with the lowest on top when the list is
+	 * empty.
+	 */
+	private int[] freeIndices;
+	
+	/**
+	 * The number of free indices on the stack.
+	 */
+	private int freeCount;
+	
+	/**
+	 * The occupied indices, packed into the first <code>size</code>
+	 * positions.
+	 */
+	private int[] denseIndices;
+	
+	/**
+	 * The position of each occupied index in the dense indices array.
+	 */
+	private int[] positions;
+	
 	/**
 	 * Current size.
 	 */
 	private int size = 0;
 	
+	/**
+	 * The state store entities are attached to, or <code>null</code>.
+	 */
+	private final EntityStateStore store;
+	
 	/**
 	 * Creates an entity list with the specified capacity.
 	 * @param capacity The capacity.
 	 */
 	public EntityList(int capacity) {
+		this(capacity, null);
+	}
+	
+	/**
+	 * Creates an entity list with the specified capacity, which attaches its
+	 * entities to a state store.
+	 * @param capacity The capacity.
+	 * @param store The state store, or <code>null</code>.
+	 */
+	public EntityList(int capacity, EntityStateStore store) {
+		this.store = store;
 		entities = new Entity[capacity+1]; // do not use idx 0
+		freeIndices = new int[capacity];
+		denseIndices = new int[capacity];
+		positions = new int[capacity+1];
+		resetFreeIndices();
+	}
+	
+	/**
+	 * Fills the free index stack with every index, lowest on top.
+	 */
+	private void resetFreeIndices() {
+		for(int i = 0; i < freeIndices.length; i++) {
+			freeIndices[i] = freeIndices.length - i;
+		}
+		freeCount = freeIndices.length;
 	}
 	
 	/**
@@ -45,6 +109,24 @@ public class EntityList<E extends Entity> implements Collection<E>, Iterable<E>
 		return entities[index];
 	}
 	
+	/**
+	 * Gets an entity by its position in the dense list. Positions run from
+	 * zero up to <code>size() - 1</code> with no gaps, so a loop over them
+	 * visits every entity without looking at empty slots. Removing an entity
+	 * moves the entity in the last position into the removed one's place, so
+	 * the order is not stable.
+	 * @param position The position.
+	 * @return The entity.
+	 * @throws IndexOutOfBoundsException if the position is out of bounds.
+	 */
+	@SuppressWarnings("unchecked")
+	public E getDense(int position) {
+		if(position < 0 || position >= size) {
+			throw new IndexOutOfBoundsException();
+		}
+		return (E) entities[denseIndices[position]];
+	}
+	
 	/**
 	 * Gets the index of an entity.
 	 * @param entity The entity.
@@ -59,12 +141,42 @@ public class EntityList<E extends Entity> implements Collection<E>, Iterable<E>
 	 * @return The next free id.
 	 */
 	private int getNextId() {
-		for(int i = 1; i < entities.length; i++) {
-			if(entities[i] == null) {
-				return i;
-			}
+		if(freeCount == 0) {
+			return -1;
+		}
+		return freeIndices[--freeCount];
+	}
+	
+	/**
+	 * Checks if an object is the entity stored at its own index.
+	 * @param object The object.
+	 * @return The index, or -1 if the object is not in this list.
+	 */
+	private int find(Object object) {
+		if(!(object instanceof Entity)) {
+			return -1;
 		}
-		return -1;
+		int index = ((Entity) object).getIndex();
+		if(index <= 0 || index >= entities.length || entities[index] != object) {
+			return -1;
+		}
+		return index;
+	}
+	
+	/**
+	 * Removes the entity at an occupied index.
+	 * @param index The index.
+	 */
+	private void removeAt(int index) {
+		if(store != null) {
+			store.detach(entities[index]);
+		}
+		entities[index] = null;
+		int position = positions[index];
+		int last = denseIndices[--size];
+		denseIndices[position] = last;
+		positions[last] = position;
+		freeIndices[freeCount++] = index;
 	}
 
 	@Override
@@ -75,7 +187,12 @@ public class EntityList<E extends Entity> implements Collection<E>, Iterable<E>
 		}
 		entities[id] = arg0;
 		arg0.setIndex(id);
+		denseIndices[size] = id;
+		positions[id] = size;
 		size++;
+		if(store != null) {
+			store.attach(arg0);
+		}
 		return true;
 	}
 
@@ -92,20 +209,19 @@ public class EntityList<E extends Entity> implements Collection<E>, Iterable<E>
 
 	@Override
 	public void clear() {
-		for(int i = 1; i < entities.length; i++) {
-			entities[i] = null;
+		for(int i = 0; i < size; i++) {
+			if(store != null) {
+				store.detach(entities[denseIndices[i]]);
+			}
+			entities[denseIndices[i]] = null;
 		}
 		size = 0;
+		resetFreeIndices();
 	}
 
 	@Override
 	public boolean contains(Object arg0) {
-		for(int i = 1; i < entities.length; i++) {
-			if(entities[i] == arg0) {
-				return true;
-			}
-		}
-		return false;
+		return find(arg0) != -1;
 	}
 
 	@Override
@@ -131,14 +247,12 @@ public class EntityList<E extends Entity> implements Collection<E>, Iterable<E>
 
 	@Override
 	public boolean remove(Object arg0) {
-		for(int i = 1; i < entities.length; i++) {
-			if(entities[i] == arg0) {
-				entities[i] = null;
-				size--;
-				return true;
-			}
+		int index = find(arg0);
+		if(index == -1) {
+			return false;
 		}
-		return false;
+		removeAt(index);
+		return true;
 	}
 
 	@Override
@@ -155,13 +269,15 @@ public class EntityList<E extends Entity> implements Collection<E>, Iterable<E>
 	@Override
 	public boolean retainAll(Collection<?> arg0) {
 		boolean changed = false;
-		for(int i = 1; i < entities.length; i++) {
-			if(entities[i] != null) {
-				if(!arg0.contains(entities[i])) {
-					entities[i] = null;
-					size--;
-					changed = true;
-				}
+		/*
+		 * Walk backwards so the entity moved into a removed position has
+		 * already been checked.
+		 */
+		for(int i = size - 1; i >= 0; i--) {
+			int index = denseIndices[i];
+			if(!arg0.contains(entities[index])) {
+				removeAt(index);
+				changed = true;
 			}
 		}
 		return changed;
@@ -176,11 +292,8 @@ public class EntityList<E extends Entity> implements Collection<E>, Iterable<E>
 	public Entity[] toArray() {
 		int size = size();
 		Entity[] array = new Entity[size];
-		int ptr = 0;
-		for(int i = 1; i < entities.length; i++) {
-			if(entities[i] != null) {
-				array[ptr++] = entities[i];
-			}
+		for(int i = 0; i < size; i++) {
+			array[i] = entities[denseIndices[i]];
 		}
 		return array;
 	}
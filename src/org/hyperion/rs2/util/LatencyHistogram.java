@@ -0,0 +1,169 @@
+package org.hyperion.rs2.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>A thread-safe histogram of latencies, in nanoseconds.</p>
+ *
+ * <p>Each power of two is split into eight linear buckets, so any percentile
+ * read back is within 12.5% of the true value. Recording a sample is a
+ * handful of atomic increments and never allocates, so it is cheap enough to
+ * use on every tick and every packet.</p>
+ */
+public class LatencyHistogram {
+
+	/**
+	 * The number of bits used for the linear buckets within a power of two.
+	 */
+	private static final int SUB_BUCKET_BITS = 3;
+
+	/**
+	 * The number of linear buckets within a power of two.
+	 */
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * The total number of buckets, which covers every positive long.
+	 */
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	/**
+	 * The bucket counts.
+	 */
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+	/**
+	 * The number of samples.
+	 */
+	private final AtomicLong count = new AtomicLong();
+
+	/**
+	 * The sum of every sample.
+	 */
+	private final AtomicLong total = new AtomicLong();
+
+	/**
+	 * The largest sample.
+	 */
+	private final AtomicLong maximum = new AtomicLong();
+
+	/**
+	 * Records a sample.
+	 * @param nanos The latency, in nanoseconds. Negative values are treated
+	 * as zero.
+	 */
+	public void record(long nanos) {
+		if(nanos < 0) {
+			nanos = 0;
+		}
+		buckets.incrementAndGet(bucketOf(nanos));
+		count.incrementAndGet();
+		total.addAndGet(nanos);
+		long max;
+		while(nanos > (max = maximum.get())) {
+			if(maximum.compareAndSet(max, nanos)) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of samples.
+	 * @return The number of samples.
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Gets the mean latency.
+	 * @return The mean latency in nanoseconds, or zero if there are no
+	 * samples.
+	 */
+	public long getMean() {
+		long count = this.count.get();
+		return count == 0 ? 0 : total.get() / count;
+	}
+
+	/**
+	 * Gets the largest latency.
+	 * @return The largest latency in nanoseconds.
+	 */
+	public long getMaximum() {
+		return maximum.get();
+	}
+
+	/**
+	 * Gets a percentile. The value returned is the upper bound of the bucket
+	 * the percentile falls in, capped at the largest sample.
+	 * @param percentile The percentile, between 0 and 100.
+	 * @return The latency in nanoseconds, or zero if there are no samples.
+	 */
+	public long getPercentile(double percentile) {
+		long total = 0;
+		long[] counts = new long[BUCKETS];
+		for(int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+		if(total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100D);
+		if(rank < 1) {
+			rank = 1;
+		}
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if(seen >= rank) {
+				return Math.min(upperBoundOf(i), maximum.get());
+			}
+		}
+		return maximum.get();
+	}
+
+	/**
+	 * Clears every sample.
+	 */
+	public void reset() {
+		for(int i = 0; i < BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		total.set(0);
+		maximum.set(0);
+	}
+
+	/**
+	 * Gets the bucket a value falls in.
+	 * @param value The value, which must not be negative.
+	 * @return The bucket index.
+	 */
+	static int bucketOf(long value) {
+		if(value < SUB_BUCKETS * 2) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * Gets the largest value which falls in a bucket.
+	 * @param bucket The bucket index.
+	 * @return The largest value.
+	 */
+	static long upperBoundOf(int bucket) {
+		if(bucket < SUB_BUCKETS * 2) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		int sub = bucket & (SUB_BUCKETS - 1);
+		long lower = (long) (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return lower + width - 1 < 0 ? Long.MAX_VALUE : lower + width - 1;
+	}
+
+}
@@ -0,0 +1,188 @@
+package org.hyperion.rs2.util;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.hyperion.rs2.model.Entity;
+
+/**
+ * <p>The list of entities a player can see, in the order they were added.</p>
+ *
+ * <p>The order matters, as the client keeps its own copy of the list and the
+ * update packets refer to entities by their position in it. Membership is
+ * tracked with a bit for each entity index, so checking if an entity is in the
+ * list does not scan it. This relies on an entity which has left the world
+ * being removed before another entity with the same index is added, which the
+ * update tasks do by removing departed entities first.</p>
+ * @param <E> The type of entity.
+ */
+public class LocalEntityList<E extends Entity> implements Iterable<E> {
+
+	/**
+	 * An empty array, shared by lists which have never had anything added.
+	 */
+	private static final Entity[] EMPTY = new Entity[0];
+
+	/**
+	 * The capacity used when the first entity is added.
+	 */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * The entities, in the order they were added.
+	 */
+	private Entity[] entities = EMPTY;
+
+	/**
+	 * The number of entities.
+	 */
+	private int size = 0;
+
+	/**
+	 * The indices of the entities in the list.
+	 */
+	private final BitSet members = new BitSet();
+
+	/**
+	 * Adds an entity to the end of the list.
+	 * @param entity The entity.
+	 * @return <code>true</code> if it was added, <code>false</code> if it was
+	 * already in the list.
+	 */
+	public boolean add(E entity) {
+		int index = entity.getIndex();
+		if(members.get(index)) {
+			return false;
+		}
+		if(size == entities.length) {
+			Entity[] expanded = new Entity[Math.max(INITIAL_CAPACITY, size * 2)];
+			System.arraycopy(entities, 0, expanded, 0, size);
+			entities = expanded;
+		}
+		entities[size++] = entity;
+		members.set(index);
+		return true;
+	}
+
+	/**
+	 * Checks if an entity is in the list.
+	 * @param entity The entity.
+	 * @return <code>true</code> if so, <code>false</code> if not.
+	 */
+	public boolean contains(Entity entity) {
+		return members.get(entity.getIndex());
+	}
+
+	/**
+	 * Gets an entity by its position in the list.
+	 * @param position The position.
+	 * @return The entity.
+	 * @throws IndexOutOfBoundsException if the position is out of bounds.
+	 */
+	@SuppressWarnings("unchecked")
+	public E get(int position) {
+		if(position < 0 || position >= size) {
+			throw new IndexOutOfBoundsException();
+		}
+		return (E) entities[position];
+	}
+
+	/**
+	 * Removes an entity, keeping the others in order.
+	 * @param entity The entity.
+	 * @return <code>true</code> if it was removed, <code>false</code> if it
+	 * was not in the list.
+	 */
+	public boolean remove(Entity entity) {
+		if(!members.get(entity.getIndex())) {
+			return false;
+		}
+		for(int i = 0; i < size; i++) {
+			if(entities[i] == entity) {
+				removeAt(i);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Removes the entity at a position, shifting the ones after it down.
+	 * @param position The position.
+	 */
+	private void removeAt(int position) {
+		members.clear(entities[position].getIndex());
+		System.arraycopy(entities, position + 1, entities, position, size - position - 1);
+		entities[--size] = null;
+	}
+
+	/**
+	 * Removes every entity.
+	 */
+	public void clear() {
+		for(int i = 0; i < size; i++) {
+			entities[i] = null;
+		}
+		size = 0;
+		members.clear();
+	}
+
+	/**
+	 * Gets the number of entities.
+	 * @return The number of entities.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Checks if the list is empty.
+	 * @return <code>true</code> if so, <code>false</code> if not.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		return new Iterator<E>() {
+
+			/**
+			 * The position of the next entity.
+			 */
+			private int cursor = 0;
+
+			/**
+			 * A flag indicating if the last entity returned can be removed.
+			 */
+			private boolean removable = false;
+
+			@Override
+			public boolean hasNext() {
+				return cursor < size;
+			}
+
+			@SuppressWarnings("unchecked")
+			@Override
+			public E next() {
+				if(cursor >= size) {
+					throw new NoSuchElementException();
+				}
+				removable = true;
+				return (E) entities[cursor++];
+			}
+
+			@Override
+			public void remove() {
+				if(!removable) {
+					throw new IllegalStateException();
+				}
+				removeAt(--cursor);
+				removable = false;
+			}
+
+		};
+	}
+
+}
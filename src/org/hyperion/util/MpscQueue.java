@@ -0,0 +1,174 @@
+package org.hyperion.util;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>A bounded, lock-free queue which may be offered to by any number of
+ * threads but must only be polled or drained by a single thread.</p>
+ *
+ * <p>Producers claim a position with a single compare-and-set on the tail and
+ * then publish their element into the ring. The consumer takes elements in
+ * the order their positions were claimed, and stops at the first position
+ * which has been claimed but not yet published. No locks are taken and, once
+ * created, the queue never allocates.</p>
+ * @param <E> The type of element.
+ */
+public class MpscQueue<E> {
+
+	/**
+	 * The ring of elements.
+	 */
+	private final AtomicReferenceArray<E> elements;
+
+	/**
+	 * The mask used to turn a position into an index in the ring.
+	 */
+	private final int mask;
+
+	/**
+	 * The capacity.
+	 */
+	private final int capacity;
+
+	/**
+	 * The next position to be claimed by a producer.
+	 */
+	private final AtomicLong tail = new AtomicLong(0);
+
+	/**
+	 * The next position to be taken by the consumer.
+	 */
+	private volatile long head = 0;
+
+	/**
+	 * Creates the queue.
+	 * @param capacity The capacity, which is rounded up to a power of two.
+	 * @throws IllegalArgumentException if the capacity is not positive or is
+	 * too large.
+	 */
+	public MpscQueue(int capacity) {
+		if(capacity < 1 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("Capacity must be between 1 and 2^30.");
+		}
+		int size = Integer.highestOneBit(capacity);
+		if(size < capacity) {
+			size <<= 1;
+		}
+		this.elements = new AtomicReferenceArray<E>(size);
+		this.mask = size - 1;
+		this.capacity = size;
+	}
+
+	/**
+	 * Adds an element to the tail of the queue, if there is room. This may be
+	 * called from any thread.
+	 * @param element The element.
+	 * @return <code>true</code> if the element was added, <code>false</code>
+	 * if the queue is full.
+	 * @throws NullPointerException if the element is <code>null</code>.
+	 */
+	public boolean offer(E element) {
+		return offer(element, capacity);
+	}
+
+	/**
+	 * Adds an element to the tail of the queue, if fewer than
+	 * <code>limit</code> elements are in it. This lets some of the capacity be
+	 * kept back for elements which must not be refused. This may be called
+	 * from any thread.
+	 * @param element The element.
+	 * @param limit The most elements the queue may hold once this one is
+	 * added. Limits above the capacity are treated as the capacity.
+	 * @return <code>true</code> if the element was added, <code>false</code>
+	 * if the queue already holds <code>limit</code> elements.
+	 * @throws NullPointerException if the element is <code>null</code>.
+	 */
+	public boolean offer(E element, int limit) {
+		if(element == null) {
+			throw new NullPointerException();
+		}
+		int bound = Math.min(limit, capacity);
+		long position;
+		do {
+			position = tail.get();
+			if(position - head >= bound) {
+				return false;
+			}
+		} while(!tail.compareAndSet(position, position + 1));
+		elements.lazySet((int) position & mask, element);
+		return true;
+	}
+
+	/**
+	 * Takes the element at the head of the queue. This must only be called
+	 * from the consumer thread.
+	 * @return The element, or <code>null</code> if there is no element ready.
+	 */
+	public E poll() {
+		long position = head;
+		int index = (int) position & mask;
+		E element = elements.get(index);
+		if(element == null) {
+			return null;
+		}
+		elements.lazySet(index, null);
+		head = position + 1;
+		return element;
+	}
+
+	/**
+	 * Takes up to <code>limit</code> elements from the head of the queue and
+	 * adds them to a list, in order. This must only be called from the
+	 * consumer thread.
+	 * @param list The list to add the elements to.
+	 * @param limit The most elements to take.
+	 * @return The number of elements taken.
+	 */
+	public int drainTo(List<? super E> list, int limit) {
+		long position = head;
+		int count = 0;
+		while(count < limit) {
+			int index = (int) position & mask;
+			E element = elements.get(index);
+			if(element == null) {
+				break;
+			}
+			elements.lazySet(index, null);
+			list.add(element);
+			position++;
+			count++;
+		}
+		head = position;
+		return count;
+	}
+
+	/**
+	 * Gets the number of elements in the queue, including any which have
+	 * been claimed but not yet published. The value may be stale by the time
+	 * it is returned.
+	 * @return The number of elements.
+	 */
+	public int size() {
+		long size = tail.get() - head;
+		return size < 0 ? 0 : (int) size;
+	}
+
+	/**
+	 * Checks if the queue is empty.
+	 * @return <code>true</code> if so, <code>false</code> if not.
+	 */
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Gets the capacity.
+	 * @return The capacity.
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+}
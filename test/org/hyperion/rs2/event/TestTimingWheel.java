@@ -0,0 +1,132 @@
+package org.hyperion.rs2.event;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestTimingWheel {
+
+	private static class EventStub extends Event {
+
+		private int executions = 0;
+
+		private boolean repeat;
+
+		public EventStub(long delay, boolean repeat) {
+			super(delay);
+			this.repeat = repeat;
+		}
+
+		@Override
+		public void execute() {
+			executions++;
+			if(!repeat) {
+				stop();
+			}
+		}
+
+	}
+
+	private TimingWheel wheel;
+
+	@Before
+	public void setUp() throws Exception {
+		wheel = new TimingWheel(8, 600);
+	}
+
+	private void advance(int ticks) {
+		for(int i = 0; i < ticks; i++) {
+			wheel.advance();
+		}
+	}
+
+	@Test
+	public void testToTicks() {
+		assertEquals(1, wheel.toTicks(0));
+		assertEquals(1, wheel.toTicks(300));
+		assertEquals(1, wheel.toTicks(600));
+		assertEquals(2, wheel.toTicks(601));
+		assertEquals(6, wheel.toTicks(3500));
+	}
+
+	@Test
+	public void testSchedule() {
+		EventStub event = new EventStub(1800, false);
+		wheel.schedule(event, wheel.toTicks(event.getDelay()));
+		assertEquals(1, wheel.size());
+		advance(2);
+		assertEquals(0, event.executions);
+		advance(1);
+		assertEquals(1, event.executions);
+		assertEquals(0, wheel.size());
+		advance(10);
+		assertEquals(1, event.executions);
+	}
+
+	@Test
+	public void testScheduleBeyondRevolution() {
+		EventStub event = new EventStub(600 * 20, false);
+		wheel.schedule(event, 20);
+		advance(19);
+		assertEquals(0, event.executions);
+		advance(1);
+		assertEquals(1, event.executions);
+	}
+
+	@Test
+	public void testRepeat() {
+		EventStub event = new EventStub(1200, true);
+		wheel.schedule(event, 2);
+		advance(8);
+		assertEquals(4, event.executions);
+		assertEquals(1, wheel.size());
+	}
+
+	@Test
+	public void testStop() {
+		EventStub event1 = new EventStub(600, false);
+		EventStub event2 = new EventStub(600, false);
+		wheel.schedule(event1, 1);
+		wheel.schedule(event2, 1);
+		event1.stop();
+		assertEquals(1, wheel.size());
+		advance(1);
+		assertEquals(0, event1.executions);
+		assertEquals(1, event2.executions);
+	}
+
+	@Test
+	public void testReschedule() {
+		EventStub event = new EventStub(600, false);
+		wheel.schedule(event, 1);
+		wheel.schedule(event, 3);
+		assertEquals(1, wheel.size());
+		advance(2);
+		assertEquals(0, event.executions);
+		advance(1);
+		assertEquals(1, event.executions);
+	}
+
+	@Test
+	public void testThrottling() {
+		EventStub normal = new EventStub(600, true);
+		EventStub throttled = new EventStub(600, true) {
+			@Override
+			public boolean isThrottleable() {
+				return true;
+			}
+		};
+		wheel.schedule(normal, 1);
+		wheel.schedule(throttled, 1);
+		wheel.setThrottling(true);
+		advance(6);
+		assertEquals(6, normal.executions);
+		assertEquals(3, throttled.executions);
+		assertEquals(3, wheel.getThrottledCount());
+		wheel.setThrottling(false);
+		advance(2);
+		assertEquals(5, throttled.executions);
+	}
+
+}
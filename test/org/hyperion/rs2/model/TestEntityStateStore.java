@@ -0,0 +1,96 @@
+package org.hyperion.rs2.model;
+
+import static org.junit.Assert.*;
+
+import org.hyperion.rs2.model.Damage.HitType;
+import org.hyperion.rs2.model.UpdateFlags.UpdateFlag;
+import org.hyperion.rs2.model.region.Region;
+import org.hyperion.rs2.util.EntityList;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestEntityStateStore {
+	
+	private static class EntityStub extends Entity {
+
+		@Override
+		public void addToRegion(Region region) {
+			
+		}
+
+		@Override
+		public void removeFromRegion(Region region) {
+			
+		}
+
+		@Override
+		public int getClientIndex() {
+			return 0;
+		}
+
+		@Override
+		public void inflictDamage(int damage, HitType type) {
+			
+		}
+		
+	}
+	
+	private EntityStateStore store;
+	
+	private EntityList<EntityStub> list;
+	
+	private EntityStub stub;
+
+	@Before
+	public void setUp() throws Exception {
+		store = new EntityStateStore(10);
+		list = new EntityList<EntityStub>(10, store);
+		stub = new EntityStub();
+		stub.getUpdateFlags().flag(UpdateFlag.CHAT);
+		list.add(stub);
+	}
+
+	@Test
+	public void testAttach() {
+		assertSame(store, stub.getStateStore());
+		assertEquals(EntityStateStore.pack(stub.getLocation()), store.getCoordinates(stub.getIndex()));
+		assertEquals(stub.getUpdateFlags().getMask(), store.getUpdateMask(stub.getIndex()));
+		assertTrue(store.isUpdateRequired(stub.getIndex()));
+	}
+	
+	@Test
+	public void testWriteThrough() {
+		stub.getSprites().setSprites(3, 7);
+		assertEquals(3, store.getPrimarySprite(stub.getIndex()));
+		assertEquals(7, store.getSecondarySprite(stub.getIndex()));
+		stub.getSprites().setSprites(-1, -1);
+		assertEquals(-1, store.getPrimarySprite(stub.getIndex()));
+		assertEquals(-1, store.getSecondarySprite(stub.getIndex()));
+		stub.getUpdateFlags().reset();
+		assertFalse(store.isUpdateRequired(stub.getIndex()));
+		stub.getUpdateFlags().set(UpdateFlag.ANIMATION, true);
+		assertEquals(1 << UpdateFlag.ANIMATION.ordinal(), store.getUpdateMask(stub.getIndex()));
+	}
+	
+	@Test
+	public void testDetach() {
+		int index = stub.getIndex();
+		list.remove(stub);
+		assertNull(stub.getStateStore());
+		assertFalse(store.isUpdateRequired(index));
+		stub.getUpdateFlags().flag(UpdateFlag.ANIMATION);
+		assertFalse(store.isUpdateRequired(index));
+	}
+	
+	@Test
+	public void testDistance() {
+		int centre = EntityStateStore.pack(Location.create(3200, 3200, 0));
+		assertTrue(EntityStateStore.isWithinDistance(centre, EntityStateStore.pack(Location.create(3214, 3185, 0))));
+		assertFalse(EntityStateStore.isWithinDistance(centre, EntityStateStore.pack(Location.create(3215, 3200, 0))));
+		assertFalse(EntityStateStore.isWithinDistance(centre, EntityStateStore.pack(Location.create(3200, 3184, 0))));
+		assertFalse(EntityStateStore.isWithinDistance(centre, EntityStateStore.pack(Location.create(3200, 3200, 1))));
+		assertEquals(Location.create(3200, 3200, 0).isWithinDistance(Location.create(3214, 3185, 0)),
+				EntityStateStore.isWithinDistance(centre, EntityStateStore.pack(Location.create(3214, 3185, 0))));
+	}
+
+}
@@ -0,0 +1,130 @@
+package org.hyperion.rs2.model.region;
+
+import static org.junit.Assert.*;
+
+import org.hyperion.rs2.model.Location;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestInterestManager {
+
+	private RegionManager manager;
+
+	private InterestManager interests;
+
+	private Location observer;
+
+	private Interest interest;
+
+	@Before
+	public void setUp() throws Exception {
+		manager = new RegionManager();
+		interests = manager.getInterestManager();
+		observer = Location.create(3215, 3215, 0);
+		interest = new Interest();
+		scan(ViewDistance.MAXIMUM);
+	}
+
+	private void scan(int distance) {
+		manager.getSurroundingRegions(observer);
+		interest.scanned(interests.getCycle(), observer, distance);
+		interests.advance();
+	}
+
+	private boolean isScanRequired(boolean players) {
+		return interests.isScanRequired(observer, interest, manager.getSurroundingRegions(observer), players);
+	}
+
+	private void step(boolean players, int fromX, int fromY, int toX, int toY) {
+		Location from = Location.create(fromX, fromY, 0);
+		Location to = Location.create(toX, toY, 0);
+		manager.getRegionByLocation(from).entityMoved(players, from, to, false);
+	}
+
+	@Test
+	public void testFirstQuery() {
+		interest = new Interest();
+		assertTrue(isScanRequired(true));
+		assertTrue(isScanRequired(false));
+	}
+
+	@Test
+	public void testStill() {
+		assertFalse(isScanRequired(true));
+		assertFalse(isScanRequired(false));
+	}
+
+	@Test
+	public void testObserverMoved() {
+		observer = Location.create(3216, 3215, 0);
+		assertTrue(isScanRequired(true));
+		scan(ViewDistance.MAXIMUM);
+		assertFalse(isScanRequired(true));
+	}
+
+	@Test
+	public void testIncomplete() {
+		interest.setIncomplete();
+		assertTrue(isScanRequired(true));
+		assertTrue(isScanRequired(false));
+	}
+
+	@Test
+	public void testNeighbourChanged() {
+		Location to = Location.create(3250, 3215, 0);
+		manager.getRegion(101, 100).entityMoved(true, null, to, false);
+		assertTrue(isScanRequired(true));
+		assertFalse(isScanRequired(false));
+	}
+
+	@Test
+	public void testTeleportInsideView() {
+		Location from = Location.create(3212, 3215, 0);
+		Location to = Location.create(3213, 3215, 0);
+		manager.getRegionByLocation(from).entityMoved(false, from, to, true);
+		assertTrue(isScanRequired(false));
+	}
+
+	@Test
+	public void testStepInsideView() {
+		step(true, 3210, 3215, 3211, 3216);
+		step(true, 3219, 3212, 3220, 3212);
+		step(false, 3215, 3220, 3215, 3221);
+		assertFalse(isScanRequired(true));
+		assertFalse(isScanRequired(false));
+	}
+
+	@Test
+	public void testStepFarOutsideView() {
+		step(true, 3258, 3215, 3259, 3215);
+		step(true, 3170, 3170, 3171, 3171);
+		assertFalse(isScanRequired(true));
+	}
+
+	@Test
+	public void testStepIntoView() {
+		step(true, 3230, 3215, 3229, 3215);
+		assertTrue(isScanRequired(true));
+		assertFalse(isScanRequired(false));
+		scan(ViewDistance.MAXIMUM);
+		step(false, 3215, 3231, 3215, 3230);
+		assertFalse(isScanRequired(true));
+		assertTrue(isScanRequired(false));
+	}
+
+	@Test
+	public void testStepAcrossRegions() {
+		step(true, 3199, 3215, 3200, 3215);
+		assertTrue(isScanRequired(true));
+	}
+
+	@Test
+	public void testSmallerDistance() {
+		scan(6);
+		step(true, 3225, 3215, 3224, 3215);
+		assertFalse(isScanRequired(true));
+		step(true, 3222, 3215, 3221, 3215);
+		assertTrue(isScanRequired(true));
+	}
+
+}
@@ -0,0 +1,84 @@
+package org.hyperion.rs2.model.region;
+
+import static org.junit.Assert.*;
+
+import org.hyperion.rs2.model.Entity;
+import org.hyperion.rs2.model.Damage.HitType;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestRegionEntitySet {
+	
+	private static class EntityStub extends Entity {
+
+		@Override
+		public void addToRegion(Region region) {
+			
+		}
+
+		@Override
+		public void removeFromRegion(Region region) {
+			
+		}
+
+		@Override
+		public int getClientIndex() {
+			return 0;
+		}
+
+		@Override
+		public void inflictDamage(int damage, HitType type) {
+			
+		}
+		
+	}
+	
+	private RegionEntitySet<EntityStub> set;
+	
+	private EntityStub[] stubs;
+
+	@Before
+	public void setUp() throws Exception {
+		set = new RegionEntitySet<EntityStub>();
+		stubs = new EntityStub[20];
+		for(int i = 0; i < stubs.length; i++) {
+			stubs[i] = new EntityStub();
+			set.addMember(stubs[i]);
+		}
+	}
+
+	@Test
+	public void testAdd() {
+		assertEquals(20, set.size());
+		for(int i = 0; i < stubs.length; i++) {
+			assertSame(stubs[i], set.get(i));
+			assertEquals(i, stubs[i].getRegionPosition());
+			assertTrue(set.contains(stubs[i]));
+		}
+		assertFalse(set.contains(new EntityStub()));
+	}
+	
+	@Test
+	public void testRemove() {
+		assertTrue(set.removeMember(stubs[3]));
+		assertFalse(set.removeMember(stubs[3]));
+		assertEquals(19, set.size());
+		assertFalse(set.contains(stubs[3]));
+		assertEquals(-1, stubs[3].getRegionPosition());
+		assertSame(stubs[19], set.get(3));
+		assertEquals(3, stubs[19].getRegionPosition());
+		assertTrue(set.removeMember(stubs[19]));
+		assertTrue(set.removeMember(stubs[18]));
+		assertEquals(17, set.size());
+		for(EntityStub stub : set) {
+			assertTrue(set.contains(stub));
+			assertSame(stub, set.get(stub.getRegionPosition()));
+		}
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void testReadOnly() {
+		set.add(new EntityStub());
+	}
+
+}
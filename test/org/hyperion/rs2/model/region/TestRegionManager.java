@@ -0,0 +1,108 @@
+package org.hyperion.rs2.model.region;
+
+import static org.junit.Assert.*;
+
+import org.hyperion.rs2.model.Location;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestRegionManager {
+	
+	private RegionManager manager;
+
+	@Before
+	public void setUp() throws Exception {
+		manager = new RegionManager();
+	}
+
+	@Test
+	public void testGetRegion() {
+		Region region = manager.getRegion(100, 100);
+		assertSame(region, manager.getRegion(100, 100));
+		assertNotSame(region, manager.getRegion(100, 101));
+		assertNotSame(region, manager.getRegion(101, 100));
+		assertEquals(100, region.getCoordinates().getX());
+		assertEquals(100, region.getCoordinates().getY());
+		assertNotSame(manager.getRegion(-1, 0), manager.getRegion(0, -1));
+	}
+	
+	@Test
+	public void testSurroundingRegions() {
+		Location location = Location.create(3215, 3215, 0);
+		Region[] surrounding = manager.getSurroundingRegions(location);
+		assertEquals(9, surrounding.length);
+		assertSame(manager.getRegionByLocation(location), surrounding[0]);
+		assertSame(surrounding, manager.getSurroundingRegions(location));
+		for(int x = -1; x <= 1; x++) {
+			for(int y = -1; y <= 1; y++) {
+				Region region = manager.getRegion(100 + x, 100 + y);
+				boolean found = false;
+				for(Region other : surrounding) {
+					if(other == region) {
+						found = true;
+					}
+				}
+				assertTrue(found);
+			}
+		}
+	}
+	
+	@Test
+	public void testEviction() {
+		Region[] surrounding = manager.getSurroundingRegions(manager.getRegion(100, 100));
+		assertEquals(9, manager.getActiveRegionCount());
+		assertEquals(0, manager.evictIdleRegions(1));
+		manager.getInterestManager().advance();
+		assertEquals(9, manager.evictIdleRegions(1));
+		assertEquals(0, manager.getActiveRegionCount());
+		assertNull(manager.findRegionByLocation(Location.create(3215, 3215, 0)));
+		Region[] recreated = manager.getSurroundingRegions(manager.getRegion(100, 100));
+		assertNotSame(surrounding[0], recreated[0]);
+		assertSame(manager.getRegion(101, 101), recreated[2]);
+	}
+	
+	@Test
+	public void testNeighbourInvalidated() {
+		Region centre = manager.getRegion(100, 100);
+		Region[] surrounding = manager.getSurroundingRegions(centre);
+		manager.getInterestManager().advance();
+		/*
+		 * Give the centre an object so only its neighbours are evicted.
+		 */
+		centre.getGameObjects().add(null);
+		assertEquals(8, manager.evictIdleRegions(1));
+		Region[] recreated = manager.getSurroundingRegions(centre);
+		assertNotSame(surrounding, recreated);
+		assertNotSame(surrounding[1], recreated[1]);
+		assertSame(manager.getRegion(99, 99), recreated[1]);
+	}
+	
+	@Test
+	public void testConcurrentCreation() throws Exception {
+		final Region[][] results = new Region[8][];
+		Thread[] threads = new Thread[results.length];
+		for(int i = 0; i < threads.length; i++) {
+			final int id = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					Region[] regions = new Region[64];
+					for(int j = 0; j < regions.length; j++) {
+						regions[j] = manager.getRegion(j, 0);
+					}
+					results[id] = regions;
+				}
+			};
+			threads[i].start();
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+		for(int i = 1; i < results.length; i++) {
+			for(int j = 0; j < 64; j++) {
+				assertSame(results[0][j], results[i][j]);
+			}
+		}
+	}
+
+}
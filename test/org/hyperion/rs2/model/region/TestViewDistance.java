@@ -0,0 +1,145 @@
+package org.hyperion.rs2.model.region;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.hyperion.rs2.model.EntityStateStore;
+import org.hyperion.rs2.model.Location;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestViewDistance {
+	
+	private static final Location CENTRE = Location.create(3200, 3200, 0);
+	
+	private ViewDistance view;
+	
+	private void countFilled(int radius) {
+		countFilled(radius, 0);
+	}
+	
+	private void countFilled(int radius, int extra) {
+		int centre = EntityStateStore.pack(CENTRE);
+		view.beginCount();
+		for(int x = -radius; x <= radius; x++) {
+			for(int y = -radius; y <= radius; y++) {
+				if(x != 0 || y != 0) {
+					view.count(EntityStateStore.pack(CENTRE.transform(x, y, 0)), centre);
+				}
+			}
+		}
+		int ring = radius + 1;
+		for(int x = -ring; x <= ring && extra > 0; x++) {
+			for(int y = -ring; y <= ring && extra > 0; y++) {
+				if(Math.max(Math.abs(x), Math.abs(y)) == ring) {
+					view.count(EntityStateStore.pack(CENTRE.transform(x, y, 0)), centre);
+					extra--;
+				}
+			}
+		}
+		view.endCount();
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		view = new ViewDistance(100);
+	}
+
+	@Test
+	public void testShrink() {
+		assertEquals(ViewDistance.MAXIMUM, view.getDistance());
+		countFilled(ViewDistance.MAXIMUM);
+		assertEquals(ViewDistance.MINIMUM, view.getDistance());
+		view = new ViewDistance(100);
+		countFilled(4);
+		assertEquals(ViewDistance.MAXIMUM, view.getDistance());
+		countFilled(4, 25);
+		assertEquals(ViewDistance.MINIMUM, view.getDistance());
+	}
+	
+	@Test
+	public void testGrow() {
+		countFilled(ViewDistance.MAXIMUM);
+		assertEquals(ViewDistance.MINIMUM, view.getDistance());
+		countFilled(4, 20);
+		assertEquals(ViewDistance.MINIMUM, view.getDistance());
+		countFilled(0);
+		assertEquals(ViewDistance.MAXIMUM, view.getDistance());
+	}
+	
+	@Test
+	public void testHysteresis() {
+		countFilled(ViewDistance.MAXIMUM);
+		assertEquals(ViewDistance.MINIMUM, view.getDistance());
+		countFilled(4, 15);
+		assertEquals(ViewDistance.MINIMUM, view.getDistance());
+		countFilled(4, 8);
+		assertEquals(ViewDistance.MAXIMUM, view.getDistance());
+		countFilled(4, 15);
+		assertEquals(ViewDistance.MAXIMUM, view.getDistance());
+	}
+	
+	@Test
+	public void testEvenCrowd() {
+		Random random = new Random(317);
+		int size = 41;
+		int[] xs = new int[size * size];
+		int[] ys = new int[size * size];
+		int count = 0;
+		for(int x = 0; x < size; x++) {
+			for(int y = 0; y < size; y++) {
+				if(random.nextInt(100) < 85) {
+					xs[count] = CENTRE.getX() - size / 2 + x;
+					ys[count] = CENTRE.getY() - size / 2 + y;
+					count++;
+				}
+			}
+		}
+		int centre = EntityStateStore.pack(CENTRE);
+		int settled = -1;
+		for(int cycle = 0; cycle < 30; cycle++) {
+			view.beginCount();
+			for(int i = 0; i < count; i++) {
+				int x = xs[i] + random.nextInt(3) - 1;
+				int y = ys[i] + random.nextInt(3) - 1;
+				if(Math.abs(x - CENTRE.getX()) <= size / 2 && Math.abs(y - CENTRE.getY()) <= size / 2) {
+					xs[i] = x;
+					ys[i] = y;
+				}
+				if(xs[i] != CENTRE.getX() || ys[i] != CENTRE.getY()) {
+					view.count(EntityStateStore.pack(Location.create(xs[i], ys[i], 0)), centre);
+				}
+			}
+			view.endCount();
+			int inView = 0;
+			for(int i = 0; i < count; i++) {
+				if(view.isInView(EntityStateStore.pack(Location.create(xs[i], ys[i], 0)), centre) && (xs[i] != CENTRE.getX() || ys[i] != CENTRE.getY())) {
+					inView++;
+				}
+			}
+			assertTrue(inView <= 100 || view.getDistance() == ViewDistance.MINIMUM);
+			if(cycle == 5) {
+				settled = view.getDistance();
+			} else if(cycle > 5) {
+				assertEquals(settled, view.getDistance());
+			}
+		}
+	}
+	
+	@Test
+	public void testInView() {
+		Location centre = Location.create(3200, 3200, 0);
+		int packed = EntityStateStore.pack(centre);
+		Location edge = Location.create(3214, 3185, 0);
+		assertEquals(edge.isWithinDistance(centre), view.isInView(EntityStateStore.pack(edge), packed));
+		assertEquals(edge.isWithinDistance(centre), ViewDistance.isInView(edge, centre, view.getDistance()));
+		countFilled(ViewDistance.MAXIMUM);
+		assertEquals(4, view.getDistance());
+		assertTrue(view.isInView(EntityStateStore.pack(Location.create(3204, 3196, 0)), packed));
+		assertFalse(view.isInView(EntityStateStore.pack(Location.create(3205, 3200, 0)), packed));
+		assertTrue(ViewDistance.isInView(Location.create(3196, 3204, 0), centre, 4));
+		assertFalse(ViewDistance.isInView(Location.create(3200, 3195, 0), centre, 4));
+	}
+
+}
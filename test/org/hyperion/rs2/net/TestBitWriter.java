@@ -0,0 +1,97 @@
+package org.hyperion.rs2.net;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestBitWriter {
+
+	private static byte[] writeByteWise(int[] widths, int[] values) {
+		byte[] buffer = new byte[widths.length * 4 + 1];
+		int bitPosition = 0;
+		for(int i = 0; i < widths.length; i++) {
+			int numBits = widths[i];
+			int value = values[i];
+			int bytePos = bitPosition >> 3;
+			int bitOffset = 8 - (bitPosition & 7);
+			bitPosition += numBits;
+			for(; numBits > bitOffset; bitOffset = 8) {
+				buffer[bytePos] &= ~PacketBuilder.BIT_MASK_OUT[bitOffset];
+				buffer[bytePos++] |= (value >> (numBits-bitOffset)) & PacketBuilder.BIT_MASK_OUT[bitOffset];
+				numBits -= bitOffset;
+			}
+			if(numBits == bitOffset) {
+				buffer[bytePos] &= ~PacketBuilder.BIT_MASK_OUT[bitOffset];
+				buffer[bytePos] |= value & PacketBuilder.BIT_MASK_OUT[bitOffset];
+			} else {
+				buffer[bytePos] &= ~(PacketBuilder.BIT_MASK_OUT[numBits] << (bitOffset - numBits));
+				buffer[bytePos] |= (value & PacketBuilder.BIT_MASK_OUT[numBits]) << (bitOffset - numBits);
+			}
+		}
+		return Arrays.copyOf(buffer, (bitPosition + 7) / 8);
+	}
+
+	private static byte[] write(BitWriter writer, int[] widths, int[] values) {
+		for(int i = 0; i < widths.length; i++) {
+			writer.putBits(widths[i], values[i]);
+		}
+		int length = writer.finish();
+		return Arrays.copyOf(writer.getData(), length);
+	}
+
+	@Test
+	public void testMatchesByteWise() {
+		Random random = new Random(317);
+		BitWriter writer = new BitWriter(4);
+		for(int run = 0; run < 1000; run++) {
+			int count = random.nextInt(200);
+			int[] widths = new int[count];
+			int[] values = new int[count];
+			for(int i = 0; i < count; i++) {
+				widths[i] = 1 + random.nextInt(32);
+				values[i] = random.nextInt();
+			}
+			writer.reset();
+			assertArrayEquals(writeByteWise(widths, values), write(writer, widths, values));
+		}
+	}
+
+	@Test
+	public void testPadding() {
+		BitWriter writer = new BitWriter(4);
+		writer.putBits(1, 1);
+		writer.putBits(2, 0);
+		writer.putBits(3, 7);
+		assertEquals(1, writer.finish());
+		assertEquals((byte) 0x9C, writer.getData()[0]);
+	}
+
+	@Test
+	public void testWholeWords() {
+		BitWriter writer = new BitWriter(4);
+		writer.putBits(32, 0x01020304);
+		writer.putBits(32, 0x05060708);
+		writer.putBits(8, 0x09);
+		assertEquals(9, writer.finish());
+		assertArrayEquals(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9 }, Arrays.copyOf(writer.getData(), 9));
+	}
+
+	@Test
+	public void testPacketBuilder() {
+		PacketBuilder builder = new PacketBuilder();
+		builder.put((byte) 0x7F);
+		builder.startBitAccess();
+		builder.putBits(11, 2047);
+		builder.putBits(1, 0);
+		builder.finishBitAccess();
+		builder.put((byte) 0x55);
+		Packet packet = builder.toPacket();
+		byte[] data = new byte[packet.getLength()];
+		packet.get(data);
+		assertArrayEquals(new byte[] { 0x7F, (byte) 0xFF, (byte) 0xE0, 0x55 }, data);
+	}
+
+}
@@ -0,0 +1,64 @@
+package org.hyperion.rs2.net;
+
+import static org.junit.Assert.*;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.Test;
+
+public class TestPacketBuilder {
+
+	private static byte[] toArray(Packet packet) {
+		byte[] data = new byte[packet.getLength()];
+		packet.getPayload().get(data);
+		return data;
+	}
+
+	private static Packet writeBits(PacketBuilder builder) {
+		builder.startBitAccess();
+		builder.putBits(3, 5);
+		builder.putBits(11, 2047);
+		builder.finishBitAccess();
+		builder.put((byte) 42);
+		return builder.toPacket();
+	}
+
+	@Test
+	public void testLeasedMatchesUnleased() {
+		PacketBuilder dirty = PacketBuilder.lease();
+		for(int i = 0; i < 8; i++) {
+			dirty.put((byte) -1);
+		}
+		dirty.release();
+		Packet leased = writeBits(PacketBuilder.lease());
+		Packet unleased = writeBits(new PacketBuilder());
+		assertArrayEquals(toArray(unleased), toArray(leased));
+		leased.release();
+	}
+
+	@Test
+	public void testBuffersAreReused() {
+		PacketBufferPool pool = PacketBufferPool.getPool();
+		PacketBuilder builder = PacketBuilder.lease(81, Packet.Type.VARIABLE_SHORT);
+		Packet packet = builder.toPacket();
+		IoBuffer buffer = packet.getPayload();
+		assertTrue(buffer.capacity() >= 5000);
+		int size = pool.size();
+		packet.release();
+		packet.release();
+		assertEquals(size + 1, pool.size());
+		assertSame(buffer, pool.acquire(16));
+		assertEquals(size, pool.size());
+	}
+
+	@Test
+	public void testUnleasedIsNotPooled() {
+		PacketBufferPool pool = PacketBufferPool.getPool();
+		int size = pool.size();
+		PacketBuilder builder = new PacketBuilder();
+		Packet packet = builder.toPacket();
+		builder.release();
+		packet.release();
+		assertEquals(size, pool.size());
+	}
+
+}
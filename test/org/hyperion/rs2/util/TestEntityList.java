@@ -103,6 +103,56 @@ public class TestEntityList {
 		assertEquals(stub2, list.get(2));
 	}
 	
+	@Test
+	public void testIndexReuse() {
+		EntityStub stub1 = new EntityStub();
+		EntityStub stub2 = new EntityStub();
+		EntityStub stub3 = new EntityStub();
+		list.add(stub1);
+		list.add(stub2);
+		list.remove(stub1);
+		list.add(stub3);
+		assertEquals(1, stub3.getIndex());
+		for(int i = 0; i < 8; i++) {
+			assertTrue(list.add(new EntityStub()));
+		}
+		assertFalse(list.add(new EntityStub()));
+		assertEquals(10, list.size());
+	}
+	
+	@Test
+	public void testContainsOther() {
+		EntityList<EntityStub> other = new EntityList<EntityStub>(10);
+		EntityStub stub1 = new EntityStub();
+		EntityStub stub2 = new EntityStub();
+		list.add(stub1);
+		other.add(stub2);
+		assertEquals(stub1.getIndex(), stub2.getIndex());
+		assertFalse(list.contains(stub2));
+		assertFalse(list.remove(stub2));
+		assertEquals(1, list.size());
+	}
+	
+	@Test
+	public void testDense() {
+		EntityStub[] stubs = new EntityStub[5];
+		for(int i = 0; i < stubs.length; i++) {
+			stubs[i] = new EntityStub();
+			list.add(stubs[i]);
+		}
+		list.remove(stubs[1]);
+		list.remove(stubs[3]);
+		assertEquals(3, list.size());
+		List<Entity> seen = new ArrayList<Entity>();
+		for(int i = 0; i < list.size(); i++) {
+			seen.add(list.getDense(i));
+		}
+		assertEquals(3, seen.size());
+		assertTrue(seen.contains(stubs[0]));
+		assertTrue(seen.contains(stubs[2]));
+		assertTrue(seen.contains(stubs[4]));
+	}
+	
 	@Test
 	public void testIndexOf() {
 		EntityStub stub1 = new EntityStub();
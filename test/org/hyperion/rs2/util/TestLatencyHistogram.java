@@ -0,0 +1,58 @@
+package org.hyperion.rs2.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestLatencyHistogram {
+
+	private LatencyHistogram histogram;
+
+	@Before
+	public void setUp() throws Exception {
+		histogram = new LatencyHistogram();
+	}
+
+	@Test
+	public void testBuckets() {
+		for(long value = 0; value < 1 << 20; value++) {
+			int bucket = LatencyHistogram.bucketOf(value);
+			assertTrue(value <= LatencyHistogram.upperBoundOf(bucket));
+			if(bucket > 0) {
+				assertTrue(value > LatencyHistogram.upperBoundOf(bucket - 1));
+			}
+		}
+		assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(Long.MAX_VALUE)));
+	}
+
+	@Test
+	public void testEmpty() {
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMean());
+		assertEquals(0, histogram.getPercentile(99));
+	}
+
+	@Test
+	public void testPercentiles() {
+		for(int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000L);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(500500, histogram.getMean());
+		assertEquals(1000000, histogram.getMaximum());
+		assertEquals(500000, histogram.getPercentile(50), 500000 / 8);
+		assertEquals(990000, histogram.getPercentile(99), 990000 / 8);
+		assertEquals(1000000, histogram.getPercentile(100));
+	}
+
+	@Test
+	public void testReset() {
+		histogram.record(100);
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMaximum());
+		assertEquals(0, histogram.getPercentile(50));
+	}
+
+}
@@ -0,0 +1,98 @@
+package org.hyperion.rs2.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Iterator;
+
+import org.hyperion.rs2.model.Entity;
+import org.hyperion.rs2.model.Damage.HitType;
+import org.hyperion.rs2.model.region.Region;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestLocalEntityList {
+	
+	private static class EntityStub extends Entity {
+		
+		public EntityStub(int index) {
+			setIndex(index);
+		}
+
+		@Override
+		public void addToRegion(Region region) {
+			
+		}
+
+		@Override
+		public void removeFromRegion(Region region) {
+			
+		}
+
+		@Override
+		public int getClientIndex() {
+			return 0;
+		}
+
+		@Override
+		public void inflictDamage(int damage, HitType type) {
+			
+		}
+		
+	}
+	
+	private LocalEntityList<EntityStub> list;
+	
+	private EntityStub[] stubs;
+
+	@Before
+	public void setUp() throws Exception {
+		list = new LocalEntityList<EntityStub>();
+		stubs = new EntityStub[40];
+		for(int i = 0; i < stubs.length; i++) {
+			stubs[i] = new EntityStub(i + 1);
+			assertTrue(list.add(stubs[i]));
+		}
+	}
+
+	@Test
+	public void testAdd() {
+		assertEquals(40, list.size());
+		assertFalse(list.add(stubs[3]));
+		assertEquals(40, list.size());
+		for(int i = 0; i < stubs.length; i++) {
+			assertSame(stubs[i], list.get(i));
+		}
+	}
+
+	@Test
+	public void testContains() {
+		assertTrue(list.contains(stubs[0]));
+		assertFalse(list.contains(new EntityStub(100)));
+		list.remove(stubs[0]);
+		assertFalse(list.contains(stubs[0]));
+	}
+
+	@Test
+	public void testIteratorRemove() {
+		for(Iterator<EntityStub> it$ = list.iterator(); it$.hasNext();) {
+			if(it$.next().getIndex() % 2 == 0) {
+				it$.remove();
+			}
+		}
+		assertEquals(20, list.size());
+		for(int i = 0; i < list.size(); i++) {
+			assertSame(stubs[i * 2], list.get(i));
+		}
+		assertFalse(list.contains(stubs[1]));
+		assertTrue(list.add(stubs[1]));
+		assertSame(stubs[1], list.get(20));
+	}
+
+	@Test
+	public void testClear() {
+		list.clear();
+		assertTrue(list.isEmpty());
+		assertFalse(list.contains(stubs[0]));
+	}
+
+}
@@ -0,0 +1,111 @@
+package org.hyperion.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TestMpscQueue {
+
+	@Test
+	public void testCapacity() {
+		assertEquals(8, new MpscQueue<Integer>(5).capacity());
+		assertEquals(8, new MpscQueue<Integer>(8).capacity());
+		assertEquals(1, new MpscQueue<Integer>(1).capacity());
+	}
+
+	@Test
+	public void testBounded() {
+		MpscQueue<Integer> queue = new MpscQueue<Integer>(4);
+		for(int i = 0; i < 4; i++) {
+			assertTrue(queue.offer(i));
+		}
+		assertFalse(queue.offer(4));
+		assertEquals(4, queue.size());
+		assertEquals(Integer.valueOf(0), queue.poll());
+		assertTrue(queue.offer(4));
+		for(int i = 1; i <= 4; i++) {
+			assertEquals(Integer.valueOf(i), queue.poll());
+		}
+		assertNull(queue.poll());
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	public void testLimit() {
+		MpscQueue<Integer> queue = new MpscQueue<Integer>(4);
+		assertTrue(queue.offer(0, 2));
+		assertTrue(queue.offer(1, 2));
+		assertFalse(queue.offer(2, 2));
+		assertTrue(queue.offer(2, 100));
+		assertTrue(queue.offer(3));
+		assertFalse(queue.offer(4, 100));
+		assertEquals(Integer.valueOf(0), queue.poll());
+		assertFalse(queue.offer(4, 3));
+		assertTrue(queue.offer(4, 4));
+	}
+
+	@Test
+	public void testDrain() {
+		MpscQueue<Integer> queue = new MpscQueue<Integer>(16);
+		for(int i = 0; i < 10; i++) {
+			queue.offer(i);
+		}
+		List<Integer> list = new ArrayList<Integer>();
+		assertEquals(4, queue.drainTo(list, 4));
+		assertEquals(6, queue.drainTo(list, 100));
+		assertEquals(0, queue.drainTo(list, 100));
+		for(int i = 0; i < 10; i++) {
+			assertEquals(Integer.valueOf(i), list.get(i));
+		}
+	}
+
+	@Test
+	public void testProducers() throws InterruptedException {
+		final int producers = 4;
+		final int elements = 100000;
+		final MpscQueue<Integer> queue = new MpscQueue<Integer>(1024);
+		Thread[] threads = new Thread[producers];
+		for(int p = 0; p < producers; p++) {
+			final int id = p;
+			threads[p] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for(int i = 0; i < elements; i++) {
+						while(!queue.offer(id * elements + i)) {
+							Thread.yield();
+						}
+					}
+				}
+			});
+			threads[p].start();
+		}
+		int[] last = new int[producers];
+		for(int p = 0; p < producers; p++) {
+			last[p] = -1;
+		}
+		List<Integer> batch = new ArrayList<Integer>();
+		int received = 0;
+		while(received < producers * elements) {
+			batch.clear();
+			if(queue.drainTo(batch, 64) == 0) {
+				Thread.yield();
+				continue;
+			}
+			for(int value : batch) {
+				int id = value / elements;
+				int sequence = value % elements;
+				assertEquals(last[id] + 1, sequence);
+				last[id] = sequence;
+			}
+			received += batch.size();
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+		assertTrue(queue.isEmpty());
+	}
+
+}